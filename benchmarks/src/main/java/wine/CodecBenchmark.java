@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import silvertip.PartialMessageException;
+
+/**
+ * Formatting and parsing of every message type. The size applies to both
+ * the key and the value; it does not apply to the fixed-length messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+    @Param({ "Login", "LoginAccepted", "LoginRejected", "Get", "Value", "Set" })
+    public String messageType;
+
+    private static final int CHUNK_SIZE = 4096;
+
+    @Param({ "0", "8", "1024", "65536" })
+    public int size;
+
+    private Message message;
+
+    private ByteBuffer formatBuffer;
+    private ByteBuffer parseBuffer;
+
+    private Parser      parser;
+    private MessagePool pool;
+    private Parser      pooledParser;
+    private ViewParser  viewParser;
+
+    @Setup
+    public void setUp() {
+        message = message(messageType, size);
+
+        formatBuffer = ByteBuffer.allocate(message.length());
+        parseBuffer  = ByteBuffer.wrap(message.format());
+
+        parser       = new Parser();
+        pool         = new MessagePool();
+        pooledParser = new Parser(pool);
+        viewParser   = new ViewParser();
+    }
+
+    @Benchmark
+    public ByteBuffer formatBuffer() {
+        formatBuffer.clear();
+
+        message.format(formatBuffer);
+
+        return formatBuffer;
+    }
+
+    @Benchmark
+    public byte[] formatArray() {
+        return message.format();
+    }
+
+    @Benchmark
+    public Message parse() throws Exception {
+        parseBuffer.clear();
+
+        return parser.parse(parseBuffer);
+    }
+
+    @Benchmark
+    public Message parsePooled() throws Exception {
+        parseBuffer.clear();
+
+        Message message = pooledParser.parse(parseBuffer);
+
+        pool.release(message);
+
+        return message;
+    }
+
+    /**
+     * Parse a frame that arrives in reads of {@link #CHUNK_SIZE} bytes,
+     * attempting a parse after each read.
+     */
+    @Benchmark
+    public Message parseInChunks() throws Exception {
+        int length = parseBuffer.capacity();
+
+        for (int limit = Math.min(CHUNK_SIZE, length); ; limit = Math.min(limit + CHUNK_SIZE, length)) {
+            parseBuffer.position(0);
+            parseBuffer.limit(limit);
+
+            try {
+                return parser.parse(parseBuffer);
+            } catch (PartialMessageException e) {
+            }
+        }
+    }
+
+    @Benchmark
+    public MessageView parseView() throws Exception {
+        parseBuffer.clear();
+
+        return viewParser.parse(parseBuffer);
+    }
+
+    static Message message(String messageType, int size) {
+        byte[] key   = bytes(size, (byte) 'k');
+        byte[] value = bytes(size, (byte) 'v');
+
+        if (messageType.equals("Login"))
+            return new Login("foo", "bar");
+        if (messageType.equals("LoginAccepted"))
+            return new LoginAccepted();
+        if (messageType.equals("LoginRejected"))
+            return new LoginRejected();
+        if (messageType.equals("Get"))
+            return new Get(key);
+        if (messageType.equals("Value"))
+            return new Value(key, value);
+        if (messageType.equals("Set"))
+            return new Set(key, value);
+
+        throw new IllegalArgumentException(messageType);
+    }
+
+    static byte[] bytes(int size, byte fill) {
+        byte[] bytes = new byte[size];
+
+        Arrays.fill(bytes, fill);
+
+        return bytes;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compressing and inflating values of a given size. "text" values are
+ * JSON-like configuration that compresses well, "random" values do not
+ * compress at all and are sent as is.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+    @Param({ "text", "random" })
+    public String data;
+
+    @Param({ "256", "4096", "65536", "1048576" })
+    public int size;
+
+    private Value message;
+
+    private ByteBuffer formatBuffer;
+    private ByteBuffer parseBuffer;
+
+    private Compression compression;
+    private Parser      parser;
+
+    @Setup
+    public void setUp() {
+        message = new Value(new byte[] { 'k' }, value(data, size));
+
+        compression = new Compression();
+        parser      = new Parser();
+
+        Message compressed = compression.compress(message);
+
+        formatBuffer = ByteBuffer.allocate(message.length());
+        parseBuffer  = ByteBuffer.wrap(compressed.format());
+    }
+
+    @TearDown
+    public void tearDown() {
+        compression.end();
+    }
+
+    @Benchmark
+    public ByteBuffer compress() {
+        formatBuffer.clear();
+
+        compression.compress(message).format(formatBuffer);
+
+        return formatBuffer;
+    }
+
+    @Benchmark
+    public Message decompress() throws Exception {
+        parseBuffer.rewind();
+
+        return parser.parse(parseBuffer);
+    }
+
+    private static byte[] value(String data, int size) {
+        byte[] value = new byte[size];
+
+        if (data.equals("random")) {
+            new Random(0).nextBytes(value);
+        } else {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; text.length() < size; i++)
+                text.append("{\"route\":\"/api/v1/").append(i).append("\",\"weight\":").append(i % 10).append("},");
+
+            for (int i = 0; i < size; i++)
+                value[i] = (byte) text.charAt(i);
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Lookups and updates of existing keys in a populated store.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfigStoreBenchmark {
+    @Param({ "Heap", "OffHeap" })
+    public String store;
+
+    @Param({ "1000", "1000000" })
+    public int keys;
+
+    private ConfigStore config;
+
+    private byte[][] keyBytes;
+    private byte[]   value;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        config = store.equals("Heap") ? new HeapConfigStore() : new OffHeapConfigStore();
+
+        keyBytes = new byte[keys][];
+        value    = CodecBenchmark.bytes(8, (byte) 'v');
+
+        for (int i = 0; i < keys; i++) {
+            keyBytes[i] = String.format("wine.benchmark.key.%d", i).getBytes();
+
+            config.put(keyBytes[i], 0, keyBytes[i].length, value, 0, value.length);
+        }
+    }
+
+    @Benchmark
+    public int get() {
+        byte[] key = nextKey();
+
+        return config.valueLength(key, 0, key.length);
+    }
+
+    @Benchmark
+    public void put() {
+        byte[] key = nextKey();
+
+        config.put(key, 0, key.length, value, 0, value.length);
+    }
+
+    private byte[] nextKey() {
+        if (++next == keys)
+            next = 0;
+
+        return keyBytes[next];
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A Get round trip on one connection while many other connections sit idle,
+ * against the event loop server and the blocking server.
+ *
+ * The larger connection counts need a generous open file limit and local
+ * port range on the benchmarking host, for example <code>ulimit -n
+ * 200000</code> and <code>net.ipv4.ip_local_port_range = 1024 65535</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConnectionsBenchmark {
+    @Param({ "selector", "blocking" })
+    public String transport;
+
+    @Param({ "100", "1000", "10000", "50000" })
+    public int connections;
+
+    @Param({ "45681" })
+    public int port;
+
+    private TestServer     selectorServer;
+    private BlockingServer blockingServer;
+
+    private Thread serverThread;
+
+    private final List<SocketChannel> idle = new ArrayList<SocketChannel>();
+
+    private BlockingClient client;
+
+    private final byte[] key = "key".getBytes();
+
+    @Setup
+    public void setUp() throws Exception {
+        start();
+
+        InetSocketAddress address = new InetSocketAddress("localhost", port);
+
+        byte[] login = new Login("foo", "bar").format();
+
+        for (int i = 1; i < connections; i++) {
+            SocketChannel channel = SocketChannel.open(address);
+
+            channel.write(ByteBuffer.wrap(login));
+
+            idle.add(channel);
+        }
+
+        client = BlockingClient.connect(address);
+        client.login("foo", "bar");
+        client.set(key, "value".getBytes());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+
+        for (SocketChannel channel : idle)
+            channel.close();
+
+        idle.clear();
+
+        if (selectorServer != null)
+            selectorServer.stop();
+        if (blockingServer != null)
+            blockingServer.stop();
+
+        serverThread.join();
+
+        selectorServer = null;
+        blockingServer = null;
+    }
+
+    @Benchmark
+    public byte[] get() throws IOException {
+        return client.get(key);
+    }
+
+    private void start() throws IOException {
+        if (transport.equals("blocking"))
+            blockingServer = new BlockingServer(port);
+        else
+            selectorServer = new TestServer(port);
+
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (blockingServer != null)
+                        blockingServer.run();
+                    else
+                        selectorServer.run();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        serverThread.setDaemon(true);
+        serverThread.start();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares message equality, hashing and formatting against the reflective
+ * implementation they replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ObjectsBenchmark {
+    @Param({ "Login", "Get", "Set" })
+    public String messageType;
+
+    private Message message;
+    private Message equalMessage;
+    private Message otherMessage;
+
+    @Setup
+    public void setUp() {
+        message      = message("foo", "bar");
+        equalMessage = message("foo", "bar");
+        otherMessage = message("foo", "baz");
+
+        verify(message, equalMessage);
+        verify(message, otherMessage);
+        verify(otherMessage, equalMessage);
+    }
+
+    @Benchmark
+    public boolean messageEquals() {
+        return message.equals(equalMessage);
+    }
+
+    @Benchmark
+    public boolean reflectionEquals() {
+        return EqualsBuilder.reflectionEquals(message, equalMessage);
+    }
+
+    @Benchmark
+    public int messageHashCode() {
+        return message.hashCode();
+    }
+
+    @Benchmark
+    public int reflectionHashCode() {
+        return HashCodeBuilder.reflectionHashCode(message);
+    }
+
+    @Benchmark
+    public String messageToString() {
+        return message.toString();
+    }
+
+    @Benchmark
+    public String reflectionToString() {
+        return ReflectionToStringBuilder.toString(message, ToStringStyle.SIMPLE_STYLE);
+    }
+
+    private Message message(String key, String value) {
+        if (messageType.equals("Login"))
+            return new Login(key, value);
+        if (messageType.equals("Get"))
+            return new Get(key.concat(value).getBytes());
+        if (messageType.equals("Set"))
+            return new Set(key.getBytes(), value.getBytes());
+
+        throw new IllegalArgumentException(messageType);
+    }
+
+    private static void verify(Message a, Message b) {
+        boolean expected = EqualsBuilder.reflectionEquals(a, b);
+
+        if (a.equals(b) != expected || b.equals(a) != expected)
+            throw new IllegalStateException(String.format("%s and %s: equals differs from reflection", a, b));
+
+        if (expected && a.hashCode() != b.hashCode())
+            throw new IllegalStateException(String.format("%s and %s: equal but hash codes differ", a, b));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import silvertip.PartialMessageException;
+
+/**
+ * A Set followed by a Get of the same key against a {@link TestServer}
+ * over loopback, waiting for the Value reply, and a batch of pipelined Gets
+ * answered with one write.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TestServerBenchmark {
+    @Param({ "0", "8", "1024", "65536" })
+    public int size;
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({ "45678" })
+    public int port;
+
+    private static TestServer server;
+
+    private SocketChannel channel;
+
+    private ByteBuffer setBuffer;
+    private ByteBuffer getBuffer;
+    private ByteBuffer batchBuffer;
+    private ByteBuffer rxBuffer;
+
+    private final Parser parser = new Parser();
+
+    @Setup
+    public void setUp() throws Exception {
+        start(port);
+
+        channel = SocketChannel.open(new InetSocketAddress("localhost", port));
+        channel.socket().setTcpNoDelay(true);
+
+        byte[] key   = CodecBenchmark.bytes(size, (byte) 'k');
+        byte[] value = CodecBenchmark.bytes(size, (byte) 'v');
+
+        setBuffer = ByteBuffer.wrap(new Set(key, value).format());
+        getBuffer = ByteBuffer.wrap(new Get(key).format());
+        rxBuffer  = ByteBuffer.allocate(BATCH_SIZE * new Value(key, value).length());
+
+        batchBuffer = ByteBuffer.allocate(BATCH_SIZE * getBuffer.capacity());
+        for (int i = 0; i < BATCH_SIZE; i++)
+            batchBuffer.put(getBuffer.array());
+
+        write(ByteBuffer.wrap(new Login("foo", "bar").format()));
+        read();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        channel.close();
+    }
+
+    @Benchmark
+    public Message setAndGet() throws IOException {
+        setBuffer.clear();
+        write(setBuffer);
+
+        getBuffer.clear();
+        write(getBuffer);
+
+        return read();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Message pipelinedGets() throws IOException {
+        batchBuffer.clear();
+        write(batchBuffer);
+
+        Message message = null;
+
+        for (int i = 0; i < BATCH_SIZE; i++)
+            message = read();
+
+        return message;
+    }
+
+    /*
+     * One server per fork: the trials for each size connect to it in turn.
+     */
+    private static synchronized void start(int port) throws IOException {
+        if (server != null)
+            return;
+
+        server = new TestServer(port);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private Message read() throws IOException {
+        while (true) {
+            rxBuffer.flip();
+
+            try {
+                return parser.parse(rxBuffer);
+            } catch (PartialMessageException e) {
+                rxBuffer.position(0);
+            } catch (Exception e) {
+                throw new IOException(e.getMessage());
+            } finally {
+                rxBuffer.compact();
+            }
+
+            if (channel.read(rxBuffer) < 0)
+                throw new IOException("Connection closed");
+        }
+    }
+}
@@ -18,12 +18,8 @@ package wine;
 abstract class AbstractField implements Field {
 
     @Override
-    public boolean equals(Object that) {
-        return Objects.equals(this, that);
-    }
+    public abstract boolean equals(Object that);
 
     @Override
-    public int hashCode() {
-        return Objects.hashCode(this);
-    }
+    public abstract int hashCode();
 }
@@ -29,6 +29,35 @@ abstract class AbstractMessage implements Message {
         final byte GET            = 'G';
         final byte VALUE          = 'V';
         final byte SET            = 'S';
+        final byte MULTI_GET      = 'g';
+        final byte MULTI_VALUE    = 'v';
+        final byte MULTI_SET      = 's';
+        final byte WATCH          = 'W';
+        final byte UNWATCH        = 'w';
+        final byte UPDATE         = 'U';
+        final byte SET_CHUNK      = 'C';
+        final byte VALUE_CHUNK    = 'c';
+        final byte CHUNKED_GET    = 'R';
+
+        final byte LOGIN_FEATURES          = 'l';
+        final byte LOGIN_ACCEPTED_FEATURES = 'a';
+        final byte COMPRESSED              = 'Z';
+
+        final byte RANGE_GET = 'H';
+        final byte SAMPLES   = 'h';
+        final byte SCAN      = 'K';
+
+        final byte DEFINE_KEY = 'D';
+        final byte ID_GET     = 'i';
+        final byte ID_SET     = 'I';
+        final byte ID_VALUE   = 'd';
+
+        final byte TAGGED = 'T';
+
+        final byte FOLLOW   = 'F';
+        final byte POSITION = 'P';
+
+        final byte RESEND = 'r';
     }
 
     private byte messageType;
@@ -37,26 +66,58 @@ abstract class AbstractMessage implements Message {
         this.messageType = messageType;
     }
 
+    /**
+     * Parse the message at the current position of the buffer. The length
+     * prefixes are checked first, so an incomplete frame is neither decoded
+     * nor allocated for, however large it is going to be.
+     */
     public static AbstractMessage from(ByteBuffer buffer) throws GarbledMessageException, PartialMessageException {
+        Frames.complete(buffer, buffer.position());
+
         try {
-            AbstractMessage message = create(buffer);
+            AbstractMessage message = create(buffer.get());
 
             message.parse(buffer);
 
+            if (message instanceof Tagged)
+                ((Tagged) message).message(from(buffer));
+
             return message;
         } catch (BufferUnderflowException e) {
             throw new PartialMessageException();
         }
     }
 
-    private static AbstractMessage create(ByteBuffer buffer) throws GarbledMessageException {
-        byte messageType = buffer.get();
+    static AbstractMessage from(ByteBuffer buffer, MessagePool pool) throws GarbledMessageException, PartialMessageException {
+        Frames.complete(buffer, buffer.position());
+
+        AbstractMessage message = null;
+
+        try {
+            message = pool.acquire(buffer.get());
+
+            message.parse(buffer);
+
+            if (message instanceof Tagged)
+                ((Tagged) message).message(from(buffer, pool));
+
+            return message;
+        } catch (BufferUnderflowException e) {
+            if (message != null)
+                pool.release(message);
+
+            throw new PartialMessageException();
+        }
+    }
 
+    static AbstractMessage create(byte messageType) throws GarbledMessageException {
         switch (messageType) {
         case Type.LOGIN:
-            return new Login();
+        case Type.LOGIN_FEATURES:
+            return new Login(messageType);
         case Type.LOGIN_ACCEPTED:
-            return new LoginAccepted();
+        case Type.LOGIN_ACCEPTED_FEATURES:
+            return new LoginAccepted(messageType);
         case Type.LOGIN_REJECTED:
             return new LoginRejected();
         case Type.GET:
@@ -65,11 +126,71 @@ abstract class AbstractMessage implements Message {
             return new Value();
         case Type.SET:
             return new Set();
+        case Type.MULTI_GET:
+            return new MultiGet();
+        case Type.MULTI_VALUE:
+            return new MultiValue();
+        case Type.MULTI_SET:
+            return new MultiSet();
+        case Type.WATCH:
+            return new Watch();
+        case Type.UNWATCH:
+            return new Unwatch();
+        case Type.UPDATE:
+            return new Update();
+        case Type.SET_CHUNK:
+            return new SetChunk();
+        case Type.VALUE_CHUNK:
+            return new ValueChunk();
+        case Type.CHUNKED_GET:
+            return new ChunkedGet();
+        case Type.COMPRESSED:
+            return new Compressed();
+        case Type.RANGE_GET:
+            return new RangeGet();
+        case Type.SAMPLES:
+            return new Samples();
+        case Type.SCAN:
+            return new Scan();
+        case Type.DEFINE_KEY:
+            return new DefineKey();
+        case Type.ID_GET:
+            return new IdGet();
+        case Type.ID_SET:
+            return new IdSet();
+        case Type.ID_VALUE:
+            return new IdValue();
+        case Type.TAGGED:
+            return new Tagged();
+        case Type.FOLLOW:
+            return new Follow();
+        case Type.POSITION:
+            return new Position();
+        case Type.RESEND:
+            return new Resend();
         }
 
         throw new GarbledMessageException(String.format("Unexpected message type %c", messageType));
     }
 
+    byte messageType() {
+        return messageType;
+    }
+
+    /**
+     * Switch between the formats of a message type.
+     */
+    void messageType(byte messageType) {
+        this.messageType = messageType;
+    }
+
+    /**
+     * Let the fields of this message reuse their buffers when the message
+     * is parsed again.
+     */
+    void reusable() {
+    }
+
     @Override
     public void parse(ByteBuffer buffer) {
     }
@@ -96,17 +217,38 @@ abstract class AbstractMessage implements Message {
 
     @Override
     public boolean equals(Object that) {
-        return Objects.equals(this, that);
+        if (that == null)
+            return false;
+
+        if (that == this)
+            return true;
+
+        if (that.getClass() != this.getClass())
+            return false;
+
+        return ((AbstractMessage) that).messageType == this.messageType;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(this);
+        return messageType;
     }
 
     @Override
     public String toString() {
-        return Objects.toString(this);
+        StringBuilder builder = new StringBuilder();
+
+        builder.append(getClass().getSimpleName()).append('(');
+
+        toString(builder);
+
+        return builder.append(')').toString();
+    }
+
+    /**
+     * Append the fields of this message, separated by commas.
+     */
+    protected void toString(StringBuilder builder) {
     }
 
 }
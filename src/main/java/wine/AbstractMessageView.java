@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+abstract class AbstractMessageView implements MessageView {
+    protected ByteBuffer buffer;
+    protected int        offset;
+
+    /**
+     * Point this view at the message starting at <code>offset</code>. The
+     * frame is not validated; see {@link ViewParser} for that.
+     */
+    public void wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    @Override
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    @Override
+    public int offset() {
+        return offset;
+    }
+
+    @Override
+    public int length() {
+        return 1;
+    }
+
+    @Override
+    public String toString() {
+        return toMessage().toString();
+    }
+
+    protected boolean bytesEqual(int offset, int length, byte[] bytes) {
+        if (bytes.length != length)
+            return false;
+
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != bytes[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    protected void copyBytes(int offset, int length, byte[] dst, int dstOffset) {
+        for (int i = 0; i < length; i++)
+            dst[dstOffset + i] = buffer.get(offset + i);
+    }
+
+    protected byte[] bytes(int offset, int length) {
+        byte[] bytes = new byte[length];
+
+        copyBytes(offset, length, bytes, 0);
+
+        return bytes;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live values of a JVM agent, served by an {@link AgentServer}.
+ *
+ * A Get for a registered key reads its source on demand and a Set applies
+ * the value through its setter, instead of going through the configuration
+ * store. Numbers are sent as ASCII decimals and strings in UTF-8.
+ *
+ * Registering takes a lock and copies the registry. Lookups only read a
+ * volatile reference, so serving requests never blocks the agent's own
+ * threads. Sources and setters are invoked from the server's thread and
+ * must be thread-safe themselves, for example by reading and writing
+ * volatile fields or atomics.
+ */
+public class Agent {
+    public interface LongSource {
+        long get();
+    }
+
+    public interface StringSource {
+        String get();
+    }
+
+    public interface LongSetter {
+        void set(long value);
+    }
+
+    public interface StringSetter {
+        void set(String value);
+    }
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /*
+     * An open-addressing table with linear probing, replaced as a whole on
+     * every change. Its length is a power of two.
+     */
+    private volatile Entry[] entries = new Entry[16];
+
+    private int size;
+
+    public synchronized void source(String key, LongSource source) {
+        Entry entry = entry(key);
+
+        put(new Entry(entry.key, source, null, entry.longSetter, entry.stringSetter));
+    }
+
+    public synchronized void source(String key, StringSource source) {
+        Entry entry = entry(key);
+
+        put(new Entry(entry.key, null, source, entry.longSetter, entry.stringSetter));
+    }
+
+    public synchronized void longSetter(String key, LongSetter setter) {
+        Entry entry = entry(key);
+
+        put(new Entry(entry.key, entry.longSource, entry.stringSource, setter, null));
+    }
+
+    public synchronized void stringSetter(String key, StringSetter setter) {
+        Entry entry = entry(key);
+
+        put(new Entry(entry.key, entry.longSource, entry.stringSource, null, setter));
+    }
+
+    /**
+     * Serve <code>value</code> for both Gets and Sets.
+     */
+    public synchronized void register(String key, final AtomicLong value) {
+        source(key, new LongSource() {
+            @Override
+            public long get() {
+                return value.get();
+            }
+        });
+        longSetter(key, new LongSetter() {
+            @Override
+            public void set(long newValue) {
+                value.set(newValue);
+            }
+        });
+    }
+
+    public synchronized void remove(String key) {
+        byte[] bytes = bytes(key);
+
+        Entry entry = find(entries, bytes, bytes.length);
+        if (entry == null)
+            return;
+
+        Entry[] table = new Entry[entries.length];
+
+        for (Entry other : entries) {
+            if (other != null && other != entry)
+                insert(table, other);
+        }
+
+        entries = table;
+        size--;
+    }
+
+    /**
+     * Return true if <code>key</code> is registered.
+     */
+    public boolean contains(byte[] key) {
+        return find(entries, key, key.length) != null;
+    }
+
+    /*
+     * Read the source of the key into <code>reply</code>. Return false if
+     * the key has no source.
+     */
+    boolean read(byte[] key, int keyLength, Reading reply) {
+        Entry entry = find(entries, key, keyLength);
+        if (entry == null)
+            return false;
+
+        if (entry.longSource != null) {
+            reply.set(entry.key, entry.longSource.get());
+            return true;
+        }
+
+        if (entry.stringSource != null) {
+            reply.set(entry.key, string(entry.stringSource.get()));
+            return true;
+        }
+
+        return false;
+    }
+
+    /*
+     * Return the current value of the key, or null if it has no source.
+     */
+    byte[] get(byte[] key) {
+        Entry entry = find(entries, key, key.length);
+        if (entry == null)
+            return null;
+
+        if (entry.longSource != null)
+            return Long.toString(entry.longSource.get()).getBytes(CHARSET);
+
+        if (entry.stringSource != null)
+            return string(entry.stringSource.get());
+
+        return null;
+    }
+
+    /*
+     * Apply a value through the setter of the key. Return false if the key
+     * is not registered; values for registered keys without a matching
+     * setter, or that are not valid numbers, are ignored.
+     */
+    boolean set(byte[] key, int keyLength, byte[] value, int valueLength) {
+        Entry entry = find(entries, key, keyLength);
+        if (entry == null)
+            return false;
+
+        if (entry.longSetter != null) {
+            try {
+                entry.longSetter.set(parseLong(value, valueLength));
+            } catch (NumberFormatException e) {
+            }
+        } else if (entry.stringSetter != null) {
+            entry.stringSetter.set(new String(value, 0, valueLength, CHARSET));
+        }
+
+        return true;
+    }
+
+    private Entry entry(String key) {
+        byte[] bytes = bytes(key);
+
+        Entry entry = find(entries, bytes, bytes.length);
+
+        return entry != null ? entry : new Entry(bytes, null, null, null, null);
+    }
+
+    private void put(Entry entry) {
+        boolean added = find(entries, entry.key, entry.key.length) == null;
+
+        int capacity = entries.length;
+        if (added && 2 * (size + 1) > capacity)
+            capacity *= 2;
+
+        Entry[] table = new Entry[capacity];
+
+        for (Entry other : entries) {
+            if (other != null && !Arrays.equals(other.key, entry.key))
+                insert(table, other);
+        }
+
+        insert(table, entry);
+
+        entries = table;
+
+        if (added)
+            size++;
+    }
+
+    private static void insert(Entry[] table, Entry entry) {
+        int mask = table.length - 1;
+
+        for (int i = entry.hash & mask; ; i = (i + 1) & mask) {
+            if (table[i] == null) {
+                table[i] = entry;
+                return;
+            }
+        }
+    }
+
+    private static Entry find(Entry[] table, byte[] key, int keyLength) {
+        int mask = table.length - 1;
+        int hash = OffHeapConfigStore.hash(key, 0, keyLength);
+
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Entry entry = table[i];
+            if (entry == null)
+                return null;
+
+            if (entry.hash == hash && entry.matches(key, keyLength))
+                return entry;
+        }
+    }
+
+    /*
+     * Parse an ASCII decimal without allocating.
+     */
+    static long parseLong(byte[] bytes, int length) {
+        if (length == 0)
+            throw new NumberFormatException();
+
+        boolean negative = bytes[0] == '-';
+
+        int  i     = negative ? 1 : 0;
+        long value = 0;
+
+        if (i == length)
+            throw new NumberFormatException();
+
+        for (; i < length; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException();
+
+            if (value < (Long.MIN_VALUE + digit) / 10)
+                throw new NumberFormatException();
+
+            value = 10 * value - digit;
+        }
+
+        if (!negative) {
+            if (value == Long.MIN_VALUE)
+                throw new NumberFormatException();
+
+            return -value;
+        }
+
+        return value;
+    }
+
+    private static byte[] string(String value) {
+        return value != null ? value.getBytes(CHARSET) : new byte[0];
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(CHARSET);
+    }
+
+    private static class Entry {
+        final byte[] key;
+        final int    hash;
+
+        final LongSource   longSource;
+        final StringSource stringSource;
+        final LongSetter   longSetter;
+        final StringSetter stringSetter;
+
+        Entry(byte[] key, LongSource longSource, StringSource stringSource, LongSetter longSetter, StringSetter stringSetter) {
+            this.key          = key;
+            this.hash         = OffHeapConfigStore.hash(key, 0, key.length);
+            this.longSource   = longSource;
+            this.stringSource = stringSource;
+            this.longSetter   = longSetter;
+            this.stringSetter = stringSetter;
+        }
+
+        boolean matches(byte[] other, int length) {
+            if (length != key.length)
+                return false;
+
+            for (int i = 0; i < length; i++) {
+                if (other[i] != key[i])
+                    return false;
+            }
+
+            return true;
+        }
+    }
+}
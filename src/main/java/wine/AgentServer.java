@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+
+/**
+ * An embeddable server for the live values of a JVM agent.
+ *
+ * Gets and Sets for keys registered with the {@link Agent} read and apply
+ * them on demand; other keys are kept in a configuration store like in
+ * {@link TestServer}. The server runs on daemon threads, so it does not
+ * keep the JVM alive.
+ */
+public class AgentServer {
+    private final TestServer server;
+
+    private Thread thread;
+
+    public AgentServer(int port, Agent agent) throws IOException {
+        this(port, agent, new HeapConfigStore());
+    }
+
+    public AgentServer(int port, Agent agent, ConfigStore config) throws IOException {
+        this.server = new TestServer(port, config, null, 1, agent, null, Backpressure.DEFAULT);
+    }
+
+    /**
+     * Start serving in the background.
+     */
+    public synchronized void start() {
+        if (thread != null)
+            return;
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, "wine-agent");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop serving and wait for the server's threads to exit.
+     */
+    public synchronized void stop() throws InterruptedException {
+        server.stop();
+
+        if (thread != null)
+            thread.join();
+
+        thread = null;
+    }
+
+    public Stats stats() {
+        return server.stats();
+    }
+}
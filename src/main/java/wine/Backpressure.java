@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+/**
+ * Limits on what a server connection may have waiting to be sent, and
+ * what happens to a connection that reaches them.
+ *
+ * A connection is over its limits once more than {@link #maxBytes()}
+ * bytes or more than {@link #maxMessages()} messages are waiting. A
+ * paused connection resumes once it is back under half of both limits.
+ * Whatever the policy, a connection that gets to twice its limits while
+ * paused, or that has more than {@link #maxMessages()} requests or
+ * {@link #maxBytes()} bytes of requests deferred, is disconnected.
+ */
+public class Backpressure {
+    /**
+     * Stop handling the requests of a connection over its limits. Its
+     * requests are deferred until it resumes; updates for its watches are
+     * still sent.
+     */
+    public static final int PAUSE = 0;
+
+    /**
+     * Pause like {@link #PAUSE}, and while paused keep only the latest
+     * update for each watched key. Updates for different keys may then
+     * arrive in a different order than they were applied.
+     */
+    public static final int COALESCE = 1;
+
+    /**
+     * Disconnect a connection as soon as it is over its limits.
+     */
+    public static final int DISCONNECT = 2;
+
+    public static final long DEFAULT_MAX_BYTES    = 16 * 1024 * 1024;
+    public static final int  DEFAULT_MAX_MESSAGES = 64 * 1024;
+
+    public static final Backpressure DEFAULT = new Backpressure(COALESCE, DEFAULT_MAX_BYTES, DEFAULT_MAX_MESSAGES);
+
+    private final int  policy;
+    private final long maxBytes;
+    private final int  maxMessages;
+
+    public Backpressure(int policy, long maxBytes, int maxMessages) {
+        if (policy < PAUSE || policy > DISCONNECT)
+            throw new IllegalArgumentException(String.format("Invalid policy %d", policy));
+
+        if (maxBytes <= 0 || maxMessages <= 0)
+            throw new IllegalArgumentException("Limits must be positive");
+
+        this.policy      = policy;
+        this.maxBytes    = maxBytes;
+        this.maxMessages = maxMessages;
+    }
+
+    public int policy() {
+        return policy;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    public int maxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * Return true if <code>bytes</code> and <code>messages</code> waiting
+     * exceed the limits multiplied by <code>factor</code>.
+     */
+    boolean exceeded(long bytes, int messages, double factor) {
+        return bytes > factor * maxBytes || messages > factor * maxMessages;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Wine client that issues one request at a time and blocks until the
+ * reply arrives.
+ *
+ * The client is safe to use from one thread at a time. Updates for watches
+ * set up by other means are skipped.
+ */
+public class BlockingClient {
+    /**
+     * The default size of the chunks a streamed value is sent in.
+     */
+    public static final int CHUNK_SIZE = 16 * 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final BlockingConnection connection;
+
+    private final Map<ByteString, Integer> ids = new HashMap<ByteString, Integer>();
+
+    private int features;
+
+    private BlockingClient(BlockingConnection connection) {
+        this.connection = connection;
+    }
+
+    public static BlockingClient connect(InetSocketAddress address) throws IOException {
+        Socket socket = new Socket();
+
+        socket.connect(address);
+
+        return new BlockingClient(new BlockingConnection(socket));
+    }
+
+    /**
+     * Return true if the login is accepted.
+     */
+    public boolean login(String username, String password) throws IOException {
+        return login(username, password, 0);
+    }
+
+    /**
+     * Log in asking for <code>features</code>; see {@link Features}. Return
+     * true if the login is accepted.
+     */
+    public boolean login(String username, String password, int features) throws IOException {
+        connection.write(new Login(username, password, features));
+
+        Message reply = reply();
+        if (!(reply instanceof LoginAccepted))
+            return false;
+
+        this.features = ((LoginAccepted) reply).features();
+
+        connection.features(this.features);
+
+        return true;
+    }
+
+    /**
+     * Return the features granted by the server.
+     */
+    public int features() {
+        return features;
+    }
+
+    /**
+     * Return the value of <code>key</code>, which is empty if the key is not
+     * set.
+     */
+    public byte[] get(byte[] key) throws IOException {
+        connection.write(new Get(key));
+
+        Message reply = reply();
+        if (!(reply instanceof Value))
+            throw new IOException("Unexpected reply: " + reply);
+
+        return ((Value) reply).value();
+    }
+
+    /**
+     * Return the ID of <code>key</code>, defining it on the connection the
+     * first time. Requires {@link Features#KEY_IDS}.
+     */
+    public int define(byte[] key) throws IOException {
+        ByteString name = new ByteString(key.clone());
+
+        Integer id = ids.get(name);
+        if (id != null)
+            return id;
+
+        id = ids.size();
+
+        connection.write(new DefineKey(id, key));
+
+        ids.put(name, id);
+
+        return id;
+    }
+
+    /**
+     * Return the value of a key defined with {@link #define(byte[])}.
+     */
+    public byte[] get(int id) throws IOException {
+        connection.write(new IdGet(id));
+
+        Message reply = reply();
+        if (!(reply instanceof IdValue))
+            throw new IOException("Unexpected reply: " + reply);
+
+        return ((IdValue) reply).value();
+    }
+
+    /**
+     * Get several keys at once.
+     */
+    public MultiValue get(MultiGet request) throws IOException {
+        return multiValue(request);
+    }
+
+    /**
+     * Return the samples of <code>key</code> with timestamps from
+     * <code>from</code>, inclusive, to <code>to</code>, exclusive. There are
+     * none unless the server keeps the key's history.
+     */
+    public Samples range(byte[] key, long from, long to) throws IOException {
+        connection.write(new RangeGet(key, from, to));
+
+        Message reply = reply();
+        if (!(reply instanceof Samples))
+            throw new IOException("Unexpected reply: " + reply);
+
+        return (Samples) reply;
+    }
+
+    /**
+     * Return one page of keys by prefix; see {@link Scan}.
+     */
+    public MultiValue scan(Scan request) throws IOException {
+        return multiValue(request);
+    }
+
+    /**
+     * Return the changes a multicast publisher sent; see {@link Resend}.
+     */
+    public MultiValue resend(Resend request) throws IOException {
+        return multiValue(request);
+    }
+
+    /**
+     * Return every key that starts with <code>prefix</code>, in order,
+     * fetching them a page at a time.
+     */
+    public List<byte[]> keys(byte[] prefix) throws IOException {
+        List<byte[]> keys = new ArrayList<byte[]>();
+
+        Scan request = new Scan(prefix, EMPTY, Handler.SCAN_LIMIT, false);
+
+        while (true) {
+            MultiValue page = scan(request);
+            if (page.size() == 0)
+                break;
+
+            for (int i = 0; i < page.size(); i++)
+                keys.add(page.key(i));
+
+            request.after(page.key(page.size() - 1));
+        }
+
+        return keys;
+    }
+
+    public void set(byte[] key, byte[] value) throws IOException {
+        connection.write(new Set(key, value));
+    }
+
+    public void set(MultiSet request) throws IOException {
+        connection.write(request);
+    }
+
+    /**
+     * Set the value of a key defined with {@link #define(byte[])}.
+     */
+    public void set(int id, byte[] value) throws IOException {
+        connection.write(new IdSet(id, value));
+    }
+
+    /**
+     * Set a value read from <code>value</code> until end of stream, sending
+     * it in chunks of {@link #CHUNK_SIZE} bytes. Only one chunk is held in
+     * memory at a time.
+     */
+    public void set(byte[] key, InputStream value) throws IOException {
+        set(key, value, CHUNK_SIZE);
+    }
+
+    public void set(byte[] key, InputStream value, int chunkSize) throws IOException {
+        byte[] chunk = new byte[chunkSize];
+
+        SetChunk message = new SetChunk();
+
+        message.key(key);
+
+        while (true) {
+            int length = read(value, chunk);
+            if (length == 0)
+                break;
+
+            message.value(length == chunk.length ? chunk : Arrays.copyOf(chunk, length));
+
+            connection.write(message);
+        }
+
+        message.value(EMPTY);
+
+        connection.write(message);
+    }
+
+    /**
+     * Get a value as a stream that reads it chunk by chunk as the chunks
+     * arrive. Read the stream to its end, or close it, before issuing the
+     * next request.
+     */
+    public InputStream getStream(byte[] key) throws IOException {
+        connection.write(new ChunkedGet(key));
+
+        return new ChunkInputStream();
+    }
+
+    public void close() {
+        connection.close();
+    }
+
+    /*
+     * Fill the chunk unless the stream ends first. Return the number of
+     * bytes read.
+     */
+    private static int read(InputStream in, byte[] chunk) throws IOException {
+        int length = 0;
+
+        while (length < chunk.length) {
+            int count = in.read(chunk, length, chunk.length - length);
+            if (count < 0)
+                break;
+
+            length += count;
+        }
+
+        return length;
+    }
+
+    private class ChunkInputStream extends InputStream {
+        private byte[] chunk = EMPTY;
+
+        private int position;
+
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            if (!next())
+                return -1;
+
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+
+            if (!next())
+                return -1;
+
+            int count = Math.min(len, chunk.length - position);
+
+            System.arraycopy(chunk, position, b, off, count);
+
+            position += count;
+
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return chunk.length - position;
+        }
+
+        /**
+         * Skip the rest of the value.
+         */
+        @Override
+        public void close() throws IOException {
+            while (next())
+                position = chunk.length;
+        }
+
+        /*
+         * Return false at the end of the value.
+         */
+        private boolean next() throws IOException {
+            while (position == chunk.length) {
+                if (done)
+                    return false;
+
+                Message reply = reply();
+                if (!(reply instanceof ValueChunk))
+                    throw new IOException("Unexpected reply: " + reply);
+
+                ValueChunk message = (ValueChunk) reply;
+
+                chunk    = message.value();
+                position = 0;
+                done     = chunk.length == 0;
+            }
+
+            return true;
+        }
+    }
+
+    private MultiValue multiValue(Message request) throws IOException {
+        connection.write(request);
+
+        Message reply = reply();
+        if (!(reply instanceof MultiValue))
+            throw new IOException("Unexpected reply: " + reply);
+
+        return (MultiValue) reply;
+    }
+
+    private Message reply() throws IOException {
+        while (true) {
+            Message message = connection.read();
+            if (message == null)
+                throw new IOException("Connection closed");
+
+            if (!(message instanceof Update))
+                return message;
+        }
+    }
+}
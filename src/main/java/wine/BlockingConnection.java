@@ -0,0 +1,361 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import silvertip.GarbledMessageException;
+import silvertip.PartialMessageException;
+
+/**
+ * A connection over a blocking socket.
+ *
+ * One thread reads messages while any number of threads send them; sends are
+ * serialized on the connection. Replies are buffered until the reading
+ * thread runs out of received messages and is about to block.
+ *
+ * Formatted messages, such as watch updates sent from the threads of other
+ * connections, are queued for a writer thread of the connection's own, so
+ * that a peer that stops reading holds up nobody else. A connection with
+ * more than the default {@link Backpressure} limits queued is closed.
+ */
+class BlockingConnection implements Handler.Session {
+    private static final int INITIAL_BUFFER_SIZE  = 4096;
+    private static final int RETAINED_BUFFER_SIZE = 64 * 1024;
+    private static final int TX_BUFFER_SIZE       = 8192;
+
+    /**
+     * The longest frame accepted from the peer: room for the largest value
+     * and its key.
+     */
+    static final int MAX_FRAME_LENGTH = Handler.MAX_VALUE_SIZE + 1024 * 1024;
+
+    private final Socket       socket;
+    private final InputStream  in;
+    private final OutputStream out;
+
+    private final Parser parser = new Parser();
+    private final Stats  stats;
+
+    private final BlockingQueue<byte[]> queued      = new LinkedBlockingQueue<byte[]>();
+    private final AtomicLong            queuedBytes = new AtomicLong();
+
+    /*
+     * Started on the first queued message; guarded by the queue.
+     */
+    private Thread writer;
+
+    private volatile boolean closed;
+
+    /*
+     * Received bytes between position and limit are yet to be parsed.
+     */
+    private ByteBuffer rxBuffer;
+
+    private final ByteBuffer txBuffer = ByteBuffer.allocate(TX_BUFFER_SIZE);
+
+    /*
+     * Only used while holding the connection's lock.
+     */
+    private Compression compression;
+
+    /*
+     * Only used by the reading thread.
+     */
+    private KeyTable keys;
+
+    public BlockingConnection(Socket socket) throws IOException {
+        this(socket, new Stats());
+    }
+
+    /**
+     * Create a connection that counts its traffic in <code>stats</code>.
+     */
+    public BlockingConnection(Socket socket, Stats stats) throws IOException {
+        this.socket = socket;
+        this.stats  = stats;
+        this.in     = socket.getInputStream();
+        this.out    = socket.getOutputStream();
+
+        this.rxBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        this.rxBuffer.flip();
+
+        socket.setTcpNoDelay(true);
+    }
+
+    /**
+     * Block until a message arrives. Return null when the peer closes the
+     * connection.
+     */
+    public Message read() throws IOException {
+        while (true) {
+            int position = rxBuffer.position();
+
+            try {
+                Message message = parser.parse(rxBuffer);
+
+                stats.received(rxBuffer.position() - position);
+
+                return message;
+            } catch (PartialMessageException e) {
+                rxBuffer.position(position);
+            } catch (GarbledMessageException e) {
+                stats.garbled();
+
+                throw new IOException(e.getMessage());
+            }
+
+            flush();
+
+            int frameLength = frameLength();
+            if (frameLength > MAX_FRAME_LENGTH) {
+                stats.garbled();
+
+                throw new IOException(String.format("Frame of %d bytes is too long", frameLength));
+            }
+
+            if (!fill(frameLength))
+                return null;
+        }
+    }
+
+    /**
+     * Send a reply, closing the connection if that fails. The reading thread
+     * then sees the connection closed.
+     */
+    @Override
+    public synchronized void send(Message message) {
+        try {
+            buffer(message);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public synchronized void features(int features) {
+        if ((features & Features.COMPRESSION) != 0)
+            compression = new Compression();
+
+        if ((features & Features.KEY_IDS) != 0)
+            keys = new KeyTable();
+    }
+
+    @Override
+    public KeyTable keys() {
+        return keys;
+    }
+
+    /**
+     * Sending blocks until the socket takes the message, so the connection
+     * is always ready for more.
+     */
+    @Override
+    public boolean ready() {
+        return true;
+    }
+
+    /**
+     * Send a message right away.
+     */
+    public synchronized void write(Message message) throws IOException {
+        buffer(message);
+
+        flush();
+    }
+
+    /**
+     * Queue a message for the writer thread. Safe to invoke from any
+     * thread; never blocks.
+     */
+    @Override
+    public void send(byte[] message) {
+        if (closed)
+            return;
+
+        if (queued.size() >= Backpressure.DEFAULT_MAX_MESSAGES || queuedBytes.get() + message.length > Backpressure.DEFAULT_MAX_BYTES) {
+            stats.overflowed();
+
+            close();
+            return;
+        }
+
+        queuedBytes.addAndGet(message.length);
+
+        queued.add(message);
+
+        synchronized (queued) {
+            if (writer == null && !closed) {
+                writer = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain();
+                    }
+                }, "wine-writer");
+
+                writer.setDaemon(true);
+                writer.start();
+            }
+        }
+    }
+
+    public synchronized void write(byte[] message) throws IOException {
+        flush();
+
+        stats.sent(message.length);
+
+        out.write(message);
+    }
+
+    public synchronized void flush() throws IOException {
+        if (txBuffer.position() == 0)
+            return;
+
+        out.write(txBuffer.array(), 0, txBuffer.position());
+
+        txBuffer.clear();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+
+        try {
+            socket.close();
+        } catch (IOException e) {
+        }
+
+        synchronized (queued) {
+            if (writer != null)
+                writer.interrupt();
+        }
+
+        queued.clear();
+
+        /*
+         * A write blocked on the socket holds the lock until closing the
+         * socket fails it.
+         */
+        synchronized (this) {
+            if (compression != null)
+                compression.end();
+
+            compression = null;
+        }
+    }
+
+    private void drain() {
+        try {
+            while (!closed) {
+                byte[] message = queued.take();
+
+                queuedBytes.addAndGet(-message.length);
+
+                write(message);
+            }
+        } catch (InterruptedException e) {
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    private void buffer(Message message) throws IOException {
+        if (compression != null)
+            message = compression.compress(message);
+
+        int length = message.length();
+
+        stats.sent(length);
+
+        if (length > txBuffer.remaining())
+            flush();
+
+        if (length <= txBuffer.remaining())
+            message.format(txBuffer);
+        else
+            out.write(message.format());
+    }
+
+    /*
+     * Return the length of the partial frame at the position, if the length
+     * prefixes are in.
+     */
+    private int frameLength() throws IOException {
+        try {
+            return Frames.length(rxBuffer, rxBuffer.position());
+        } catch (GarbledMessageException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /*
+     * Read more bytes. A full buffer grows by doubling, but never past the
+     * length of the frame if it is known, so a frame claiming to be long
+     * costs memory only as its bytes arrive. A buffer that grew for a long
+     * frame shrinks back once the frame has been parsed.
+     */
+    private boolean fill(int frameLength) throws IOException {
+        rxBuffer.compact();
+
+        if (rxBuffer.capacity() > RETAINED_BUFFER_SIZE && rxBuffer.position() <= INITIAL_BUFFER_SIZE && frameLength <= INITIAL_BUFFER_SIZE)
+            resize(INITIAL_BUFFER_SIZE);
+        else if (!rxBuffer.hasRemaining())
+            resize(grow(frameLength));
+
+        int count = in.read(rxBuffer.array(), rxBuffer.arrayOffset() + rxBuffer.position(), rxBuffer.remaining());
+        if (count > 0)
+            rxBuffer.position(rxBuffer.position() + count);
+
+        rxBuffer.flip();
+
+        return count >= 0;
+    }
+
+    private int grow(int frameLength) throws IOException {
+        int capacity = rxBuffer.capacity();
+
+        if (capacity >= MAX_FRAME_LENGTH) {
+            stats.garbled();
+
+            throw new IOException(String.format("Frame of over %d bytes is too long", capacity));
+        }
+
+        long grown = 2L * capacity;
+
+        if (frameLength > capacity)
+            grown = Math.min(grown, frameLength);
+
+        return (int) Math.min(grown, MAX_FRAME_LENGTH);
+    }
+
+    /*
+     * The buffer is in write mode and its contents fit <code>capacity</code>.
+     */
+    private void resize(int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+
+        rxBuffer.flip();
+        buffer.put(rxBuffer);
+
+        rxBuffer = buffer;
+    }
+}
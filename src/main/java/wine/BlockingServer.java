@@ -0,0 +1,187 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A test server that serves each connection from a task of its own, with
+ * blocking reads and writes, as an alternative to the event loops of {@link
+ * TestServer}.
+ *
+ * By default every connection gets a platform thread. On a runtime with
+ * virtual threads, pass a virtual-thread-per-task executor to hold many
+ * thousands of mostly idle connections at the cost of little more than
+ * their buffers.
+ */
+public class BlockingServer {
+    private final ServerSocket serverSocket;
+
+    private final ConfigStore config;
+    private final Journal     journal;
+    private final Executor    executor;
+
+    private final Watches<Handler.Session> watches = new Watches<Handler.Session>();
+
+    private final ConcurrentHashMap<BlockingConnection, Boolean> connections = new ConcurrentHashMap<BlockingConnection, Boolean>();
+
+    private final AtomicLong messages = new AtomicLong();
+
+    private final Stats stats = new Stats();
+
+    private volatile boolean stopped;
+
+    public BlockingServer(int port) throws IOException {
+        this(port, new StripedConfigStore(64, new StripedConfigStore.Factory() {
+            @Override
+            public ConfigStore create() {
+                return new HeapConfigStore();
+            }
+        }), null, threadPerConnection());
+    }
+
+    /**
+     * Create a server that runs connections on <code>executor</code>.
+     * Connections are served concurrently, so <code>config</code> must be
+     * thread-safe; see {@link StripedConfigStore}. A {@link Scan} lists keys
+     * only if the store is an {@link IndexedConfigStore}. The journal may be
+     * null.
+     */
+    public BlockingServer(int port, ConfigStore config, Journal journal, Executor executor) throws IOException {
+        this.serverSocket = new ServerSocket();
+        this.config       = config;
+        this.journal      = journal;
+        this.executor     = executor;
+
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port), 1024);
+    }
+
+    /**
+     * Accept connections until {@link #stop()} is invoked.
+     */
+    public void run() throws IOException {
+        try {
+            while (!stopped) {
+                Socket socket;
+
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    if (stopped)
+                        break;
+
+                    throw e;
+                }
+
+                final BlockingConnection connection = new BlockingConnection(socket, stats);
+
+                connections.put(connection, Boolean.TRUE);
+
+                stats.connected();
+
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(connection);
+                    }
+                });
+            }
+        } finally {
+            for (BlockingConnection connection : connections.keySet())
+                connection.close();
+        }
+    }
+
+    /**
+     * Stop serving. Open connections are closed once the accepting thread
+     * notices.
+     */
+    public void stop() {
+        stopped = true;
+
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * Return the number of open connections.
+     */
+    public int connections() {
+        return connections.size();
+    }
+
+    /**
+     * Return the number of messages handled.
+     */
+    public long messages() {
+        return messages.get();
+    }
+
+    /**
+     * Return the server's metrics; see {@link TestServer#stats()}.
+     */
+    public Stats stats() {
+        return stats;
+    }
+
+    private void serve(BlockingConnection connection) {
+        Handler handler = new Handler(config, journal, watches, stats);
+
+        try {
+            Message message;
+
+            while ((message = connection.read()) != null) {
+                handler.handle(connection, message);
+
+                messages.incrementAndGet();
+            }
+        } catch (IOException e) {
+        } finally {
+            handler.closed(connection);
+
+            connections.remove(connection);
+
+            stats.disconnected();
+
+            connection.close();
+        }
+    }
+
+    private static Executor threadPerConnection() {
+        return new Executor() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public void execute(Runnable task) {
+                Thread thread = new Thread(task, String.format("wine-connection-%d", count.incrementAndGet()));
+
+                thread.setDaemon(true);
+                thread.start();
+            }
+        };
+    }
+}
@@ -23,27 +23,70 @@ class ByteField extends AbstractField {
 
     private byte[] value = new byte[0];
 
+    private int length;
+
+    /*
+     * A reusable field parses into its own array if it is large enough
+     * instead of allocating a new one for every message.
+     */
+    private boolean reusable;
+    private boolean owned;
+
     @Override
     public int length() {
-        return value.length;
+        return length;
     }
 
     public byte[] get() {
+        if (value.length != length)
+            return Arrays.copyOf(value, length);
+
         return this.value;
     }
 
     public void set(byte[] value) {
-        this.value = value;
+        set(value, value.length);
+    }
+
+    /**
+     * Set the value to the first <code>length</code> bytes of
+     * <code>value</code>.
+     */
+    public void set(byte[] value, int length) {
+        this.value  = value;
+        this.length = length;
+        this.owned  = false;
+    }
+
+    /**
+     * Return the backing array. Only the first {@link #length()} bytes are
+     * valid.
+     */
+    public byte[] array() {
+        return value;
+    }
+
+    public void reusable(boolean reusable) {
+        this.reusable = reusable;
     }
 
     @Override
     public void format(ByteBuffer buffer) {
-        buffer.put(value);
+        buffer.put(value, 0, length);
     }
 
     @Override
     public void parse(ByteBuffer buffer) {
-        buffer.get(value);
+        buffer.get(value, 0, length);
+    }
+
+    private void allocate(int length) {
+        if (!reusable || !owned || value.length < length) {
+            this.value = new byte[length];
+            this.owned = true;
+        }
+
+        this.length = length;
     }
 
     public Field lengthField() {
@@ -61,19 +104,32 @@ class ByteField extends AbstractField {
         if (that.getClass() != this.getClass())
             return false;
 
-        byte[] thatValue = ((ByteField) that).value;
+        ByteField thatField = (ByteField) that;
+
+        if (thatField.length != this.length)
+            return false;
+
+        for (int i = 0; i < length; i++) {
+            if (thatField.value[i] != this.value[i])
+                return false;
+        }
 
-        return Arrays.equals(thatValue, this.value);
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(value);
+        int result = 1;
+
+        for (int i = 0; i < length; i++)
+            result = 31 * result + value[i];
+
+        return result;
     }
 
     @Override
     public String toString() {
-        return Arrays.toString(value);
+        return Arrays.toString(get());
     }
 
     static class LengthField extends AbstractField {
@@ -90,12 +146,31 @@ class ByteField extends AbstractField {
 
         @Override
         public void format(ByteBuffer buffer) {
-            buffer.putInt(parent.value.length);
+            buffer.putInt(parent.length);
         }
 
         @Override
         public void parse(ByteBuffer buffer) {
-            parent.value = new byte[buffer.getInt()];
+            parent.allocate(buffer.getInt());
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (that == null)
+                return false;
+
+            if (that == this)
+                return true;
+
+            if (that.getClass() != this.getClass())
+                return false;
+
+            return ((LengthField) that).parent.length == this.parent.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return parent.length;
         }
     }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+/**
+ * A list of byte fields that keeps its field instances when cleared, so
+ * that a reusable message can parse into them again.
+ */
+class ByteFieldList {
+    private ByteField[] fields = new ByteField[0];
+
+    private int size;
+
+    private boolean reusable;
+
+    public int size() {
+        return size;
+    }
+
+    public ByteField get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size));
+
+        return fields[index];
+    }
+
+    /**
+     * Append a field and return it.
+     */
+    public ByteField add() {
+        if (size == fields.length) {
+            ByteField[] newFields = new ByteField[Math.max(4, fields.length * 2)];
+
+            System.arraycopy(fields, 0, newFields, 0, size);
+
+            fields = newFields;
+        }
+
+        ByteField field = fields[size];
+        if (field == null) {
+            field = new ByteField();
+            field.reusable(reusable);
+
+            fields[size] = field;
+        }
+
+        size++;
+
+        return field;
+    }
+
+    public void add(byte[] value) {
+        add().set(value);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void reusable(boolean reusable) {
+        this.reusable = reusable;
+
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null)
+                fields[i].reusable(reusable);
+        }
+    }
+
+    /**
+     * Return the number of bytes taken by the fields and their length fields.
+     */
+    public int length() {
+        int length = 0;
+
+        for (int i = 0; i < size; i++)
+            length += fields[i].lengthField().length() + fields[i].length();
+
+        return length;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (that == null)
+            return false;
+
+        if (that == this)
+            return true;
+
+        if (that.getClass() != this.getClass())
+            return false;
+
+        ByteFieldList thatList = (ByteFieldList) that;
+
+        if (thatList.size != this.size)
+            return false;
+
+        for (int i = 0; i < size; i++) {
+            if (!thatList.fields[i].equals(this.fields[i]))
+                return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+
+        for (int i = 0; i < size; i++)
+            result = 31 * result + fields[i].hashCode();
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append('[');
+
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                builder.append(", ");
+
+            builder.append(fields[i]);
+        }
+
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.util.Arrays;
+
+class ByteString {
+    private final byte[] value;
+
+    public ByteString() {
+        this(new byte[] {});
+    }
+
+    public ByteString(byte[] value) {
+        this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (that == null)
+            return false;
+
+        if (that == this)
+            return true;
+
+        if (that.getClass() != this.getClass())
+            return false;
+
+        byte[] thatValue = ((ByteString) that).value;
+
+        return Arrays.equals(thatValue, this.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(value);
+    }
+
+    public byte[] toArray() {
+        return value;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+/**
+ * A Get answered with a stream of {@link ValueChunk}s instead of a single
+ * {@link Value}.
+ */
+public class ChunkedGet extends Get {
+
+    public ChunkedGet() {
+        super(Type.CHUNKED_GET);
+    }
+
+    public ChunkedGet(byte[] key) {
+        this();
+
+        key(key);
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+}
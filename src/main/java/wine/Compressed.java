@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A key/value message with a deflated value. It carries the type of the
+ * original message and the length of the value before compression.
+ *
+ * Parsers inflate it back into the original message, so visitors only see
+ * it when handed one directly.
+ */
+public class Compressed extends AbstractMessage {
+    private final ByteField key    = new ByteField();
+    private final ByteField value  = new ByteField();
+    private final IntField  length = new IntField();
+
+    private byte originalType;
+
+    public Compressed() {
+        super(Type.COMPRESSED);
+    }
+
+    public byte originalType() {
+        return originalType;
+    }
+
+    public byte[] key() {
+        return key.get();
+    }
+
+    /**
+     * Return the array backing the deflated value. Only the first {@link
+     * #valueLength()} bytes are valid.
+     */
+    public byte[] valueArray() {
+        return value.array();
+    }
+
+    public int valueLength() {
+        return value.length();
+    }
+
+    /**
+     * Return the length of the value once inflated.
+     */
+    public int originalLength() {
+        return length.get();
+    }
+
+    void set(byte originalType, byte[] key, int keyLength, byte[] value, int valueLength, int originalLength) {
+        this.originalType = originalType;
+
+        this.key.set(key, keyLength);
+        this.value.set(value, valueLength);
+        this.length.set(originalLength);
+    }
+
+    @Override
+    void reusable() {
+        key.reusable(true);
+        value.reusable(true);
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        originalType = buffer.get();
+
+        key.lengthField().parse(buffer);
+        value.lengthField().parse(buffer);
+        length.parse(buffer);
+
+        key.parse(buffer);
+        value.parse(buffer);
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        buffer.put(originalType);
+
+        key.lengthField().format(buffer);
+        value.lengthField().format(buffer);
+        length.format(buffer);
+
+        key.format(buffer);
+        value.format(buffer);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + 1
+            + key.lengthField().length()
+            + value.lengthField().length()
+            + length.length()
+            + key.length()
+            + value.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        Compressed thatMessage = (Compressed) that;
+
+        return thatMessage.originalType == this.originalType && thatMessage.key.equals(this.key)
+            && thatMessage.value.equals(this.value) && thatMessage.length.equals(this.length);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * (31 * super.hashCode() + originalType) + key.hashCode()) + value.hashCode()) + length.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append((char) originalType).append(',').append(key).append(',').append(length);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import silvertip.GarbledMessageException;
+
+/**
+ * Per-connection compression of key/value messages with the JDK's deflate.
+ *
+ * Values shorter than a threshold, or that do not shrink, are sent as they
+ * are. The deflater, the inflater and the output array are reused for the
+ * lifetime of the connection; call {@link #end()} when it closes. Only use
+ * an instance from one thread.
+ */
+class Compression {
+    /**
+     * Values shorter than this are not worth compressing.
+     */
+    public static final int DEFAULT_THRESHOLD = 512;
+
+    /*
+     * Deflate shrinks data by at most about this much, so a longer original
+     * length cannot be genuine.
+     */
+    private static final int MAX_RATIO = 1032;
+
+    private final int threshold;
+    private final int level;
+
+    private Deflater deflater;
+    private Inflater inflater;
+
+    private byte[] output = new byte[0];
+
+    private final Compressed compressed = new Compressed();
+    private final Tagged     tagged     = new Tagged();
+
+    public Compression() {
+        this(DEFAULT_THRESHOLD, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Create a compression that deflates values of at least
+     * <code>threshold</code> bytes at <code>level</code>; see {@link
+     * Deflater}.
+     */
+    public Compression(int threshold, int level) {
+        this.threshold = threshold;
+        this.level     = level;
+    }
+
+    /**
+     * Return the message to send in place of <code>message</code>. The
+     * returned message is reused by the next call. The message wrapped in
+     * a {@link Tagged} message is compressed and tagged again.
+     */
+    public Message compress(Message message) {
+        if (message instanceof Tagged) {
+            Tagged original = (Tagged) message;
+
+            Message inner = compress(original.message());
+            if (inner == original.message())
+                return message;
+
+            tagged.set(original.id(), inner);
+
+            return tagged;
+        }
+
+        if (!(message instanceof KeyValueMessage))
+            return message;
+
+        KeyValueMessage keyValue = (KeyValueMessage) message;
+
+        int length = keyValue.valueLength();
+        if (length < threshold)
+            return message;
+
+        if (deflater == null)
+            deflater = new Deflater(level);
+
+        deflater.reset();
+        deflater.setInput(keyValue.valueArray(), 0, length);
+        deflater.finish();
+
+        if (output.length < length)
+            output = new byte[length];
+
+        /*
+         * Give up as soon as the deflated value would be no shorter.
+         */
+        int count = 0;
+
+        while (!deflater.finished()) {
+            if (count == length)
+                return message;
+
+            count += deflater.deflate(output, count, length - count);
+        }
+
+        compressed.set(keyValue.messageType(), keyValue.keyArray(), keyValue.keyLength(), output, count, length);
+
+        return compressed;
+    }
+
+    /**
+     * Return the message that <code>message</code> was compressed from.
+     */
+    public Message decompress(Compressed message) throws GarbledMessageException {
+        AbstractMessage original = AbstractMessage.create(message.originalType());
+        if (!(original instanceof KeyValueMessage))
+            throw new GarbledMessageException(String.format("Unexpected compressed message type %c", message.originalType()));
+
+        int length = message.originalLength();
+        if (length < 0 || length > Handler.MAX_VALUE_SIZE || length > (long) message.valueLength() * MAX_RATIO + MAX_RATIO)
+            throw new GarbledMessageException(String.format("Invalid field length %d", length));
+
+        if (inflater == null)
+            inflater = new Inflater();
+
+        byte[] value = new byte[length];
+
+        inflater.reset();
+        inflater.setInput(message.valueArray(), 0, message.valueLength());
+
+        try {
+            int count = 0;
+
+            while (count < length) {
+                int n = inflater.inflate(value, count, length - count);
+                if (n == 0)
+                    break;
+
+                count += n;
+            }
+
+            if (count != length || !inflater.finished())
+                throw new GarbledMessageException("Invalid compressed value");
+        } catch (DataFormatException e) {
+            throw new GarbledMessageException("Invalid compressed value");
+        }
+
+        KeyValueMessage keyValue = (KeyValueMessage) original;
+
+        keyValue.key(message.key());
+        keyValue.value(value);
+
+        return keyValue;
+    }
+
+    /**
+     * Release the native resources of the deflater and the inflater.
+     */
+    public void end() {
+        if (deflater != null)
+            deflater.end();
+        if (inflater != null)
+            inflater.end();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Storage for configuration values.
+ *
+ * Keys are passed as a range of an array so that they can be looked up
+ * straight from the array of a parsed message.
+ */
+public interface ConfigStore {
+    interface EntryVisitor {
+        /**
+         * The key and the value lie between the position and the limit of
+         * the buffers, which are only valid during the call.
+         */
+        void entry(ByteBuffer key, ByteBuffer value);
+    }
+
+    void put(byte[] key, int keyOffset, int keyLength, byte[] value, int valueOffset, int valueLength);
+
+    /**
+     * Return a copy of the value, or null if the key is not set.
+     */
+    byte[] get(byte[] key, int keyOffset, int keyLength);
+
+    /**
+     * Write the value to <code>buffer</code> and return its length, or return
+     * -1 if the key is not set.
+     */
+    int get(byte[] key, int keyOffset, int keyLength, ByteBuffer buffer);
+
+    /**
+     * Return the length of the value, or -1 if the key is not set.
+     */
+    int valueLength(byte[] key, int keyOffset, int keyLength);
+
+    int size();
+
+    /**
+     * Pass every key and value to <code>visitor</code>.
+     */
+    void entries(EntryVisitor visitor);
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Define a compact ID for a key, so that later requests on the connection
+ * can refer to the key with {@link IdGet} and {@link IdSet} instead of
+ * sending its bytes. The client picks the IDs, from zero up to {@link
+ * KeyTable#MAX_KEYS}; defining an ID again replaces its key.
+ *
+ * Only available once {@link Features#KEY_IDS} is granted.
+ */
+public class DefineKey extends AbstractMessage {
+    private final IntField  id  = new IntField();
+    private final ByteField key = new ByteField();
+
+    public DefineKey() {
+        super(Type.DEFINE_KEY);
+    }
+
+    public DefineKey(int id, byte[] key) {
+        this();
+
+        id(id);
+        key(key);
+    }
+
+    public void id(int id) {
+        this.id.set(id);
+    }
+
+    public int id() {
+        return this.id.get();
+    }
+
+    public void key(byte[] key) {
+        this.key.set(key);
+    }
+
+    public byte[] key() {
+        return this.key.get();
+    }
+
+    @Override
+    void reusable() {
+        key.reusable(true);
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        id.parse(buffer);
+        key.lengthField().parse(buffer);
+        key.parse(buffer);
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        id.format(buffer);
+        key.lengthField().format(buffer);
+        key.format(buffer);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + id.length() + key.lengthField().length() + key.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        DefineKey thatMessage = (DefineKey) that;
+
+        return thatMessage.id.equals(this.id) && thatMessage.key.equals(this.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * super.hashCode() + id.hashCode()) + key.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(id).append(',').append(key);
+    }
+}
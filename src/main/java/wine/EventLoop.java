@@ -0,0 +1,299 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import silvertip.Connection;
+import silvertip.Events;
+import silvertip.GarbledMessageException;
+import silvertip.MessageParser;
+import silvertip.PartialMessageException;
+
+/**
+ * A silvertip event loop running on a thread of its own.
+ *
+ * Connections are only ever touched from the loop thread. Other threads hand
+ * work to the loop with {@link #execute(Runnable)}; tasks run after each
+ * round of event processing. Queuing a task wakes the loop by writing a
+ * byte to a loopback connection the loop polls along with the others, so
+ * the task does not wait for the poll timeout.
+ *
+ * Outputs written to during a round are flushed together at its end, after
+ * the tasks.
+ *
+ * A task or an event that fails with a runtime exception is counted in the
+ * stats and the loop carries on; connection callbacks are expected to
+ * close the connection whose message failed.
+ */
+class EventLoop implements Runnable {
+    /**
+     * Buffered output of a connection.
+     */
+    public interface Output {
+        /**
+         * Write what the socket takes. Return true if nothing is left.
+         */
+        boolean flush();
+    }
+
+    private final Events io;
+    private final long   timeout;
+    private final Stats  stats;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    /*
+     * The writing end of the loopback connection, and whether a byte has
+     * been written to it since the loop last ran its tasks.
+     */
+    private final SocketChannel wakeup;
+    private final AtomicBoolean awake = new AtomicBoolean();
+
+    private final ByteBuffer wakeupByte = ByteBuffer.allocate(1);
+
+    private final Connection<Boolean> wakeups;
+
+    private final LinkedHashSet<Output> outputs = new LinkedHashSet<Output>();
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong messages    = new AtomicLong();
+
+    private volatile Thread  thread;
+    private volatile boolean stopped;
+
+    public EventLoop(long timeout) throws IOException {
+        this(timeout, new Stats());
+    }
+
+    /**
+     * Create a loop that counts its failures in <code>stats</code>.
+     */
+    public EventLoop(long timeout, Stats stats) throws IOException {
+        this.io      = Events.open();
+        this.timeout = timeout;
+        this.stats   = stats;
+
+        ServerSocketChannel server = ServerSocketChannel.open();
+
+        SocketChannel channel;
+
+        try {
+            server.socket().bind(new InetSocketAddress(InetAddress.getByName(null), 0));
+
+            this.wakeup = SocketChannel.open(server.socket().getLocalSocketAddress());
+
+            channel = server.accept();
+        } finally {
+            server.close();
+        }
+
+        wakeup.configureBlocking(false);
+        wakeup.socket().setTcpNoDelay(true);
+
+        channel.configureBlocking(false);
+
+        this.wakeups = new Connection<Boolean>(channel, new WakeupParser(), new WakeupCallback());
+
+        io.register(wakeups);
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+
+        try {
+            while (!stopped) {
+                try {
+                    io.process(timeout);
+                } catch (RuntimeException e) {
+                    stats.failed();
+                }
+
+                awake.set(false);
+
+                runTasks();
+
+                flush();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            wakeups.close();
+
+            try {
+                wakeup.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+
+        wake();
+    }
+
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    public void execute(Runnable task) {
+        tasks.add(task);
+
+        wake();
+    }
+
+    public void register(final Connection<Message> connection) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    io.register(connection);
+
+                    connections.incrementAndGet();
+                } catch (IOException e) {
+                    connection.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Flush <code>output</code> at the end of this round and, for as long
+     * as the socket does not take everything, at the end of the following
+     * rounds. Only invoke from the loop thread.
+     */
+    public void flushLater(Output output) {
+        outputs.add(output);
+    }
+
+    public void closed() {
+        connections.decrementAndGet();
+    }
+
+    public void handled(int count) {
+        messages.addAndGet(count);
+    }
+
+    /**
+     * Return the number of open connections.
+     */
+    public long connections() {
+        return connections.get();
+    }
+
+    /**
+     * Return the number of messages handled.
+     */
+    public long messages() {
+        return messages.get();
+    }
+
+    private void flush() {
+        Iterator<Output> iterator = outputs.iterator();
+
+        while (iterator.hasNext()) {
+            try {
+                if (iterator.next().flush())
+                    iterator.remove();
+            } catch (RuntimeException e) {
+                stats.failed();
+
+                iterator.remove();
+            }
+        }
+    }
+
+    /*
+     * A full socket buffer means the loop has plenty of bytes to wake up
+     * to already.
+     */
+    private void wake() {
+        if (!awake.compareAndSet(false, true))
+            return;
+
+        synchronized (wakeupByte) {
+            wakeupByte.clear();
+
+            try {
+                wakeup.write(wakeupByte);
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                stats.failed();
+            }
+        }
+    }
+
+    /*
+     * Wakeup bytes carry nothing; each read consumes them all.
+     */
+    private static class WakeupParser implements MessageParser<Boolean> {
+        @Override
+        public Boolean parse(ByteBuffer buffer) throws GarbledMessageException, PartialMessageException {
+            if (!buffer.hasRemaining())
+                throw new PartialMessageException();
+
+            buffer.position(buffer.limit());
+
+            return Boolean.TRUE;
+        }
+    }
+
+    private static class WakeupCallback implements Connection.Callback<Boolean> {
+        @Override
+        public void connected(Connection<Boolean> connection) {
+        }
+
+        @Override
+        public void messages(Connection<Boolean> connection, Iterator<Boolean> messages) {
+            while (messages.hasNext())
+                messages.next();
+        }
+
+        @Override
+        public void closed(Connection<Boolean> connection) {
+        }
+
+        @Override
+        public void garbledMessage(Connection<Boolean> connection, String message, byte[] data) {
+        }
+
+        @Override
+        public void sent(ByteBuffer buffer) {
+        }
+    }
+}
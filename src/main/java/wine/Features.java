@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+/**
+ * Optional protocol features, negotiated per connection.
+ *
+ * The client asks for a set of features in its {@link Login}; the server
+ * answers with the subset it supports in {@link LoginAccepted}. A feature
+ * is in use once both sides have seen that answer. Without any features,
+ * the login messages keep their original format.
+ */
+public class Features {
+    /**
+     * Values of key/value messages above a size threshold may be sent
+     * deflated.
+     */
+    public static final int COMPRESSION = 1 << 0;
+
+    /**
+     * Keys may be defined once per connection with {@link DefineKey} and
+     * then referred to by ID.
+     */
+    public static final int KEY_IDS = 1 << 1;
+
+    /**
+     * Requests may be wrapped in {@link Tagged} messages. The server tags
+     * each reply with the ID of its request and may answer tagged requests
+     * out of order.
+     */
+    public static final int REQUEST_IDS = 1 << 2;
+
+    /**
+     * The features the server supports.
+     */
+    public static final int SUPPORTED = COMPRESSION | KEY_IDS | REQUEST_IDS;
+
+    private Features() {
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+class FlagField extends AbstractField {
+    private boolean value;
+
+    public boolean get() {
+        return value;
+    }
+
+    public void set(boolean value) {
+        this.value = value;
+    }
+
+    @Override
+    public int length() {
+        return 1;
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        buffer.put((byte) (value ? 1 : 0));
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        value = buffer.get() != 0;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (that == null)
+            return false;
+
+        if (that == this)
+            return true;
+
+        if (that.getClass() != this.getClass())
+            return false;
+
+        return ((FlagField) that).value == this.value;
+    }
+
+    @Override
+    public int hashCode() {
+        return value ? 1 : 0;
+    }
+
+    @Override
+    public String toString() {
+        return Boolean.toString(value);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A follower's request to a leader for its changes from an offset on; see
+ * {@link ReplicationLog}. The leader answers with a {@link Position}
+ * followed by the changes, preceded by a snapshot of its store if the
+ * offset is no longer in its log.
+ */
+public class Follow extends AbstractMessage {
+    /**
+     * The offset of a follower that has no copy yet.
+     */
+    public static final long NONE = -1;
+
+    private final LongField offset = new LongField();
+
+    public Follow() {
+        super(Type.FOLLOW);
+    }
+
+    public Follow(long offset) {
+        this();
+
+        offset(offset);
+    }
+
+    public void offset(long offset) {
+        this.offset.set(offset);
+    }
+
+    public long offset() {
+        return this.offset.get();
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        offset.parse(buffer);
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        offset.format(buffer);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + offset.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        return ((Follow) that).offset.equals(this.offset);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + offset.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(offset);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The follower side of replication; see {@link ReplicationLog}.
+ *
+ * A follower keeps its store a copy of the leader's by applying the
+ * changes the leader streams, and sends the changes its own clients make
+ * to the leader instead of applying them. They are applied, and published
+ * to the follower's watches, once they come back in the stream. Changes
+ * made while the leader is unreachable are dropped.
+ *
+ * The stream is read on a daemon thread of its own, which reconnects
+ * whenever the connection to the leader is lost and resumes from the last
+ * offset it reached. Changes are written to the leader from another
+ * thread, through a bounded queue, so that a slow leader does not hold up
+ * the event loops. Changes that do not fit in the queue are dropped.
+ */
+class Follower implements Runnable {
+    public static final long RETRY_INTERVAL = 1000;
+
+    /**
+     * The most changes, and bytes of changes, waiting to be written to
+     * the leader.
+     */
+    public static final int  MAX_FORWARDED       = 64 * 1024;
+    public static final long MAX_FORWARDED_BYTES = 16 * 1024 * 1024;
+
+    private final InetSocketAddress leader;
+    private final Handler           handler;
+    private final Stats             stats;
+
+    /*
+     * Only touched from the following thread.
+     */
+    private long offset = Follow.NONE;
+
+    private volatile BlockingConnection connection;
+
+    private final BlockingQueue<byte[]> forwarded = new ArrayBlockingQueue<byte[]>(MAX_FORWARDED);
+
+    private final AtomicLong forwardedBytes = new AtomicLong();
+
+    private volatile boolean stopped;
+
+    private Thread thread;
+    private Thread forwarder;
+
+    /**
+     * Create a follower of <code>leader</code> that applies the changes
+     * with <code>handler</code>, which must not be used by anything else.
+     */
+    public Follower(InetSocketAddress leader, Handler handler, Stats stats) {
+        this.leader  = leader;
+        this.handler = handler;
+        this.stats   = stats;
+    }
+
+    public synchronized void start() {
+        if (thread != null)
+            return;
+
+        thread = new Thread(this, "wine-follower");
+
+        thread.setDaemon(true);
+        thread.start();
+
+        forwarder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                forward();
+            }
+        }, "wine-forwarder");
+
+        forwarder.setDaemon(true);
+        forwarder.start();
+    }
+
+    /**
+     * Stop following and wait for the following threads to exit.
+     */
+    public synchronized void stop() throws InterruptedException {
+        stopped = true;
+
+        BlockingConnection connection = this.connection;
+        if (connection != null)
+            connection.close();
+
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+
+            forwarder.interrupt();
+            forwarder.join();
+        }
+
+        thread    = null;
+        forwarder = null;
+    }
+
+    /**
+     * Queue a change to be sent to the leader. Safe to invoke from any
+     * thread; never blocks.
+     */
+    public void forward(Message message) {
+        if (connection == null)
+            return;
+
+        byte[] frame = message.format();
+
+        if (forwardedBytes.get() + frame.length > MAX_FORWARDED_BYTES)
+            return;
+
+        if (forwarded.offer(frame))
+            forwardedBytes.addAndGet(frame.length);
+    }
+
+    @Override
+    public void run() {
+        while (!stopped) {
+            try {
+                follow();
+            } catch (IOException e) {
+            }
+
+            if (stopped)
+                break;
+
+            try {
+                Thread.sleep(RETRY_INTERVAL);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    /*
+     * Write queued changes to the leader until stopped.
+     */
+    private void forward() {
+        while (!stopped) {
+            byte[] frame;
+
+            try {
+                frame = forwarded.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            forwardedBytes.addAndGet(-frame.length);
+
+            BlockingConnection connection = this.connection;
+            if (connection == null)
+                continue;
+
+            try {
+                connection.write(frame);
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+    }
+
+    private void follow() throws IOException {
+        Socket socket = new Socket();
+
+        socket.connect(leader);
+
+        BlockingConnection connection = new BlockingConnection(socket);
+
+        try {
+            connection.write(new Follow(offset));
+
+            this.connection = connection;
+
+            while (!stopped) {
+                Message message = connection.read();
+                if (message == null)
+                    break;
+
+                apply(message);
+            }
+        } finally {
+            this.connection = null;
+
+            connection.close();
+        }
+    }
+
+    /*
+     * Entries of a snapshot come after a position of Follow.NONE and do not
+     * advance the offset.
+     */
+    private void apply(Message message) {
+        if (message instanceof Position) {
+            Position position = (Position) message;
+
+            offset = position.offset();
+
+            if (offset != Follow.NONE) {
+                stats.replicated(offset);
+                stats.positioned(position.timestamp());
+            }
+        } else if (message instanceof Set || message instanceof MultiSet) {
+            handler.replicate(message);
+
+            if (offset != Follow.NONE) {
+                offset++;
+
+                stats.replicated(offset);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+import silvertip.GarbledMessageException;
+import silvertip.PartialMessageException;
+
+/**
+ * Frame lengths, peeked from the length prefixes without decoding or
+ * allocating anything.
+ */
+class Frames {
+    private Frames() {
+    }
+
+    /**
+     * Return the length of the frame at <code>offset</code>, or -1 if the
+     * buffer does not yet hold enough of the frame to tell.
+     */
+    static int length(ByteBuffer buffer, int offset) throws GarbledMessageException {
+        try {
+            return peek(buffer, offset);
+        } catch (PartialMessageException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Return the length of the frame at <code>offset</code> if the buffer
+     * holds all of it.
+     */
+    static int complete(ByteBuffer buffer, int offset) throws GarbledMessageException, PartialMessageException {
+        int length = peek(buffer, offset);
+
+        if (buffer.limit() - offset < length)
+            throw new PartialMessageException();
+
+        return length;
+    }
+
+    private static int peek(ByteBuffer buffer, int offset) throws GarbledMessageException, PartialMessageException {
+        if (buffer.limit() - offset < 1)
+            throw new PartialMessageException();
+
+        long length;
+
+        switch (buffer.get(offset)) {
+        case AbstractMessage.Type.LOGIN:
+            length = 1 + LoginView.USERNAME_LENGTH + LoginView.PASSWORD_LENGTH;
+            break;
+        case AbstractMessage.Type.LOGIN_FEATURES:
+            length = 1 + LoginView.USERNAME_LENGTH + LoginView.PASSWORD_LENGTH + 4;
+            break;
+        case AbstractMessage.Type.LOGIN_ACCEPTED_FEATURES:
+        case AbstractMessage.Type.ID_GET:
+            length = 1 + 4;
+            break;
+        case AbstractMessage.Type.FOLLOW:
+            length = 1 + 8;
+            break;
+        case AbstractMessage.Type.POSITION:
+            length = 1 + 8 + 8;
+            break;
+        case AbstractMessage.Type.RESEND:
+            length = 1 + 8 + 8 + 8;
+            break;
+        case AbstractMessage.Type.DEFINE_KEY:
+        case AbstractMessage.Type.ID_SET:
+        case AbstractMessage.Type.ID_VALUE:
+            length = 1 + 4 + 4 + (long) byteFieldLength(buffer, offset + 5);
+            break;
+        case AbstractMessage.Type.COMPRESSED:
+            length = 1 + 1 + 4 + 4 + 4 + (long) byteFieldLength(buffer, offset + 2) + byteFieldLength(buffer, offset + 6);
+            break;
+        case AbstractMessage.Type.TAGGED:
+            length = 1 + 4 + (long) taggedLength(buffer, offset + 5);
+            break;
+        case AbstractMessage.Type.GET:
+        case AbstractMessage.Type.CHUNKED_GET:
+            length = 1 + 4 + (long) byteFieldLength(buffer, offset + 1);
+            break;
+        case AbstractMessage.Type.VALUE:
+        case AbstractMessage.Type.SET:
+        case AbstractMessage.Type.UPDATE:
+        case AbstractMessage.Type.SET_CHUNK:
+        case AbstractMessage.Type.VALUE_CHUNK:
+            length = 1 + 4 + 4 + (long) byteFieldLength(buffer, offset + 1) + byteFieldLength(buffer, offset + 5);
+            break;
+        case AbstractMessage.Type.WATCH:
+        case AbstractMessage.Type.UNWATCH:
+            length = 1 + 1 + 4 + (long) byteFieldLength(buffer, offset + 2);
+            break;
+        case AbstractMessage.Type.RANGE_GET:
+            length = 1 + 4 + 8 + 8 + (long) byteFieldLength(buffer, offset + 1);
+            break;
+        case AbstractMessage.Type.SAMPLES:
+            length = 1 + 4 + 4 + (long) byteFieldLength(buffer, offset + 1) + 16L * byteFieldLength(buffer, offset + 5);
+            break;
+        case AbstractMessage.Type.SCAN:
+            length = 1 + 1 + 4 + 4 + 4 + (long) byteFieldLength(buffer, offset + 6) + byteFieldLength(buffer, offset + 10);
+            break;
+        case AbstractMessage.Type.MULTI_GET:
+            length = entriesLength(buffer, offset, 1);
+            break;
+        case AbstractMessage.Type.MULTI_VALUE:
+        case AbstractMessage.Type.MULTI_SET:
+            length = entriesLength(buffer, offset, 2);
+            break;
+        default:
+            length = 1;
+            break;
+        }
+
+        if (length > Integer.MAX_VALUE)
+            throw new GarbledMessageException(String.format("Invalid message length %d", length));
+
+        return (int) length;
+    }
+
+    private static int taggedLength(ByteBuffer buffer, int offset) throws GarbledMessageException, PartialMessageException {
+        if (buffer.limit() - offset < 1)
+            throw new PartialMessageException();
+
+        if (buffer.get(offset) == AbstractMessage.Type.TAGGED)
+            throw new GarbledMessageException("Nested tagged message");
+
+        return peek(buffer, offset);
+    }
+
+    /*
+     * Each entry consists of <code>fields</code> length fields followed by
+     * the fields themselves.
+     */
+    private static long entriesLength(ByteBuffer buffer, int offset, int fields) throws GarbledMessageException, PartialMessageException {
+        int size = byteFieldLength(buffer, offset + 1);
+
+        long length = 1 + 4;
+
+        for (int i = 0; i < size; i++) {
+            long entry = 4 * fields;
+
+            for (int j = 0; j < fields; j++)
+                entry += byteFieldLength(buffer, (int) (offset + length + 4 * j));
+
+            length += entry;
+
+            if (offset + length > buffer.limit())
+                throw new PartialMessageException();
+        }
+
+        return length;
+    }
+
+    private static int byteFieldLength(ByteBuffer buffer, int offset) throws GarbledMessageException, PartialMessageException {
+        if (buffer.limit() - offset < 4)
+            throw new PartialMessageException();
+
+        int length = buffer.getInt(offset);
+        if (length < 0)
+            throw new GarbledMessageException(String.format("Invalid field length %d", length));
+
+        return length;
+    }
+}
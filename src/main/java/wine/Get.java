@@ -24,6 +24,10 @@ public class Get extends AbstractMessage {
         super(Type.GET);
     }
 
+    protected Get(byte messageType) {
+        super(messageType);
+    }
+
     public Get(byte[] key) {
         this();
 
@@ -38,6 +42,23 @@ public class Get extends AbstractMessage {
         return this.key.get();
     }
 
+    /**
+     * Return the array backing the key. Only the first {@link #keyLength()}
+     * bytes are valid.
+     */
+    public byte[] keyArray() {
+        return this.key.array();
+    }
+
+    public int keyLength() {
+        return this.key.length();
+    }
+
+    @Override
+    void reusable() {
+        key.reusable(true);
+    }
+
     @Override
     public void accept(MessageVisitor visitor) {
         visitor.visit(this);
@@ -63,4 +84,22 @@ public class Get extends AbstractMessage {
     public int length() {
         return super.length() + key.lengthField().length() + key.length();
     }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        return ((Get) that).key.equals(this.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + key.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(key);
+    }
 }
@@ -0,0 +1,926 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The server side of the protocol, independent of the transport.
+ *
+ * The configuration store, the journal, the watches and the stats may be
+ * shared between handlers on different threads. A handler itself is only used from
+ * one thread at a time.
+ */
+class Handler {
+    /**
+     * A connected client.
+     */
+    public interface Session {
+        /**
+         * Send a reply. Only invoked from the thread handling the session's
+         * messages, which may format the message into a buffer of its own
+         * instead of sending it right away.
+         */
+        void send(Message message);
+
+        /**
+         * Send a formatted message. Must be safe to invoke from any thread.
+         */
+        void send(byte[] message);
+
+        /**
+         * Start using the features granted at login; see {@link Features}.
+         */
+        void features(int features);
+
+        /**
+         * Return the keys defined on the session, or null unless {@link
+         * Features#KEY_IDS} has been granted.
+         */
+        KeyTable keys();
+
+        /**
+         * Return true if the session can take another chunk of a streamed
+         * value. A session that is not ready invokes {@link
+         * Handler#drained(Session)} once it is. Sessions that block on
+         * sending are always ready. Must be safe to invoke from any thread.
+         */
+        boolean ready();
+
+        /**
+         * Close the connection, for example because a change it sent
+         * could not be made durable. Only invoked from the thread handling
+         * the session's messages.
+         */
+        void close();
+    }
+
+    /**
+     * The largest chunk in a reply to a {@link ChunkedGet}.
+     */
+    public static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * The largest value that may be streamed with {@link SetChunk}s.
+     */
+    public static final int MAX_VALUE_SIZE = 256 * 1024 * 1024;
+
+    /**
+     * The most entries in a reply to a {@link Scan}.
+     */
+    public static final int SCAN_LIMIT = 1000;
+
+    /*
+     * A reply to a Scan stops growing once its keys and values reach this
+     * many bytes.
+     */
+    private static final int SCAN_BYTES = 64 * 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final ConfigStore config;
+    private final Journal     journal;
+
+    private final IndexedConfigStore index;
+
+    private final Watches<Session> watches;
+
+    private final Stats stats;
+    private final Agent agent;
+
+    private final TimeSeries series;
+
+    /*
+     * Set on leaders and followers before the handler is first used.
+     */
+    private ReplicationLog log;
+    private Follower       follower;
+
+    /*
+     * Set whenever the server starts publishing, from any thread.
+     */
+    private volatile MulticastPublisher publisher;
+
+    private final Collection<Session> subscribers = new LinkedHashSet<Session>();
+
+    /*
+     * The value each session is streaming with SetChunks, if any.
+     */
+    private final Map<Session, Transfer> transfers = new HashMap<Session, Transfer>();
+
+    /*
+     * Replies to ChunkedGets waiting for their sessions to drain.
+     */
+    private final Map<Session, Stream> streams = new HashMap<Session, Stream>();
+
+    /*
+     * Replies are reused; a session is done with a reply once send returns.
+     */
+    private final LoginAccepted loginAccepted = new LoginAccepted();
+    private final Value         value         = new Value();
+    private final MultiValue    multiValue    = new MultiValue();
+    private final Reading       reading       = new Reading();
+    private final Samples       samples       = new Samples();
+    private final IdValue       idValue       = new IdValue();
+
+    /*
+     * An IdSet is handled as a Set of the defined key.
+     */
+    private final Set idSet = new Set();
+
+    /*
+     * Tagged requests are answered in order, but clients must not rely on
+     * it; see Features.REQUEST_IDS.
+     */
+    private final Tagging tagging = new Tagging();
+
+    public Handler(ConfigStore config, Journal journal, Watches<Session> watches) {
+        this(config, journal, watches, new Stats());
+    }
+
+    /**
+     * Create a handler that counts requests in <code>stats</code> and
+     * answers Gets for the keys reserved for them; see {@link Stats}.
+     */
+    public Handler(ConfigStore config, Journal journal, Watches<Session> watches, Stats stats) {
+        this(config, journal, watches, stats, null);
+    }
+
+    /**
+     * Create a handler that serves the keys registered with
+     * <code>agent</code> from the agent instead of the store. The agent
+     * may be null.
+     */
+    public Handler(ConfigStore config, Journal journal, Watches<Session> watches, Stats stats, Agent agent) {
+        this(config, journal, watches, stats, agent, null);
+    }
+
+    /**
+     * Create a handler that also records the history of numeric values in
+     * <code>series</code> and answers {@link RangeGet}s from it. The series
+     * may be null.
+     */
+    public Handler(ConfigStore config, Journal journal, Watches<Session> watches, Stats stats, Agent agent, TimeSeries series) {
+        this.config  = config;
+        this.journal = journal;
+        this.watches = watches;
+        this.stats   = stats;
+        this.agent   = agent;
+        this.series  = series;
+
+        this.index = config instanceof IndexedConfigStore ? (IndexedConfigStore) config : null;
+    }
+
+    /**
+     * Append every change to <code>log</code> and stream it to the
+     * followers that ask for it. Invoke before the handler is first used,
+     * on every handler of the server.
+     */
+    void lead(ReplicationLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Forward changes to the leader through <code>follower</code> instead
+     * of applying them. Invoke before the handler is first used, on every
+     * handler of the server.
+     */
+    void follow(Follower follower) {
+        this.follower = follower;
+    }
+
+    /**
+     * Answer {@link Resend} requests from the frames kept by
+     * <code>publisher</code>.
+     */
+    void resendFrom(MulticastPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    /**
+     * Apply a change streamed from the leader. Only invoke from the
+     * thread of the follower.
+     */
+    void replicate(Message message) {
+        if (!apply(message))
+            return;
+
+        if (message instanceof Set) {
+            Set set = (Set) message;
+
+            record(set.key(), set.value());
+
+            publish(set.key(), set.value());
+        } else {
+            MultiSet multiSet = (MultiSet) message;
+
+            for (int i = 0; i < multiSet.size(); i++) {
+                record(multiSet.key(i), multiSet.value(i));
+
+                publish(multiSet.key(i), multiSet.value(i));
+            }
+        }
+    }
+
+    public void handle(Session session, Message message) {
+        handle(session, session, message);
+    }
+
+    /*
+     * Replies go to <code>replies</code>, which tags them when answering a
+     * tagged request. Everything else that depends on the session, such as
+     * its watches and defined keys, uses <code>session</code>.
+     */
+    private void handle(final Session session, final Session replies, Message message) {
+        stats.handled(message);
+
+        message.accept(new MessageVisitor() {
+            @Override
+            public void visit(Login message) {
+                int features = message.features() & Features.SUPPORTED;
+
+                loginAccepted.features(features);
+
+                replies.send(loginAccepted);
+
+                session.features(features);
+            }
+
+            @Override
+            public void visit(LoginAccepted message) {
+            }
+
+            @Override
+            public void visit(LoginRejected message) {
+            }
+
+            @Override
+            public void visit(Get message) {
+                long start = System.nanoTime();
+
+                if (agent != null && agent.read(message.keyArray(), message.keyLength(), reading)) {
+                    replies.send(reading);
+
+                    stats.get(System.nanoTime() - start);
+                    return;
+                }
+
+                byte[] key   = message.key();
+                byte[] bytes = get(key);
+
+                value.key(key);
+                value.value(bytes != null ? bytes : EMPTY);
+
+                replies.send(value);
+
+                stats.get(System.nanoTime() - start);
+            }
+
+            @Override
+            public void visit(Value message) {
+            }
+
+            @Override
+            public void visit(Set message) {
+                long start = System.nanoTime();
+
+                byte[] key   = message.key();
+                byte[] value = message.value();
+
+                if (Stats.isReserved(key))
+                    return;
+
+                if (agent == null || !agent.set(key, key.length, value, value.length)) {
+                    if (!commit(session, message))
+                        return;
+                }
+
+                record(key, value);
+
+                publish(key, value);
+
+                stats.set(System.nanoTime() - start);
+            }
+
+            @Override
+            public void visit(MultiGet message) {
+                long start = System.nanoTime();
+
+                multiValue.clear();
+
+                for (int i = 0; i < message.size(); i++) {
+                    byte[] key   = message.key(i);
+                    byte[] bytes = get(key);
+
+                    multiValue.add(key, bytes != null ? bytes : EMPTY);
+                }
+
+                replies.send(multiValue);
+
+                stats.get(System.nanoTime() - start);
+            }
+
+            @Override
+            public void visit(MultiValue message) {
+            }
+
+            @Override
+            public void visit(MultiSet message) {
+                long start = System.nanoTime();
+
+                for (int i = 0; i < message.size(); i++) {
+                    if (Stats.isReserved(message.key(i)))
+                        return;
+                }
+
+                if (agent == null || !setAgent(session, message)) {
+                    if (!commit(session, message))
+                        return;
+                }
+
+                for (int i = 0; i < message.size(); i++) {
+                    byte[] key   = message.key(i);
+                    byte[] value = message.value(i);
+
+                    record(key, value);
+
+                    publish(key, value);
+                }
+
+                stats.set(System.nanoTime() - start);
+            }
+
+            @Override
+            public void visit(Watch message) {
+                synchronized (watches) {
+                    watches.watch(session, message.key(), message.prefix());
+                }
+            }
+
+            @Override
+            public void visit(Unwatch message) {
+                synchronized (watches) {
+                    watches.unwatch(session, message.key(), message.prefix());
+                }
+            }
+
+            @Override
+            public void visit(Update message) {
+            }
+
+            @Override
+            public void visit(SetChunk message) {
+                long start = System.nanoTime();
+
+                byte[] key = message.key();
+
+                if (Stats.isReserved(key))
+                    return;
+
+                Transfer transfer = transfers.get(session);
+                if (transfer != null && !Arrays.equals(transfer.key, key))
+                    transfer = null;
+
+                if (message.valueLength() > 0) {
+                    if (transfer == null) {
+                        transfer = new Transfer(key);
+
+                        transfers.put(session, transfer);
+                    }
+
+                    transfer.append(message.valueArray(), message.valueLength());
+                    return;
+                }
+
+                transfers.remove(session);
+
+                if (transfer != null && transfer.discarded())
+                    return;
+
+                byte[] bytes = transfer != null ? transfer.value() : EMPTY;
+
+                if (agent == null || !agent.set(key, key.length, bytes, bytes.length)) {
+                    if (!commit(session, new Set(key, bytes)))
+                        return;
+                }
+
+                record(key, bytes);
+
+                publish(key, bytes);
+
+                stats.set(System.nanoTime() - start);
+            }
+
+            @Override
+            public void visit(ValueChunk message) {
+            }
+
+            @Override
+            public void visit(ChunkedGet message) {
+                byte[] key   = message.key();
+                byte[] bytes = get(key);
+
+                Stream stream = new Stream(replies == session ? session : tagging.copy(), key, bytes != null ? bytes : EMPTY);
+
+                if (!stream.send())
+                    streams.put(session, stream);
+            }
+
+            @Override
+            public void visit(RangeGet message) {
+                samples.clear();
+                samples.key(message.keyArray(), message.keyLength());
+
+                if (series != null)
+                    series.read(message.keyArray(), message.keyLength(), message.from(), message.to(), samples);
+
+                replies.send(samples);
+            }
+
+            @Override
+            public void visit(Samples message) {
+            }
+
+            @Override
+            public void visit(DefineKey message) {
+                KeyTable keys = session.keys();
+                if (keys != null)
+                    keys.define(message.id(), message.key().clone());
+            }
+
+            @Override
+            public void visit(IdGet message) {
+                long start = System.nanoTime();
+
+                byte[] key   = key(session, message.id());
+                byte[] bytes = key != null ? get(key) : null;
+
+                idValue.id(message.id());
+                idValue.value(bytes != null ? bytes : EMPTY);
+
+                replies.send(idValue);
+
+                stats.get(System.nanoTime() - start);
+            }
+
+            @Override
+            public void visit(IdSet message) {
+                byte[] key = key(session, message.id());
+                if (key == null)
+                    return;
+
+                idSet.key(key);
+                idSet.value(message.value());
+
+                visit(idSet);
+            }
+
+            @Override
+            public void visit(IdValue message) {
+            }
+
+            @Override
+            public void visit(Follow message) {
+                if (log != null)
+                    log.follow(session, message.offset());
+            }
+
+            @Override
+            public void visit(Position message) {
+            }
+
+            @Override
+            public void visit(Resend message) {
+                multiValue.clear();
+
+                MulticastPublisher publisher = Handler.this.publisher;
+                if (publisher != null)
+                    publisher.resend(message.session(), message.from(), message.to(), config, multiValue);
+
+                replies.send(multiValue);
+            }
+
+            @Override
+            public void visit(Compressed message) {
+            }
+
+            @Override
+            public void visit(Tagged message) {
+                tagging.set(session, message.id());
+
+                handle(session, tagging, message.message());
+            }
+
+            @Override
+            public void visit(Scan message) {
+                multiValue.clear();
+
+                if (index != null)
+                    scan(message, multiValue);
+
+                replies.send(multiValue);
+            }
+        });
+    }
+
+    /**
+     * Return true while a reply to a {@link ChunkedGet} is waiting for the
+     * session to drain. Replies to later requests must wait until it is
+     * done.
+     */
+    public boolean streaming(Session session) {
+        return streams.containsKey(session);
+    }
+
+    /**
+     * Return true if the leader's changes are being streamed to the
+     * session. Such a session is paced by the replication log instead of
+     * being held to the outbound limits.
+     */
+    public boolean replicating(Session session) {
+        return log != null && log.following(session);
+    }
+
+    /**
+     * Continue a reply to a {@link ChunkedGet} now that the session is
+     * ready for more.
+     */
+    public void drained(Session session) {
+        Stream stream = streams.get(session);
+
+        if (stream != null && stream.send())
+            streams.remove(session);
+    }
+
+    /**
+     * Drop the watches of a session that has gone away.
+     */
+    public void closed(Session session) {
+        transfers.remove(session);
+        streams.remove(session);
+
+        if (log != null)
+            log.unfollow(session);
+
+        synchronized (watches) {
+            watches.remove(session);
+        }
+    }
+
+    /*
+     * Keys in the reserved namespace are answered from the stats, never
+     * from the store.
+     */
+    private byte[] get(byte[] key) {
+        if (Stats.isReserved(key))
+            return stats.get(key);
+
+        if (agent != null && agent.contains(key))
+            return agent.get(key);
+
+        return config.get(key, 0, key.length);
+    }
+
+    private static byte[] key(Session session, int id) {
+        KeyTable keys = session.keys();
+
+        return keys != null ? keys.get(id) : null;
+    }
+
+    /*
+     * Keys whose values are asked for are skipped if they are not in the
+     * store, which only happens while a put races with the scan.
+     */
+    private void scan(Scan message, MultiValue reply) {
+        int limit = message.limit() > 0 ? Math.min(message.limit(), SCAN_LIMIT) : SCAN_LIMIT;
+        int bytes = 0;
+
+        Iterator<byte[]> keys = index.keys(message.prefix(), message.after());
+
+        while (keys.hasNext() && reply.size() < limit && bytes < SCAN_BYTES) {
+            byte[] key   = keys.next();
+            byte[] value = message.values() ? config.get(key, 0, key.length) : EMPTY;
+
+            if (value == null)
+                continue;
+
+            reply.add(key, value);
+
+            bytes += key.length + value.length;
+        }
+    }
+
+    private void record(byte[] key, byte[] value) {
+        if (series != null)
+            series.append(key, key.length, value, value.length, System.currentTimeMillis());
+    }
+
+    /*
+     * If any key of the message is registered with the agent, apply each
+     * value to the agent or the store separately and return true.
+     */
+    private boolean setAgent(Session session, MultiSet message) {
+        boolean found = false;
+
+        for (int i = 0; i < message.size() && !found; i++)
+            found = agent.contains(message.key(i));
+
+        if (!found)
+            return false;
+
+        for (int i = 0; i < message.size(); i++) {
+            byte[] key   = message.key(i);
+            byte[] value = message.value(i);
+
+            if (!agent.set(key, key.length, value, value.length))
+                commit(session, new Set(key, value));
+        }
+
+        return true;
+    }
+
+    /*
+     * On a follower, changes go to the leader and are applied once they are
+     * streamed back. Return true if the change was applied here.
+     *
+     * Sets have no reply, so a change that the journal fails to take is
+     * reported by closing the session that sent it.
+     */
+    private boolean commit(Session session, Message message) {
+        if (follower != null) {
+            follower.forward(message);
+
+            return false;
+        }
+
+        if (!apply(message)) {
+            session.close();
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /*
+     * With a journal or a replication log, appending and applying happen
+     * under a lock so that the order of the log matches the order of the
+     * changes to the store. The replication log's lock comes first. The
+     * journal's lock also keeps its snapshots from seeing half a change.
+     */
+    private boolean apply(Message message) {
+        Object lock = log != null ? log : journal;
+
+        if (lock == null) {
+            put(message);
+            return true;
+        }
+
+        synchronized (lock) {
+            if (journal != null) {
+                if (!journal(message))
+                    return false;
+            } else {
+                put(message);
+            }
+
+            if (log != null)
+                log.append(message);
+        }
+
+        return true;
+    }
+
+    /*
+     * A change that cannot be appended is not applied either.
+     */
+    private boolean journal(Message message) {
+        synchronized (journal) {
+            try {
+                journal.append(message);
+            } catch (IOException e) {
+                stats.failed();
+
+                return false;
+            }
+
+            put(message);
+        }
+
+        return true;
+    }
+
+    private void put(Message message) {
+        if (message instanceof Set) {
+            Set set = (Set) message;
+
+            config.put(set.keyArray(), 0, set.keyLength(), set.valueArray(), 0, set.valueLength());
+        } else {
+            MultiSet multiSet = (MultiSet) message;
+
+            for (int i = 0; i < multiSet.size(); i++)
+                config.put(multiSet.keyArray(i), 0, multiSet.keyLength(i), multiSet.valueArray(i), 0, multiSet.valueLength(i));
+        }
+    }
+
+    /*
+     * The update is formatted once and the same bytes are sent to every
+     * subscriber.
+     */
+    private void publish(byte[] key, byte[] value) {
+        synchronized (watches) {
+            watches.subscribers(key, subscribers);
+        }
+
+        if (subscribers.isEmpty())
+            return;
+
+        byte[] update = new Update(key, value).format();
+
+        for (Session subscriber : subscribers)
+            subscriber.send(update);
+
+        subscribers.clear();
+    }
+
+    /*
+     * A session that wraps each reply in a Tagged message with the ID of
+     * the request being answered.
+     */
+    private static class Tagging implements Session {
+        private final Tagged tagged = new Tagged();
+
+        private Session session;
+        private int     id;
+
+        public void set(Session session, int id) {
+            this.session = session;
+            this.id      = id;
+        }
+
+        @Override
+        public void send(Message message) {
+            tagged.set(id, message);
+
+            session.send(tagged);
+        }
+
+        @Override
+        public void send(byte[] message) {
+            session.send(message);
+        }
+
+        @Override
+        public void features(int features) {
+            session.features(features);
+        }
+
+        @Override
+        public KeyTable keys() {
+            return session.keys();
+        }
+
+        @Override
+        public boolean ready() {
+            return session.ready();
+        }
+
+        @Override
+        public void close() {
+            session.close();
+        }
+
+        /*
+         * Return a session that keeps tagging with the current ID after
+         * this one has moved on to other requests.
+         */
+        public Tagging copy() {
+            Tagging copy = new Tagging();
+
+            copy.set(session, id);
+
+            return copy;
+        }
+    }
+
+    /*
+     * A value being streamed to the server. The chunks are kept as they
+     * arrive and joined once complete, so that the value is only copied
+     * once. A value over MAX_VALUE_SIZE is discarded.
+     */
+    private static class Transfer {
+        private final byte[] key;
+
+        private final List<byte[]> chunks = new ArrayList<byte[]>();
+
+        private long length;
+
+        public Transfer(byte[] key) {
+            this.key = key;
+        }
+
+        public void append(byte[] bytes, int count) {
+            if (length + count > MAX_VALUE_SIZE) {
+                chunks.clear();
+
+                length = -1;
+            }
+
+            if (length < 0)
+                return;
+
+            chunks.add(Arrays.copyOf(bytes, count));
+
+            length += count;
+        }
+
+        public boolean discarded() {
+            return length < 0;
+        }
+
+        public byte[] value() {
+            byte[] value = new byte[(int) length];
+
+            int offset = 0;
+
+            for (byte[] chunk : chunks) {
+                System.arraycopy(chunk, 0, value, offset, chunk.length);
+
+                offset += chunk.length;
+            }
+
+            return value;
+        }
+    }
+
+    /*
+     * A reply to a ChunkedGet, sent a chunk at a time for as long as the
+     * session is ready for more.
+     */
+    private static class Stream {
+        private final ValueChunk chunk = new ValueChunk();
+
+        private final Session session;
+        private final byte[]  value;
+
+        private byte[] bytes;
+        private int    offset;
+
+        public Stream(Session session, byte[] key, byte[] value) {
+            this.session = session;
+            this.value   = value;
+
+            chunk.key(key);
+        }
+
+        /*
+         * Return true once the empty chunk that ends the reply is sent.
+         */
+        public boolean send() {
+            while (offset < value.length) {
+                if (!session.ready())
+                    return false;
+
+                int length = Math.min(CHUNK_SIZE, value.length - offset);
+
+                if (bytes == null || bytes.length != length)
+                    bytes = new byte[length];
+
+                System.arraycopy(value, offset, bytes, 0, length);
+
+                chunk.value(bytes);
+
+                session.send(chunk);
+
+                offset += length;
+            }
+
+            chunk.value(EMPTY);
+
+            session.send(chunk);
+
+            return true;
+        }
+    }
+}
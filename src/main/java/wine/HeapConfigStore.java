@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A configuration store backed by a hash map on the heap.
+ */
+public class HeapConfigStore implements ConfigStore {
+    private final Map<ByteString, ByteString> config = new HashMap<ByteString, ByteString>();
+
+    @Override
+    public void put(byte[] key, int keyOffset, int keyLength, byte[] value, int valueOffset, int valueLength) {
+        config.put(new ByteString(copy(key, keyOffset, keyLength)), new ByteString(copy(value, valueOffset, valueLength)));
+    }
+
+    @Override
+    public byte[] get(byte[] key, int keyOffset, int keyLength) {
+        ByteString value = config.get(new ByteString(range(key, keyOffset, keyLength)));
+        if (value == null)
+            return null;
+
+        return value.toArray().clone();
+    }
+
+    @Override
+    public int get(byte[] key, int keyOffset, int keyLength, ByteBuffer buffer) {
+        ByteString value = config.get(new ByteString(range(key, keyOffset, keyLength)));
+        if (value == null)
+            return -1;
+
+        buffer.put(value.toArray());
+
+        return value.toArray().length;
+    }
+
+    @Override
+    public int valueLength(byte[] key, int keyOffset, int keyLength) {
+        ByteString value = config.get(new ByteString(range(key, keyOffset, keyLength)));
+        if (value == null)
+            return -1;
+
+        return value.toArray().length;
+    }
+
+    @Override
+    public int size() {
+        return config.size();
+    }
+
+    @Override
+    public void entries(EntryVisitor visitor) {
+        for (Map.Entry<ByteString, ByteString> entry : config.entrySet())
+            visitor.entry(ByteBuffer.wrap(entry.getKey().toArray()), ByteBuffer.wrap(entry.getValue().toArray()));
+    }
+
+    private static byte[] copy(byte[] bytes, int offset, int length) {
+        return Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+
+    private static byte[] range(byte[] bytes, int offset, int length) {
+        if (offset == 0 && length == bytes.length)
+            return bytes;
+
+        return copy(bytes, offset, length);
+    }
+}
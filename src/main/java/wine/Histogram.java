@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in nanoseconds.
+ *
+ * Bucket <i>b</i> counts durations of <i>b</i> significant bits, so
+ * percentiles are accurate to within a factor of two. Recording is a single
+ * atomic increment and may happen from any thread; readers see a recent,
+ * but not necessarily consistent, snapshot.
+ */
+public class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos));
+
+        long current;
+
+        while (nanos > (current = max.get())) {
+            if (max.compareAndSet(current, nanos))
+                break;
+        }
+    }
+
+    /**
+     * Return the number of recorded durations.
+     */
+    public long count() {
+        long count = 0;
+
+        for (int i = 0; i < BUCKETS; i++)
+            count += buckets.get(i);
+
+        return count;
+    }
+
+    /**
+     * Return the longest recorded duration.
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Return an upper bound for the <code>quantile</code> (between 0 and 1)
+     * of the recorded durations, or zero if there are none.
+     */
+    public long percentile(double quantile) {
+        long count = count();
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+
+        for (int i = 0; i < BUCKETS; i++) {
+            rank -= buckets.get(i);
+
+            if (rank <= 0)
+                return Math.min((1L << i) - 1, max());
+        }
+
+        return max();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A Get for a key defined with {@link DefineKey}. The server answers with
+ * an {@link IdValue}.
+ */
+public class IdGet extends AbstractMessage {
+    private final IntField id = new IntField();
+
+    public IdGet() {
+        super(Type.ID_GET);
+    }
+
+    public IdGet(int id) {
+        this();
+
+        id(id);
+    }
+
+    public void id(int id) {
+        this.id.set(id);
+    }
+
+    public int id() {
+        return this.id.get();
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        id.parse(buffer);
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        id.format(buffer);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + id.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        return ((IdGet) that).id.equals(this.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + id.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(id);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A message that refers to a key by the ID the connection defined for it
+ * with {@link DefineKey}.
+ */
+public abstract class IdValueMessage extends AbstractMessage {
+    private final IntField  id    = new IntField();
+    private final ByteField value = new ByteField();
+
+    protected IdValueMessage(byte messageType) {
+        super(messageType);
+    }
+
+    protected IdValueMessage(byte messageType, int id, byte[] value) {
+        this(messageType);
+
+        id(id);
+        value(value);
+    }
+
+    public void id(int id) {
+        this.id.set(id);
+    }
+
+    public int id() {
+        return this.id.get();
+    }
+
+    public void value(byte[] value) {
+        this.value.set(value);
+    }
+
+    public byte[] value() {
+        return this.value.get();
+    }
+
+    /**
+     * Return the array backing the value. Only the first {@link
+     * #valueLength()} bytes are valid.
+     */
+    public byte[] valueArray() {
+        return this.value.array();
+    }
+
+    public int valueLength() {
+        return this.value.length();
+    }
+
+    @Override
+    void reusable() {
+        value.reusable(true);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        id.parse(buffer);
+        value.lengthField().parse(buffer);
+        value.parse(buffer);
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        id.format(buffer);
+        value.lengthField().format(buffer);
+        value.format(buffer);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + id.length() + value.lengthField().length() + value.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        IdValueMessage thatMessage = (IdValueMessage) that;
+
+        return thatMessage.id.equals(this.id) && thatMessage.value.equals(this.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * super.hashCode() + id.hashCode()) + value.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(id).append(',').append(value);
+    }
+}
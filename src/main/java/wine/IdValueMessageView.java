@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+public abstract class IdValueMessageView extends AbstractMessageView {
+
+    public int id() {
+        return buffer.getInt(offset + 1);
+    }
+
+    public int valueLength() {
+        return buffer.getInt(offset + 5);
+    }
+
+    public int valueOffset() {
+        return offset + 9;
+    }
+
+    public boolean valueEquals(byte[] value) {
+        return bytesEqual(valueOffset(), valueLength(), value);
+    }
+
+    public void copyValue(byte[] dst, int dstOffset) {
+        copyBytes(valueOffset(), valueLength(), dst, dstOffset);
+    }
+
+    /**
+     * Note that this allocates a new array.
+     */
+    public byte[] value() {
+        return bytes(valueOffset(), valueLength());
+    }
+
+    @Override
+    public int length() {
+        return super.length() + 4 + 4 + valueLength();
+    }
+}
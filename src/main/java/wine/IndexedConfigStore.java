@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * A configuration store that keeps a sorted index of its keys alongside
+ * another store, so that keys can be listed by prefix with {@link Scan}.
+ * Lookups go straight to the other store.
+ *
+ * The index is as thread-safe as it needs to be for any store; whether the
+ * store as a whole is depends on the other store.
+ */
+public class IndexedConfigStore implements ConfigStore {
+    private final ConfigStore config;
+
+    private final KeyIndex index = new KeyIndex();
+
+    /**
+     * Index the keys already in <code>config</code>, for example after
+     * recovering a journal, and every key put from now on.
+     */
+    public IndexedConfigStore(ConfigStore config) {
+        this.config = config;
+
+        config.entries(new EntryVisitor() {
+            @Override
+            public void entry(ByteBuffer key, ByteBuffer value) {
+                byte[] bytes = new byte[key.remaining()];
+
+                key.get(bytes);
+
+                index.add(bytes, 0, bytes.length);
+            }
+        });
+    }
+
+    /**
+     * Return <code>config</code> if it is indexed already, or else an
+     * indexed store in front of it.
+     */
+    public static IndexedConfigStore of(ConfigStore config) {
+        if (config instanceof IndexedConfigStore)
+            return (IndexedConfigStore) config;
+
+        return new IndexedConfigStore(config);
+    }
+
+    /**
+     * The key goes into the index after the value goes into the store, so
+     * that a listed key always has a value.
+     */
+    @Override
+    public void put(byte[] key, int keyOffset, int keyLength, byte[] value, int valueOffset, int valueLength) {
+        boolean added = config.valueLength(key, keyOffset, keyLength) < 0;
+
+        config.put(key, keyOffset, keyLength, value, valueOffset, valueLength);
+
+        if (added)
+            index.add(key, keyOffset, keyLength);
+    }
+
+    @Override
+    public byte[] get(byte[] key, int keyOffset, int keyLength) {
+        return config.get(key, keyOffset, keyLength);
+    }
+
+    @Override
+    public int get(byte[] key, int keyOffset, int keyLength, ByteBuffer buffer) {
+        return config.get(key, keyOffset, keyLength, buffer);
+    }
+
+    @Override
+    public int valueLength(byte[] key, int keyOffset, int keyLength) {
+        return config.valueLength(key, keyOffset, keyLength);
+    }
+
+    @Override
+    public int size() {
+        return config.size();
+    }
+
+    @Override
+    public void entries(EntryVisitor visitor) {
+        config.entries(visitor);
+    }
+
+    /**
+     * Return the store the index is kept alongside.
+     */
+    ConfigStore store() {
+        return config;
+    }
+
+    /**
+     * Return the keys that start with <code>prefix</code> and come after
+     * <code>after</code>, in the order of their unsigned bytes.
+     */
+    public Iterator<byte[]> keys(byte[] prefix, byte[] after) {
+        return index.keys(prefix, after);
+    }
+}
@@ -0,0 +1,561 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import silvertip.GarbledMessageException;
+import silvertip.PartialMessageException;
+
+/**
+ * A durable log of the messages that change a {@link ConfigStore}.
+ *
+ * Messages are appended in their wire encoding, each followed by a CRC32
+ * of it, to memory-mapped segment files. Segment files are zero-filled
+ * when they are created, so a zero message type marks the end of a
+ * segment. Replay stops at the first message whose checksum does not
+ * match, such as one that was only partly written back to disk when the
+ * operating system went down. Once enough segments have
+ * accumulated, the contents of the store are written to a snapshot on a
+ * thread of its own while appends go on to a new segment, and the segments
+ * the snapshot covers are deleted once it is on disk.
+ *
+ * A journal directory holds files named after a sequence number:
+ *
+ * <pre>
+ * 0000000000000007.snapshot  everything before segment 7
+ * 0000000000000007.journal
+ * 0000000000000008.journal
+ * </pre>
+ *
+ * Opening a journal loads the latest snapshot and replays the segments that
+ * follow it into the store. Appends always go to a fresh segment. A
+ * snapshot may already contain changes from the segments that follow it;
+ * replaying them again leaves the store the same.
+ *
+ * A snapshot is only renamed into place once it is on disk, so it carries
+ * no checksums. Unfinished snapshots are deleted on opening.
+ *
+ * Appends, and the changes to the store that they record, must be made
+ * holding the journal's monitor. A {@link StripedConfigStore} is written to
+ * a snapshot one stripe at a time. Any other store is copied to memory as a
+ * whole while holding the monitor, and written out after releasing it.
+ */
+public class Journal {
+    private static final String SEGMENT_SUFFIX  = ".journal";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String TMP_SUFFIX      = ".tmp";
+
+    private static final int CHECKSUM_LENGTH = 4;
+
+    /*
+     * The scratch buffer for formatting appends shrinks back to this size
+     * after a larger message.
+     */
+    private static final int FRAME_BUFFER_SIZE = 64 * 1024;
+
+    private final File        directory;
+    private final ConfigStore store;
+
+    private final int segmentSize;
+    private final int syncEvery;
+    private final int compactAfterSegments;
+
+    private volatile long snapshotSequence;
+
+    private long segmentSequence;
+
+    private MappedByteBuffer segment;
+
+    private int unsynced;
+
+    private Thread compaction;
+
+    private volatile IOException failure;
+
+    private final CRC32 checksum = new CRC32();
+
+    private ByteBuffer frame = ByteBuffer.allocate(FRAME_BUFFER_SIZE);
+
+    /*
+     * Scratch space for copying keys and values during replay.
+     */
+    private byte[] key   = new byte[64];
+    private byte[] value = new byte[64];
+
+    /**
+     * Open a journal with 64 MiB segments that syncs every 1,000 appends and
+     * compacts after 16 segments.
+     */
+    public Journal(File directory, ConfigStore store) throws IOException {
+        this(directory, store, 64 * 1024 * 1024, 1000, 16);
+    }
+
+    /**
+     * Open a journal and replay it into <code>store</code>.
+     *
+     * @param syncEvery the number of appends between forcing the segment to
+     *        disk, or zero to leave writing back to the operating system
+     */
+    public Journal(File directory, ConfigStore store, int segmentSize, int syncEvery, int compactAfterSegments) throws IOException {
+        this.directory            = directory;
+        this.store                = store;
+        this.segmentSize          = segmentSize;
+        this.syncEvery            = syncEvery;
+        this.compactAfterSegments = compactAfterSegments;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException(String.format("%s: Cannot create directory", directory));
+
+        recover();
+
+        open(segmentSequence + 1, segmentSize);
+    }
+
+    /**
+     * Append a message in its wire encoding.
+     *
+     * @throws IOException if the message cannot be appended, or if the last
+     *         compaction in the background failed
+     */
+    public void append(Message message) throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            failure = null;
+            throw e;
+        }
+
+        int length = message.length() + CHECKSUM_LENGTH;
+
+        if (segment.remaining() < length) {
+            sync();
+
+            open(segmentSequence + 1, Math.max(segmentSize, length));
+
+            if (segmentSequence - snapshotSequence >= compactAfterSegments && !compacting())
+                compactLater(segmentSequence);
+        }
+
+        if (frame.capacity() < length)
+            frame = ByteBuffer.allocate(length);
+
+        frame.clear();
+
+        message.format(frame);
+
+        checksum.reset();
+        checksum.update(frame.array(), 0, frame.position());
+
+        frame.putInt((int) checksum.getValue());
+
+        frame.flip();
+
+        segment.put(frame);
+
+        if (frame.capacity() > FRAME_BUFFER_SIZE)
+            frame = ByteBuffer.allocate(FRAME_BUFFER_SIZE);
+
+        if (syncEvery > 0 && ++unsynced >= syncEvery)
+            sync();
+    }
+
+    /**
+     * Force the appends so far to disk.
+     */
+    public void sync() {
+        segment.force();
+
+        unsynced = 0;
+    }
+
+    /**
+     * Continue in a new segment, write the contents of the store to a
+     * snapshot and delete the segments that the snapshot covers. A
+     * compaction in the background is waited for first.
+     */
+    public void compact() throws IOException {
+        await();
+
+        sync();
+
+        open(segmentSequence + 1, segmentSize);
+
+        compact(segmentSequence);
+    }
+
+    /**
+     * Wait for a compaction in the background to finish and force the
+     * appends so far to disk.
+     */
+    public void close() throws IOException {
+        await();
+
+        sync();
+
+        IOException e = failure;
+        if (e != null) {
+            failure = null;
+            throw e;
+        }
+    }
+
+    private boolean compacting() {
+        return compaction != null && compaction.isAlive();
+    }
+
+    private void compactLater(final long sequence) {
+        compaction = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact(sequence);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }, "wine-compaction");
+
+        compaction.setDaemon(true);
+        compaction.start();
+    }
+
+    private void await() throws IOException {
+        if (compaction == null)
+            return;
+
+        try {
+            compaction.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Interrupted while compacting");
+        }
+
+        compaction = null;
+    }
+
+    /*
+     * Every change before segment <code>sequence</code> is in the store by
+     * now, so a snapshot taken from here on covers the segments before it.
+     */
+    private void compact(long sequence) throws IOException {
+        File tmp = new File(directory, name(sequence, SNAPSHOT_SUFFIX + TMP_SUFFIX));
+
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            if (store instanceof StripedConfigStore) {
+                SnapshotWriter writer = new SnapshotWriter(out.getChannel());
+
+                store.entries(writer);
+
+                writer.close();
+            } else {
+                ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+                SnapshotWriter writer = new SnapshotWriter(Channels.newChannel(copy));
+
+                synchronized (this) {
+                    store.entries(writer);
+                }
+
+                writer.close();
+
+                copy.writeTo(out);
+            }
+
+            out.getFD().sync();
+        } catch (SnapshotWriter.Failure e) {
+            throw e.getCause();
+        } finally {
+            out.close();
+        }
+
+        if (!tmp.renameTo(new File(directory, name(sequence, SNAPSHOT_SUFFIX))))
+            throw new IOException(String.format("%s: Cannot rename", tmp));
+
+        snapshotSequence = sequence;
+
+        deleteBefore(sequence);
+    }
+
+    private void open(long sequence, int size) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(new File(directory, name(sequence, SEGMENT_SUFFIX)), "rw");
+        try {
+            segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            file.close();
+        }
+
+        segmentSequence = sequence;
+        unsynced        = 0;
+    }
+
+    private void recover() throws IOException {
+        for (long snapshot : sequences(SNAPSHOT_SUFFIX + TMP_SUFFIX))
+            delete(new File(directory, name(snapshot, SNAPSHOT_SUFFIX + TMP_SUFFIX)));
+
+        long[] snapshots = sequences(SNAPSHOT_SUFFIX);
+        long[] segments  = sequences(SEGMENT_SUFFIX);
+
+        /*
+         * Without a snapshot, act as if there was an empty one before the
+         * first segment.
+         */
+        snapshotSequence = 1;
+
+        if (snapshots.length > 0) {
+            snapshotSequence = snapshots[snapshots.length - 1];
+
+            replay(new File(directory, name(snapshotSequence, SNAPSHOT_SUFFIX)), false);
+        }
+
+        segmentSequence = snapshotSequence - 1;
+
+        for (long sequence : segments) {
+            if (sequence < snapshotSequence)
+                continue;
+
+            replay(new File(directory, name(sequence, SEGMENT_SUFFIX)), true);
+
+            segmentSequence = sequence;
+        }
+
+        deleteBefore(snapshotSequence);
+    }
+
+    private void replay(File file, boolean checksummed) throws IOException {
+        ByteBuffer buffer;
+
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+        } finally {
+            in.close();
+        }
+
+        ViewParser parser = new ViewParser();
+
+        while (buffer.hasRemaining() && buffer.get(buffer.position()) != 0) {
+            int start = buffer.position();
+
+            MessageView view;
+
+            try {
+                view = parser.parse(buffer);
+            } catch (PartialMessageException e) {
+                break;
+            } catch (GarbledMessageException e) {
+                break;
+            }
+
+            if (checksummed && !verify(buffer, start))
+                break;
+
+            if (view instanceof SetView)
+                replay((SetView) view);
+            else if (view instanceof MultiSetView)
+                replay((MultiSetView) view);
+        }
+    }
+
+    /*
+     * Check the checksum that follows the message from <code>start</code>
+     * to the position, and move past it.
+     */
+    private boolean verify(ByteBuffer buffer, int start) {
+        int length = buffer.position() - start;
+
+        if (buffer.remaining() < CHECKSUM_LENGTH)
+            return false;
+
+        value = ensureCapacity(value, length);
+
+        ByteBuffer message = buffer.duplicate();
+
+        message.position(start);
+        message.get(value, 0, length);
+
+        checksum.reset();
+        checksum.update(value, 0, length);
+
+        return buffer.getInt() == (int) checksum.getValue();
+    }
+
+    private void replay(SetView view) {
+        key   = ensureCapacity(key, view.keyLength());
+        value = ensureCapacity(value, view.valueLength());
+
+        view.copyKey(key, 0);
+        view.copyValue(value, 0);
+
+        store.put(key, 0, view.keyLength(), value, 0, view.valueLength());
+    }
+
+    private void replay(MultiSetView view) {
+        int entry = view.firstEntry();
+
+        for (int i = view.size(); i > 0; i--) {
+            int keyLength   = view.keyLength(entry);
+            int valueLength = view.valueLength(entry);
+
+            key   = ensureCapacity(key, keyLength);
+            value = ensureCapacity(value, valueLength);
+
+            view.copyKey(entry, key, 0);
+            view.copyValue(entry, value, 0);
+
+            store.put(key, 0, keyLength, value, 0, valueLength);
+
+            entry = view.nextEntry(entry);
+        }
+    }
+
+    private void deleteBefore(long sequence) throws IOException {
+        for (long segment : sequences(SEGMENT_SUFFIX)) {
+            if (segment < sequence)
+                delete(new File(directory, name(segment, SEGMENT_SUFFIX)));
+        }
+
+        for (long snapshot : sequences(SNAPSHOT_SUFFIX)) {
+            if (snapshot < sequence)
+                delete(new File(directory, name(snapshot, SNAPSHOT_SUFFIX)));
+        }
+    }
+
+    private long[] sequences(String suffix) {
+        String[] names = directory.list();
+        if (names == null)
+            return new long[0];
+
+        long[] sequences = new long[names.length];
+        int    count     = 0;
+
+        for (String name : names) {
+            if (!name.endsWith(suffix))
+                continue;
+
+            try {
+                sequences[count] = Long.parseLong(name.substring(0, name.length() - suffix.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            count++;
+        }
+
+        sequences = Arrays.copyOf(sequences, count);
+
+        Arrays.sort(sequences);
+
+        return sequences;
+    }
+
+    private static void delete(File file) throws IOException {
+        if (!file.delete())
+            throw new IOException(String.format("%s: Cannot delete", file));
+    }
+
+    private static String name(long sequence, String suffix) {
+        return String.format("%016d%s", sequence, suffix);
+    }
+
+    private static byte[] ensureCapacity(byte[] bytes, int length) {
+        if (bytes.length >= length)
+            return bytes;
+
+        return new byte[Math.max(length, 2 * bytes.length)];
+    }
+
+    /*
+     * Writes each entry as a Set message.
+     */
+    private static class SnapshotWriter implements ConfigStore.EntryVisitor {
+        private static final int HEADER_LENGTH = 1 + 4 + 4;
+
+        private final ByteBuffer          buffer = ByteBuffer.allocate(64 * 1024);
+        private final WritableByteChannel channel;
+
+        public SnapshotWriter(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void entry(ByteBuffer key, ByteBuffer value) {
+            try {
+                int length = HEADER_LENGTH + key.remaining() + value.remaining();
+
+                if (buffer.remaining() < length)
+                    flush();
+
+                buffer.put(AbstractMessage.Type.SET);
+                buffer.putInt(key.remaining());
+                buffer.putInt(value.remaining());
+
+                if (buffer.remaining() < length - HEADER_LENGTH) {
+                    flush();
+
+                    write(key);
+                    write(value);
+                } else {
+                    buffer.put(key);
+                    buffer.put(value);
+                }
+            } catch (IOException e) {
+                throw new Failure(e);
+            }
+        }
+
+        public void close() throws IOException {
+            flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+
+            write(buffer);
+
+            buffer.clear();
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+
+        private static class Failure extends RuntimeException {
+            private static final long serialVersionUID = 1L;
+
+            public Failure(IOException cause) {
+                super(cause);
+            }
+
+            @Override
+            public IOException getCause() {
+                return (IOException) super.getCause();
+            }
+        }
+    }
+}
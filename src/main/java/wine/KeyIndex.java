@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Keys in the order of their raw bytes, compared as unsigned, in a
+ * concurrent skip list. Adding and iterating never lock; iterators see a
+ * weakly consistent view.
+ */
+class KeyIndex {
+    private static final Comparator<byte[]> ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int length = Math.min(a.length, b.length);
+
+            for (int i = 0; i < length; i++) {
+                int difference = (a[i] & 0xff) - (b[i] & 0xff);
+                if (difference != 0)
+                    return difference;
+            }
+
+            return a.length - b.length;
+        }
+    };
+
+    private final ConcurrentSkipListSet<byte[]> keys = new ConcurrentSkipListSet<byte[]>(ORDER);
+
+    /**
+     * Add a copy of the key unless it is already in.
+     */
+    public void add(byte[] key, int offset, int length) {
+        byte[] copy = new byte[length];
+
+        System.arraycopy(key, offset, copy, 0, length);
+
+        keys.add(copy);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Return the keys that start with <code>prefix</code> and come after
+     * <code>after</code>, in order. An empty <code>after</code> starts from
+     * the first key with the prefix.
+     */
+    public Iterator<byte[]> keys(final byte[] prefix, byte[] after) {
+        final Iterator<byte[]> tail = ORDER.compare(after, prefix) > 0
+            ? keys.tailSet(after, false).iterator()
+            : keys.tailSet(prefix, true).iterator();
+
+        return new Iterator<byte[]>() {
+            private byte[] next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public byte[] next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+
+                byte[] key = next;
+
+                next = advance();
+
+                return key;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private byte[] advance() {
+                if (!tail.hasNext())
+                    return null;
+
+                byte[] key = tail.next();
+
+                return startsWith(key, prefix) ? key : null;
+            }
+        };
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        if (key.length < prefix.length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i])
+                return false;
+        }
+
+        return true;
+    }
+}
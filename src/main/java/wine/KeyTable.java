@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+/**
+ * The keys a connection has defined with {@link DefineKey}, indexed by
+ * their IDs. Only used by the thread serving the connection.
+ */
+class KeyTable {
+    /**
+     * IDs go from zero up to, but not including, this.
+     */
+    public static final int MAX_KEYS = 64 * 1024;
+
+    private byte[][] keys = new byte[16][];
+
+    /**
+     * Return false if the ID is out of range.
+     */
+    public boolean define(int id, byte[] key) {
+        if (id < 0 || id >= MAX_KEYS)
+            return false;
+
+        if (id >= keys.length) {
+            byte[][] table = new byte[Math.min(MAX_KEYS, Math.max(id + 1, 2 * keys.length))][];
+
+            System.arraycopy(keys, 0, table, 0, keys.length);
+
+            keys = table;
+        }
+
+        keys[id] = key;
+
+        return true;
+    }
+
+    /**
+     * Return the key with the ID, or null if it is not defined.
+     */
+    public byte[] get(int id) {
+        if (id < 0 || id >= keys.length)
+            return null;
+
+        return keys[id];
+    }
+}
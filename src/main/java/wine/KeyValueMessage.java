@@ -48,6 +48,36 @@ public abstract class KeyValueMessage extends AbstractMessage {
         return this.value.get();
     }
 
+    /**
+     * Return the array backing the key. Only the first {@link #keyLength()}
+     * bytes are valid.
+     */
+    public byte[] keyArray() {
+        return this.key.array();
+    }
+
+    public int keyLength() {
+        return this.key.length();
+    }
+
+    /**
+     * Return the array backing the value. Only the first {@link
+     * #valueLength()} bytes are valid.
+     */
+    public byte[] valueArray() {
+        return this.value.array();
+    }
+
+    public int valueLength() {
+        return this.value.length();
+    }
+
+    @Override
+    void reusable() {
+        key.reusable(true);
+        value.reusable(true);
+    }
+
     @Override
     public void parse(ByteBuffer buffer) {
         super.parse(buffer);
@@ -61,13 +91,21 @@ public abstract class KeyValueMessage extends AbstractMessage {
 
     @Override
     public void format(ByteBuffer buffer) {
+        formatHeader(buffer);
+
+        value.format(buffer);
+    }
+
+    /**
+     * Format everything but the value, which comes last.
+     */
+    void formatHeader(ByteBuffer buffer) {
         super.format(buffer);
 
         key.lengthField().format(buffer);
         value.lengthField().format(buffer);
 
         key.format(buffer);
-        value.format(buffer);
     }
 
     @Override
@@ -78,4 +116,24 @@ public abstract class KeyValueMessage extends AbstractMessage {
             + key.length()
             + value.length();
     }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        KeyValueMessage thatMessage = (KeyValueMessage) that;
+
+        return thatMessage.key.equals(this.key) && thatMessage.value.equals(this.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * super.hashCode() + key.hashCode()) + value.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(key).append(',').append(value);
+    }
 }
@@ -20,11 +20,16 @@ import java.nio.ByteBuffer;
 public class Login extends AbstractMessage implements StringMessage {
     private final StringField username = new StringField(8);
     private final StringField password = new StringField(20);
+    private final IntField    features = new IntField();
 
     public Login() {
         super(Type.LOGIN);
     }
 
+    Login(byte messageType) {
+        super(messageType);
+    }
+
     public Login(String username, String password) {
         this();
        
@@ -32,6 +37,16 @@ public class Login extends AbstractMessage implements StringMessage {
         password(password);
     }
 
+    /**
+     * Create a login that asks for <code>features</code>; see {@link
+     * Features}.
+     */
+    public Login(String username, String password, int features) {
+        this(username, password);
+
+        features(features);
+    }
+
     public void username(String username) {
         this.username.set(username);
     }
@@ -40,6 +55,14 @@ public class Login extends AbstractMessage implements StringMessage {
         return this.username.get();
     }
 
+    /**
+     * Return true if the username is <code>username</code>. Unlike
+     * comparing {@link #username()}, this does not allocate.
+     */
+    public boolean usernameEquals(String username) {
+        return this.username.contentEquals(username);
+    }
+
     public void password(String password) {
         this.password.set(password);
     }
@@ -48,6 +71,20 @@ public class Login extends AbstractMessage implements StringMessage {
         return this.password.get();
     }
 
+    /**
+     * Ask for <code>features</code>. A login without features keeps the
+     * original format.
+     */
+    public void features(int features) {
+        this.features.set(features);
+
+        messageType(features != 0 ? Type.LOGIN_FEATURES : Type.LOGIN);
+    }
+
+    public int features() {
+        return this.features.get();
+    }
+
     @Override
     public void accept(MessageVisitor visitor) {
         visitor.visit(this);
@@ -59,6 +96,11 @@ public class Login extends AbstractMessage implements StringMessage {
 
         username.parse(buffer);
         password.parse(buffer);
+
+        if (messageType() == Type.LOGIN_FEATURES)
+            features.parse(buffer);
+        else
+            features.set(0);
     }
 
     @Override
@@ -67,10 +109,42 @@ public class Login extends AbstractMessage implements StringMessage {
 
         username.format(buffer);
         password.format(buffer);
+
+        if (messageType() == Type.LOGIN_FEATURES)
+            features.format(buffer);
     }
 
     @Override
     public int length() {
-        return super.length() + username.length() + password.length();
+        int length = super.length() + username.length() + password.length();
+
+        if (messageType() == Type.LOGIN_FEATURES)
+            length += features.length();
+
+        return length;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        Login thatMessage = (Login) that;
+
+        return thatMessage.username.equals(this.username) && thatMessage.password.equals(this.password)
+            && thatMessage.features.equals(this.features);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * super.hashCode() + username.hashCode()) + password.hashCode()) + features.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(username).append(',').append(password);
+
+        if (messageType() == Type.LOGIN_FEATURES)
+            builder.append(',').append(features);
     }
 }
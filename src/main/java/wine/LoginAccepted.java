@@ -15,15 +15,93 @@
  */
 package wine;
 
+import java.nio.ByteBuffer;
+
 public class LoginAccepted extends AbstractMessage implements StringMessage {
+    private final IntField features = new IntField();
 
     public LoginAccepted() {
         super(Type.LOGIN_ACCEPTED);
     }
 
+    LoginAccepted(byte messageType) {
+        super(messageType);
+    }
+
+    /**
+     * Create a reply that grants <code>features</code>; see {@link
+     * Features}.
+     */
+    public LoginAccepted(int features) {
+        this();
+
+        features(features);
+    }
+
+    /**
+     * Grant <code>features</code>. A reply without features keeps the
+     * original format.
+     */
+    public void features(int features) {
+        this.features.set(features);
+
+        messageType(features != 0 ? Type.LOGIN_ACCEPTED_FEATURES : Type.LOGIN_ACCEPTED);
+    }
+
+    public int features() {
+        return this.features.get();
+    }
+
     @Override
     public void accept(MessageVisitor visitor) {
         visitor.visit(this);
     }
 
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        if (messageType() == Type.LOGIN_ACCEPTED_FEATURES)
+            features.parse(buffer);
+        else
+            features.set(0);
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        if (messageType() == Type.LOGIN_ACCEPTED_FEATURES)
+            features.format(buffer);
+    }
+
+    @Override
+    public int length() {
+        int length = super.length();
+
+        if (messageType() == Type.LOGIN_ACCEPTED_FEATURES)
+            length += features.length();
+
+        return length;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        return ((LoginAccepted) that).features.equals(this.features);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + features.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        if (messageType() == Type.LOGIN_ACCEPTED_FEATURES)
+            builder.append(features);
+    }
+
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+public class LoginAcceptedView extends AbstractMessageView {
+
+    /**
+     * Return the features granted; see {@link Features}.
+     */
+    public int features() {
+        if (!hasFeatures())
+            return 0;
+
+        return buffer.getInt(offset + 1);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + (hasFeatures() ? 4 : 0);
+    }
+
+    @Override
+    public void accept(MessageViewVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public LoginAccepted toMessage() {
+        return new LoginAccepted(features());
+    }
+
+    private boolean hasFeatures() {
+        return buffer.get(offset) == AbstractMessage.Type.LOGIN_ACCEPTED_FEATURES;
+    }
+
+}
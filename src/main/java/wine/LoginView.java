@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.charset.Charset;
+
+public class LoginView extends AbstractMessageView {
+    static final int USERNAME_LENGTH = 8;
+    static final int PASSWORD_LENGTH = 20;
+
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    public int usernameOffset() {
+        return offset + 1;
+    }
+
+    public int passwordOffset() {
+        return usernameOffset() + USERNAME_LENGTH;
+    }
+
+    /**
+     * Return the features asked for; see {@link Features}.
+     */
+    public int features() {
+        if (!hasFeatures())
+            return 0;
+
+        return buffer.getInt(passwordOffset() + PASSWORD_LENGTH);
+    }
+
+    /**
+     * Note that this allocates a new string.
+     */
+    public String username() {
+        return string(usernameOffset(), USERNAME_LENGTH);
+    }
+
+    /**
+     * Return true if the username is <code>username</code>, without
+     * allocating.
+     */
+    public boolean usernameEquals(String username) {
+        int start = usernameOffset();
+        int end   = start + USERNAME_LENGTH;
+
+        while (start < end && (buffer.get(start) & 0xff) <= ' ')
+            start++;
+
+        while (end > start && (buffer.get(end - 1) & 0xff) <= ' ')
+            end--;
+
+        if (username.length() != end - start)
+            return false;
+
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) != username.charAt(i - start))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Note that this allocates a new string.
+     */
+    public String password() {
+        return string(passwordOffset(), PASSWORD_LENGTH);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + USERNAME_LENGTH + PASSWORD_LENGTH + (hasFeatures() ? 4 : 0);
+    }
+
+    @Override
+    public void accept(MessageViewVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public Login toMessage() {
+        return new Login(username(), password(), features());
+    }
+
+    private boolean hasFeatures() {
+        return buffer.get(offset) == AbstractMessage.Type.LOGIN_FEATURES;
+    }
+
+    private String string(int offset, int length) {
+        return new String(bytes(offset, length), CHARSET).trim();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import silvertip.GarbledMessageException;
+
+/**
+ * A pool of reusable message instances for {@link Parser}.
+ *
+ * A message returned by a pooling parser, together with the arrays returned
+ * by its accessors, belongs to the pool. It may be referenced only until it
+ * is handed back with {@link #release(Message)}; after that it is parsed into
+ * again. A callback that needs to keep a message must either not release it
+ * or copy what it needs first.
+ *
+ * Pools are not thread-safe. Use one pool per connection, or one per thread
+ * when connections are served by several threads.
+ */
+public class MessagePool {
+    private final FreeList[] freeLists = new FreeList[256];
+
+    AbstractMessage acquire(byte messageType) throws GarbledMessageException {
+        FreeList freeList = freeLists[messageType & 0xff];
+        if (freeList != null && !freeList.isEmpty())
+            return freeList.pop();
+
+        AbstractMessage message = AbstractMessage.create(messageType);
+
+        message.reusable();
+
+        return message;
+    }
+
+    /**
+     * Release <code>message</code>. The message wrapped in a {@link Tagged}
+     * message is released with it.
+     */
+    public void release(Message message) {
+        AbstractMessage abstractMessage = (AbstractMessage) message;
+
+        if (abstractMessage instanceof Tagged) {
+            Tagged tagged = (Tagged) abstractMessage;
+
+            if (tagged.message() != null)
+                release(tagged.message());
+
+            tagged.message(null);
+        }
+
+        int index = abstractMessage.messageType() & 0xff;
+
+        FreeList freeList = freeLists[index];
+        if (freeList == null) {
+            freeList = new FreeList();
+
+            freeLists[index] = freeList;
+        }
+
+        freeList.push(abstractMessage);
+    }
+
+    private static class FreeList {
+        private AbstractMessage[] messages = new AbstractMessage[4];
+
+        private int size;
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public AbstractMessage pop() {
+            AbstractMessage message = messages[--size];
+
+            messages[size] = null;
+
+            return message;
+        }
+
+        public void push(AbstractMessage message) {
+            if (size == messages.length) {
+                AbstractMessage[] newMessages = new AbstractMessage[messages.length * 2];
+
+                System.arraycopy(messages, 0, newMessages, 0, size);
+
+                messages = newMessages;
+            }
+
+            messages[size++] = message;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A read-only view of a message that is still in its wire encoding.
+ *
+ * Views do not copy anything out of the underlying buffer. They are only
+ * valid until the buffer is compacted, cleared or overwritten; use
+ * {@link #toMessage()} to keep a message beyond that.
+ */
+public interface MessageView {
+    void accept(MessageViewVisitor visitor);
+
+    ByteBuffer buffer();
+
+    int offset();
+
+    int length();
+
+    Message toMessage();
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+public interface MessageViewVisitor {
+    void visit(LoginView view);
+
+    void visit(LoginAcceptedView view);
+
+    void visit(LoginRejectedView view);
+
+    void visit(GetView view);
+
+    void visit(ValueView view);
+
+    void visit(SetView view);
+
+    void visit(MultiGetView view);
+
+    void visit(MultiValueView view);
+
+    void visit(MultiSetView view);
+
+    void visit(WatchView view);
+
+    void visit(UnwatchView view);
+
+    void visit(UpdateView view);
+
+    void visit(SetChunkView view);
+
+    void visit(ValueChunkView view);
+
+    void visit(ChunkedGetView view);
+
+    void visit(RangeGetView view);
+
+    void visit(SamplesView view);
+
+    void visit(ScanView view);
+
+    void visit(DefineKeyView view);
+
+    void visit(IdGetView view);
+
+    void visit(IdSetView view);
+
+    void visit(IdValueView view);
+
+    void visit(FollowView view);
+
+    void visit(PositionView view);
+
+    void visit(ResendView view);
+}
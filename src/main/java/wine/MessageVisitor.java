@@ -27,4 +27,46 @@ public interface MessageVisitor {
     void visit(Value message);
 
     void visit(Set message);
+
+    void visit(MultiGet message);
+
+    void visit(MultiValue message);
+
+    void visit(MultiSet message);
+
+    void visit(Watch message);
+
+    void visit(Unwatch message);
+
+    void visit(Update message);
+
+    void visit(SetChunk message);
+
+    void visit(ValueChunk message);
+
+    void visit(ChunkedGet message);
+
+    void visit(RangeGet message);
+
+    void visit(Samples message);
+
+    void visit(Scan message);
+
+    void visit(DefineKey message);
+
+    void visit(IdGet message);
+
+    void visit(IdSet message);
+
+    void visit(IdValue message);
+
+    void visit(Tagged message);
+
+    void visit(Follow message);
+
+    void visit(Position message);
+
+    void visit(Resend message);
+
+    void visit(Compressed message);
 }
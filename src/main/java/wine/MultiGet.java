@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A request for the values of several keys. The server answers with a
+ * single {@link MultiValue}.
+ */
+public class MultiGet extends AbstractMessage {
+    private final ByteFieldList keys = new ByteFieldList();
+
+    public MultiGet() {
+        super(Type.MULTI_GET);
+    }
+
+    public MultiGet(byte[]... keys) {
+        this();
+
+        for (byte[] key : keys)
+            add(key);
+    }
+
+    public void add(byte[] key) {
+        this.keys.add(key);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public byte[] key(int index) {
+        return keys.get(index).get();
+    }
+
+    /**
+     * Return the array backing the key at <code>index</code>. Only the first
+     * {@link #keyLength(int)} bytes are valid.
+     */
+    public byte[] keyArray(int index) {
+        return keys.get(index).array();
+    }
+
+    public int keyLength(int index) {
+        return keys.get(index).length();
+    }
+
+    public void clear() {
+        keys.clear();
+    }
+
+    @Override
+    void reusable() {
+        keys.reusable(true);
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        int size = buffer.getInt();
+
+        keys.clear();
+
+        for (int i = 0; i < size; i++) {
+            ByteField key = keys.add();
+
+            key.lengthField().parse(buffer);
+            key.parse(buffer);
+        }
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        buffer.putInt(keys.size());
+
+        for (int i = 0; i < keys.size(); i++) {
+            ByteField key = keys.get(i);
+
+            key.lengthField().format(buffer);
+            key.format(buffer);
+        }
+    }
+
+    @Override
+    public int length() {
+        return super.length() + 4 + keys.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        return ((MultiGet) that).keys.equals(this.keys);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + keys.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(keys);
+    }
+}
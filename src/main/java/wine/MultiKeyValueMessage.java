@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+public abstract class MultiKeyValueMessage extends AbstractMessage {
+    private final ByteFieldList keys   = new ByteFieldList();
+    private final ByteFieldList values = new ByteFieldList();
+
+    protected MultiKeyValueMessage(byte messageType) {
+        super(messageType);
+    }
+
+    public void add(byte[] key, byte[] value) {
+        this.keys.add(key);
+        this.values.add(value);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public byte[] key(int index) {
+        return keys.get(index).get();
+    }
+
+    public byte[] value(int index) {
+        return values.get(index).get();
+    }
+
+    /**
+     * Return the array backing the key at <code>index</code>. Only the first
+     * {@link #keyLength(int)} bytes are valid.
+     */
+    public byte[] keyArray(int index) {
+        return keys.get(index).array();
+    }
+
+    public int keyLength(int index) {
+        return keys.get(index).length();
+    }
+
+    /**
+     * Return the array backing the value at <code>index</code>. Only the
+     * first {@link #valueLength(int)} bytes are valid.
+     */
+    public byte[] valueArray(int index) {
+        return values.get(index).array();
+    }
+
+    public int valueLength(int index) {
+        return values.get(index).length();
+    }
+
+    public void clear() {
+        keys.clear();
+        values.clear();
+    }
+
+    @Override
+    void reusable() {
+        keys.reusable(true);
+        values.reusable(true);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        int size = buffer.getInt();
+
+        clear();
+
+        for (int i = 0; i < size; i++) {
+            ByteField key   = keys.add();
+            ByteField value = values.add();
+
+            key.lengthField().parse(buffer);
+            value.lengthField().parse(buffer);
+
+            key.parse(buffer);
+            value.parse(buffer);
+        }
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        buffer.putInt(keys.size());
+
+        for (int i = 0; i < keys.size(); i++) {
+            ByteField key   = keys.get(i);
+            ByteField value = values.get(i);
+
+            key.lengthField().format(buffer);
+            value.lengthField().format(buffer);
+
+            key.format(buffer);
+            value.format(buffer);
+        }
+    }
+
+    @Override
+    public int length() {
+        return super.length() + 4 + keys.length() + values.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        MultiKeyValueMessage thatMessage = (MultiKeyValueMessage) that;
+
+        return thatMessage.keys.equals(this.keys) && thatMessage.values.equals(this.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * super.hashCode() + keys.hashCode()) + values.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(keys).append(',').append(values);
+    }
+}
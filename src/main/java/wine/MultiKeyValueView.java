@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+/**
+ * A view of a {@link MultiKeyValueMessage}. Entries are visited in the same
+ * way as in {@link MultiGetView}.
+ */
+public abstract class MultiKeyValueView extends AbstractMessageView {
+
+    public int size() {
+        return buffer.getInt(offset + 1);
+    }
+
+    public int firstEntry() {
+        return offset + 5;
+    }
+
+    public int nextEntry(int entry) {
+        return valueOffset(entry) + valueLength(entry);
+    }
+
+    public int keyLength(int entry) {
+        return buffer.getInt(entry);
+    }
+
+    public int valueLength(int entry) {
+        return buffer.getInt(entry + 4);
+    }
+
+    public int keyOffset(int entry) {
+        return entry + 8;
+    }
+
+    public int valueOffset(int entry) {
+        return keyOffset(entry) + keyLength(entry);
+    }
+
+    public boolean keyEquals(int entry, byte[] key) {
+        return bytesEqual(keyOffset(entry), keyLength(entry), key);
+    }
+
+    public void copyKey(int entry, byte[] dst, int dstOffset) {
+        copyBytes(keyOffset(entry), keyLength(entry), dst, dstOffset);
+    }
+
+    public void copyValue(int entry, byte[] dst, int dstOffset) {
+        copyBytes(valueOffset(entry), valueLength(entry), dst, dstOffset);
+    }
+
+    /**
+     * Note that this allocates a new array.
+     */
+    public byte[] key(int entry) {
+        return bytes(keyOffset(entry), keyLength(entry));
+    }
+
+    /**
+     * Note that this allocates a new array.
+     */
+    public byte[] value(int entry) {
+        return bytes(valueOffset(entry), valueLength(entry));
+    }
+
+    @Override
+    public int length() {
+        int entry = firstEntry();
+
+        for (int i = size(); i > 0; i--)
+            entry = nextEntry(entry);
+
+        return entry - offset;
+    }
+
+    protected void copyTo(MultiKeyValueMessage message) {
+        int entry = firstEntry();
+
+        for (int i = size(); i > 0; i--) {
+            message.add(key(entry), value(entry));
+
+            entry = nextEntry(entry);
+        }
+    }
+}
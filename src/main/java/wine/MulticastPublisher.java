@@ -0,0 +1,335 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Broadcasts the changes applied by a server to a multicast group, so that
+ * the cost of fanning them out does not grow with the number of receivers.
+ *
+ * Each change is sent once, as the formatted {@link Update} frame in a
+ * datagram of its own, after a header of:
+ *
+ * <ul>
+ *   <li>the publisher's session, a random number chosen at startup;</li>
+ *   <li>the sequence number of the datagram, starting from 1;</li>
+ *   <li>flags; see {@link #TRUNCATED} and {@link #HEARTBEAT}.</li>
+ * </ul>
+ *
+ * Datagrams may be lost or reordered. A {@link MulticastReceiver} notices
+ * missing sequence numbers and recovers over TCP. The most recent frames
+ * are kept by sequence number, so that the server can send a receiver
+ * exactly the ones it missed; see {@link Resend}. A frame too large for a
+ * datagram is kept without its value, which is read from the store when it
+ * is resent, so the kept frames take at most about a datagram each.
+ *
+ * A heartbeat that cannot be sent is reported from the next
+ * {@link #send(byte[])}.
+ */
+public class MulticastPublisher {
+    /**
+     * The value did not fit in a datagram and was left out; receivers get
+     * it with a Get. If the key did not fit either, no frame follows and
+     * receivers recover as if the datagram had been lost.
+     */
+    public static final byte TRUNCATED = 1 << 0;
+
+    /**
+     * No frame follows. The sequence number is that of the last datagram
+     * sent, so that receivers notice losses while nothing changes.
+     */
+    public static final byte HEARTBEAT = 1 << 1;
+
+    public static final int HEADER_LENGTH = 8 + 8 + 1;
+
+    /**
+     * Datagrams are kept within an Ethernet frame.
+     */
+    public static final int MAX_DATAGRAM = 1472;
+
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = 1000;
+
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private static final int FIELD_LENGTHS = 1 + 4 + 4;
+
+    private final InetSocketAddress group;
+    private final MulticastSocket   socket;
+
+    private final long session = new Random().nextLong();
+
+    private final byte[]         bytes  = new byte[MAX_DATAGRAM];
+    private final ByteBuffer     buffer = ByteBuffer.wrap(bytes);
+    private final DatagramPacket packet;
+
+    private final byte[][]  frames;
+    private final boolean[] truncated;
+
+    private final Update update = new Update();
+
+    private long sequence;
+
+    private Thread heartbeats;
+
+    private volatile IOException failure;
+
+    public MulticastPublisher(InetSocketAddress group) throws IOException {
+        this(group, null, 1, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a publisher that sends on <code>networkInterface</code>, or
+     * the default one if null, with time-to-live <code>ttl</code>, and
+     * keeps the last <code>capacity</code> frames for resending.
+     */
+    public MulticastPublisher(InetSocketAddress group, NetworkInterface networkInterface, int ttl, int capacity) throws IOException {
+        this.group  = group;
+        this.socket = new MulticastSocket();
+        this.packet = new DatagramPacket(bytes, 0, group);
+        this.frames = new byte[capacity][];
+
+        this.truncated = new boolean[capacity];
+
+        if (networkInterface != null)
+            socket.setNetworkInterface(networkInterface);
+
+        socket.setTimeToLive(ttl);
+    }
+
+    public InetSocketAddress group() {
+        return group;
+    }
+
+    /**
+     * Broadcast a change. Safe to invoke from any thread.
+     */
+    public void publish(byte[] key, byte[] value) throws IOException {
+        send(new Update(key, value).format());
+    }
+
+    /**
+     * Broadcast a formatted {@link Update} frame. The sequence number is
+     * taken even if sending fails, so receivers notice the loss.
+     */
+    public synchronized void send(byte[] frame) throws IOException {
+        sequence++;
+
+        buffer.clear();
+
+        if (HEADER_LENGTH + frame.length <= MAX_DATAGRAM) {
+            keep(frame, false);
+
+            header(0);
+
+            buffer.put(frame);
+        } else {
+            int keyLength = ByteBuffer.wrap(frame).getInt(1);
+
+            ByteBuffer kept = ByteBuffer.allocate(FIELD_LENGTHS + keyLength);
+
+            kept.put(frame[0]);
+            kept.putInt(keyLength);
+            kept.putInt(0);
+            kept.put(frame, FIELD_LENGTHS, keyLength);
+
+            keep(kept.array(), true);
+
+            header(TRUNCATED);
+
+            if (buffer.remaining() >= kept.capacity())
+                buffer.put(kept.array());
+        }
+
+        write();
+
+        IOException e = failure;
+        if (e != null) {
+            failure = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Broadcast the sequence number of the last datagram.
+     */
+    public synchronized void heartbeat() throws IOException {
+        buffer.clear();
+
+        header(HEARTBEAT);
+
+        write();
+    }
+
+    /**
+     * Send a heartbeat every <code>interval</code> milliseconds from a
+     * daemon thread until {@link #close()} is invoked.
+     */
+    public synchronized void start(final long interval) {
+        if (heartbeats != null)
+            return;
+
+        heartbeats = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        Thread.sleep(interval);
+
+                        try {
+                            heartbeat();
+                        } catch (IOException e) {
+                            if (!Thread.currentThread().isInterrupted())
+                                failure = e;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                }
+            }
+        }, "wine-multicast");
+
+        heartbeats.setDaemon(true);
+        heartbeats.start();
+    }
+
+    public synchronized void close() {
+        if (heartbeats != null)
+            heartbeats.interrupt();
+
+        heartbeats = null;
+
+        socket.close();
+    }
+
+    public synchronized long sequence() {
+        return sequence;
+    }
+
+    public long session() {
+        return session;
+    }
+
+    /**
+     * Add the changes sent as datagrams <code>from</code>, inclusive, to
+     * <code>to</code>, exclusive, to an empty <code>changes</code> in
+     * order. A change kept without its value is added with its current
+     * value in <code>config</code>. Return false, leaving
+     * <code>changes</code> empty, if <code>session</code> is not this
+     * publisher's or the changes are no longer kept.
+     */
+    public synchronized boolean resend(long session, long from, long to, ConfigStore config, MultiValue changes) {
+        if (session != this.session || from < 1 || from >= to || to > sequence + 1 || sequence - from >= frames.length)
+            return false;
+
+        for (long i = from; i < to; i++) {
+            byte[] frame = frames[index(i)];
+
+            update.parse(ByteBuffer.wrap(frame, 1, frame.length - 1));
+
+            byte[] key   = update.key();
+            byte[] value = update.value();
+
+            if (truncated[index(i)])
+                value = config.get(key, 0, key.length);
+
+            if (value == null) {
+                changes.clear();
+                return false;
+            }
+
+            changes.add(key, value);
+        }
+
+        return true;
+    }
+
+    /*
+     * The publisher watches every key on the server it is registered with.
+     * Datagrams that cannot be sent are counted as failures in
+     * <code>stats</code>; receivers notice them missing.
+     */
+    Handler.Session subscriber(Stats stats) {
+        return new Subscriber(stats);
+    }
+
+    private void keep(byte[] frame, boolean truncated) {
+        frames[index(sequence)] = frame;
+
+        this.truncated[index(sequence)] = truncated;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % frames.length);
+    }
+
+    private void header(int flags) {
+        buffer.putLong(session);
+        buffer.putLong(sequence);
+        buffer.put((byte) flags);
+    }
+
+    private void write() throws IOException {
+        packet.setData(bytes, 0, buffer.position());
+
+        socket.send(packet);
+    }
+
+    private class Subscriber implements Handler.Session {
+        private final Stats stats;
+
+        Subscriber(Stats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void send(Message message) {
+            send(message.format());
+        }
+
+        @Override
+        public void send(byte[] message) {
+            try {
+                MulticastPublisher.this.send(message);
+            } catch (IOException e) {
+                stats.failed();
+            }
+        }
+
+        @Override
+        public void features(int features) {
+        }
+
+        @Override
+        public KeyTable keys() {
+            return null;
+        }
+
+        @Override
+        public boolean ready() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
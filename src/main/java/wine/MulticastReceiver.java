@@ -0,0 +1,382 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import silvertip.GarbledMessageException;
+import silvertip.PartialMessageException;
+
+/**
+ * Keeps a local copy of the keys under a prefix up to date from the
+ * datagrams of a {@link MulticastPublisher}.
+ *
+ * The copy is first filled with a scan over TCP. After that, missing
+ * sequence numbers, noticed from a later datagram or a heartbeat, are asked
+ * for with a {@link Resend}. Only if the server no longer has all of them,
+ * or the publisher has restarted, does the receiver scan again. Datagrams
+ * received meanwhile are applied afterwards, in order, so the copy
+ * converges on the server's values. Values too large for a datagram are
+ * fetched with a Get.
+ *
+ * The receiver runs on a daemon thread of its own, which also invokes the
+ * listener. If the multicast socket fails, the thread exits and the error
+ * is kept for {@link #failure()}.
+ */
+public class MulticastReceiver {
+    public interface Listener {
+        void updated(byte[] key, byte[] value);
+    }
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final InetSocketAddress server;
+    private final byte[]            prefix;
+    private final ConfigStore       store;
+    private final Listener          listener;
+
+    private final MulticastSocket socket;
+
+    private final Parser parser = new Parser();
+
+    private final AtomicLong received   = new AtomicLong();
+    private final AtomicLong gaps       = new AtomicLong();
+    private final AtomicLong resends    = new AtomicLong();
+    private final AtomicLong recoveries = new AtomicLong();
+
+    /*
+     * Only touched from the receiving thread.
+     */
+    private BlockingClient client;
+
+    private boolean hasSession;
+    private long    session;
+    private long    next;
+
+    /*
+     * The last recovery failed, so the next datagram retries it.
+     */
+    private boolean stale;
+
+    private Thread thread;
+
+    private volatile boolean stopped;
+
+    private volatile IOException failure;
+
+    public MulticastReceiver(InetSocketAddress group, InetSocketAddress server, byte[] prefix, ConfigStore store) throws IOException {
+        this(group, null, server, prefix, store, null);
+    }
+
+    /**
+     * Create a receiver that joins <code>group</code> on
+     * <code>networkInterface</code>, or the default one if null, and
+     * recovers from <code>server</code>. The listener may be null.
+     */
+    public MulticastReceiver(InetSocketAddress group, NetworkInterface networkInterface, InetSocketAddress server, byte[] prefix, ConfigStore store, Listener listener) throws IOException {
+        this.server   = server;
+        this.prefix   = prefix;
+        this.store    = store;
+        this.listener = listener;
+
+        this.socket = new MulticastSocket(group.getPort());
+
+        if (networkInterface != null)
+            socket.joinGroup(group, networkInterface);
+        else
+            socket.joinGroup(group.getAddress());
+    }
+
+    /**
+     * Fill the copy and start receiving in the background.
+     */
+    public synchronized void start() {
+        if (thread != null)
+            return;
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive();
+            }
+        }, "wine-multicast-receiver");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop receiving and wait for the receiving thread to exit.
+     */
+    public synchronized void stop() throws InterruptedException {
+        stopped = true;
+
+        socket.close();
+
+        if (thread != null)
+            thread.join();
+
+        thread = null;
+    }
+
+    /**
+     * Return the error that stopped the receiver, or null if it is still
+     * receiving or was stopped with {@link #stop()}.
+     */
+    public IOException failure() {
+        return failure;
+    }
+
+    /**
+     * Return the number of datagrams received.
+     */
+    public long received() {
+        return received.get();
+    }
+
+    /**
+     * Return the number of times datagrams were found missing.
+     */
+    public long gaps() {
+        return gaps.get();
+    }
+
+    /**
+     * Return the number of gaps filled with just the missing changes.
+     */
+    public long resends() {
+        return resends.get();
+    }
+
+    /**
+     * Return the number of completed scans, including the first one.
+     */
+    public long recoveries() {
+        return recoveries.get();
+    }
+
+    private void receive() {
+        byte[]         bytes  = new byte[MulticastPublisher.MAX_DATAGRAM];
+        DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
+
+        recover();
+
+        try {
+            while (!stopped) {
+                packet.setLength(bytes.length);
+
+                try {
+                    socket.receive(packet);
+                } catch (IOException e) {
+                    if (!stopped)
+                        failure = e;
+
+                    break;
+                }
+
+                received.incrementAndGet();
+
+                receive(ByteBuffer.wrap(bytes, 0, packet.getLength()));
+            }
+        } finally {
+            if (client != null)
+                client.close();
+        }
+    }
+
+    private void receive(ByteBuffer datagram) {
+        if (datagram.remaining() < MulticastPublisher.HEADER_LENGTH)
+            return;
+
+        long session  = datagram.getLong();
+        long sequence = datagram.getLong();
+        byte flags    = datagram.get();
+
+        boolean heartbeat = (flags & MulticastPublisher.HEARTBEAT) != 0;
+
+        if (!hasSession || session != this.session) {
+            if (hasSession)
+                stale = true;
+
+            hasSession   = true;
+            this.session = session;
+
+            next = heartbeat ? sequence + 1 : sequence;
+        }
+
+        if (heartbeat) {
+            if (sequence >= next) {
+                long from = next;
+
+                next = sequence + 1;
+
+                gap(from, next);
+            } else if (stale) {
+                recover();
+            }
+            return;
+        }
+
+        if (sequence < next)
+            return;
+
+        if (sequence > next)
+            gap(next, sequence);
+        else if (stale)
+            recover();
+
+        next = sequence + 1;
+
+        if (!datagram.hasRemaining()) {
+            gap(sequence, next);
+            return;
+        }
+
+        Message message;
+
+        try {
+            message = parser.parse(datagram);
+        } catch (GarbledMessageException e) {
+            gap(sequence, next);
+            return;
+        } catch (PartialMessageException e) {
+            gap(sequence, next);
+            return;
+        }
+
+        if (!(message instanceof Update))
+            return;
+
+        Update update = (Update) message;
+
+        byte[] key = update.key();
+        if (!matches(key))
+            return;
+
+        if ((flags & MulticastPublisher.TRUNCATED) != 0)
+            fetch(key);
+        else
+            apply(key, update.value());
+    }
+
+    /*
+     * The datagrams <code>from</code>, inclusive, to <code>to</code>,
+     * exclusive, are missing.
+     */
+    private void gap(long from, long to) {
+        gaps.incrementAndGet();
+
+        if (stale || !resend(from, to))
+            recover();
+    }
+
+    private boolean resend(long from, long to) {
+        try {
+            MultiValue changes = client().resend(new Resend(session, from, to));
+            if (changes.size() != to - from)
+                return false;
+
+            for (int i = 0; i < changes.size(); i++) {
+                byte[] key = changes.key(i);
+
+                if (matches(key))
+                    apply(key, changes.value(i));
+            }
+
+            resends.incrementAndGet();
+
+            return true;
+        } catch (IOException e) {
+            disconnect();
+
+            return false;
+        }
+    }
+
+    /*
+     * Copy every key under the prefix, a page at a time.
+     */
+    private void recover() {
+        try {
+            Scan request = new Scan(prefix, EMPTY, Handler.SCAN_LIMIT, true);
+
+            while (true) {
+                MultiValue page = client().scan(request);
+                if (page.size() == 0)
+                    break;
+
+                for (int i = 0; i < page.size(); i++)
+                    apply(page.key(i), page.value(i));
+
+                request.after(page.key(page.size() - 1));
+            }
+
+            recoveries.incrementAndGet();
+
+            stale = false;
+        } catch (IOException e) {
+            disconnect();
+        }
+    }
+
+    private void fetch(byte[] key) {
+        try {
+            apply(key, client().get(key));
+        } catch (IOException e) {
+            disconnect();
+        }
+    }
+
+    private BlockingClient client() throws IOException {
+        if (client == null)
+            client = BlockingClient.connect(server);
+
+        return client;
+    }
+
+    private void disconnect() {
+        if (client != null)
+            client.close();
+
+        client = null;
+
+        stale = true;
+    }
+
+    private void apply(byte[] key, byte[] value) {
+        store.put(key, 0, key.length, value, 0, value.length);
+
+        if (listener != null)
+            listener.updated(key, value);
+    }
+
+    private boolean matches(byte[] key) {
+        if (key.length < prefix.length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i])
+                return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A configuration store that keeps keys and values in direct memory.
+ *
+ * Records are appended to a data buffer and located through an open
+ * addressing hash index with linear probing, which is itself kept in direct
+ * memory. The heap footprint is therefore independent of the number of keys.
+ *
+ * A record is laid out as follows:
+ *
+ * <pre>
+ * key length     (4 bytes)
+ * value capacity (4 bytes)
+ * value length   (4 bytes)
+ * key            (key length bytes)
+ * value          (value capacity bytes)
+ * </pre>
+ *
+ * A value that fits in the capacity of the previous one is overwritten in
+ * place. Otherwise a new record is appended and the old one becomes garbage
+ * that is reclaimed when the data buffer is next grown.
+ *
+ * The store is not thread-safe.
+ */
+public class OffHeapConfigStore implements ConfigStore {
+    private static final int RECORD_HEADER_LENGTH = 12;
+
+    /*
+     * Each slot holds the hash of the key and the offset of the record plus
+     * one, so that zero marks an empty slot.
+     */
+    private static final int SLOT_LENGTH = 8;
+
+    private ByteBuffer index;
+    private int        slots;
+    private int        size;
+
+    private ByteBuffer data;
+    private ByteBuffer dataView;
+    private int        dataLength;
+
+    public OffHeapConfigStore() {
+        this(1024, 64 * 1024);
+    }
+
+    public OffHeapConfigStore(int initialKeys, int initialDataCapacity) {
+        this.slots = slots(initialKeys);
+        this.index = ByteBuffer.allocateDirect(slots * SLOT_LENGTH);
+
+        this.data     = ByteBuffer.allocateDirect(Math.max(initialDataCapacity, RECORD_HEADER_LENGTH));
+        this.dataView = data.duplicate();
+    }
+
+    @Override
+    public void put(byte[] key, int keyOffset, int keyLength, byte[] value, int valueOffset, int valueLength) {
+        int hash = hash(key, keyOffset, keyLength);
+        int slot = slot(key, keyOffset, keyLength, hash);
+
+        int record = record(slot);
+        if (record >= 0) {
+            if (valueLength <= data.getInt(record + 4)) {
+                data.putInt(record + 8, valueLength);
+
+                write(valueOffset(record), value, valueOffset, valueLength);
+
+                return;
+            }
+        } else if (2 * (size + 1) > slots) {
+            resize();
+
+            slot = slot(key, keyOffset, keyLength, hash);
+        }
+
+        if (record < 0)
+            size++;
+
+        record = append(key, keyOffset, keyLength, value, valueOffset, valueLength);
+
+        index.putInt(slot * SLOT_LENGTH, hash);
+        index.putInt(slot * SLOT_LENGTH + 4, record + 1);
+    }
+
+    @Override
+    public byte[] get(byte[] key, int keyOffset, int keyLength) {
+        int record = find(key, keyOffset, keyLength);
+        if (record < 0)
+            return null;
+
+        byte[] value = new byte[data.getInt(record + 8)];
+
+        dataView.clear().position(valueOffset(record));
+        dataView.get(value);
+
+        return value;
+    }
+
+    @Override
+    public int get(byte[] key, int keyOffset, int keyLength, ByteBuffer buffer) {
+        int record = find(key, keyOffset, keyLength);
+        if (record < 0)
+            return -1;
+
+        int valueLength = data.getInt(record + 8);
+        int valueOffset = valueOffset(record);
+
+        dataView.clear().position(valueOffset).limit(valueOffset + valueLength);
+
+        buffer.put(dataView);
+
+        return valueLength;
+    }
+
+    @Override
+    public int valueLength(byte[] key, int keyOffset, int keyLength) {
+        int record = find(key, keyOffset, keyLength);
+        if (record < 0)
+            return -1;
+
+        return data.getInt(record + 8);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void entries(EntryVisitor visitor) {
+        ByteBuffer key   = data.duplicate();
+        ByteBuffer value = data.duplicate();
+
+        for (int slot = 0; slot < slots; slot++) {
+            int record = record(slot);
+            if (record < 0)
+                continue;
+
+            int keyOffset   = record + RECORD_HEADER_LENGTH;
+            int valueOffset = valueOffset(record);
+
+            key.clear();
+            key.position(keyOffset).limit(keyOffset + data.getInt(record));
+
+            value.clear();
+            value.position(valueOffset).limit(valueOffset + data.getInt(record + 8));
+
+            visitor.entry(key, value);
+        }
+    }
+
+    private int find(byte[] key, int keyOffset, int keyLength) {
+        return record(slot(key, keyOffset, keyLength, hash(key, keyOffset, keyLength)));
+    }
+
+    /*
+     * Return the slot that holds the key, or the empty slot where it would
+     * be inserted.
+     */
+    private int slot(byte[] key, int keyOffset, int keyLength, int hash) {
+        int mask = slots - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int record = record(slot);
+            if (record < 0)
+                return slot;
+
+            if (index.getInt(slot * SLOT_LENGTH) == hash && keyEquals(record, key, keyOffset, keyLength))
+                return slot;
+        }
+    }
+
+    private int record(int slot) {
+        return index.getInt(slot * SLOT_LENGTH + 4) - 1;
+    }
+
+    private boolean keyEquals(int record, byte[] key, int keyOffset, int keyLength) {
+        if (data.getInt(record) != keyLength)
+            return false;
+
+        int offset = record + RECORD_HEADER_LENGTH;
+
+        for (int i = 0; i < keyLength; i++) {
+            if (data.get(offset + i) != key[keyOffset + i])
+                return false;
+        }
+
+        return true;
+    }
+
+    private int valueOffset(int record) {
+        return record + RECORD_HEADER_LENGTH + data.getInt(record);
+    }
+
+    private int append(byte[] key, int keyOffset, int keyLength, byte[] value, int valueOffset, int valueLength) {
+        int recordLength = RECORD_HEADER_LENGTH + keyLength + valueLength;
+
+        if (data.capacity() - dataLength < recordLength)
+            grow(recordLength);
+
+        int record = dataLength;
+
+        data.putInt(record, keyLength);
+        data.putInt(record + 4, valueLength);
+        data.putInt(record + 8, valueLength);
+
+        write(record + RECORD_HEADER_LENGTH, key, keyOffset, keyLength);
+        write(record + RECORD_HEADER_LENGTH + keyLength, value, valueOffset, valueLength);
+
+        dataLength += recordLength;
+
+        return record;
+    }
+
+    private void write(int offset, byte[] bytes, int bytesOffset, int length) {
+        dataView.clear().position(offset);
+        dataView.put(bytes, bytesOffset, length);
+    }
+
+    /*
+     * Copy the live records to a new data buffer, dropping superseded
+     * records and unused value capacity on the way.
+     */
+    private void grow(int recordLength) {
+        long live = 0;
+
+        for (int slot = 0; slot < slots; slot++) {
+            int record = record(slot);
+            if (record >= 0)
+                live += RECORD_HEADER_LENGTH + data.getInt(record) + data.getInt(record + 8);
+        }
+
+        long capacity = Math.max(2L * data.capacity(), 2 * (live + recordLength));
+        if (live + recordLength > Integer.MAX_VALUE)
+            throw new IllegalStateException("Off-heap store is full");
+
+        ByteBuffer newData     = ByteBuffer.allocateDirect((int) Math.min(capacity, Integer.MAX_VALUE));
+        ByteBuffer newDataView = newData.duplicate();
+
+        int newDataLength = 0;
+
+        for (int slot = 0; slot < slots; slot++) {
+            int record = record(slot);
+            if (record < 0)
+                continue;
+
+            int keyLength   = data.getInt(record);
+            int valueLength = data.getInt(record + 8);
+
+            newData.putInt(newDataLength, keyLength);
+            newData.putInt(newDataLength + 4, valueLength);
+            newData.putInt(newDataLength + 8, valueLength);
+
+            dataView.clear().position(record + RECORD_HEADER_LENGTH).limit(record + RECORD_HEADER_LENGTH + keyLength);
+            newDataView.clear().position(newDataLength + RECORD_HEADER_LENGTH);
+            newDataView.put(dataView);
+
+            dataView.clear().position(valueOffset(record)).limit(valueOffset(record) + valueLength);
+            newDataView.put(dataView);
+
+            index.putInt(slot * SLOT_LENGTH + 4, newDataLength + 1);
+
+            newDataLength += RECORD_HEADER_LENGTH + keyLength + valueLength;
+        }
+
+        data       = newData;
+        dataView   = newDataView;
+        dataLength = newDataLength;
+    }
+
+    private void resize() {
+        ByteBuffer oldIndex = index;
+        int        oldSlots = slots;
+
+        slots = 2 * oldSlots;
+        index = ByteBuffer.allocateDirect(slots * SLOT_LENGTH);
+
+        int mask = slots - 1;
+
+        for (int oldSlot = 0; oldSlot < oldSlots; oldSlot++) {
+            int hash   = oldIndex.getInt(oldSlot * SLOT_LENGTH);
+            int record = oldIndex.getInt(oldSlot * SLOT_LENGTH + 4);
+            if (record == 0)
+                continue;
+
+            int slot = hash & mask;
+            while (index.getInt(slot * SLOT_LENGTH + 4) != 0)
+                slot = (slot + 1) & mask;
+
+            index.putInt(slot * SLOT_LENGTH, hash);
+            index.putInt(slot * SLOT_LENGTH + 4, record);
+        }
+    }
+
+    private static int slots(int keys) {
+        int slots = 16;
+
+        while (slots < 2 * keys)
+            slots *= 2;
+
+        return slots;
+    }
+
+    static int hash(byte[] key, int offset, int length) {
+        int hash = 1;
+
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + key[offset + i];
+
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+
+        return hash;
+    }
+}
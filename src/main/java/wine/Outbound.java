@@ -0,0 +1,259 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The outbound side of a server connection.
+ *
+ * Messages are formatted straight into a reusable direct buffer, which is
+ * written once per batch with {@link #flush()} or whenever it fills up.
+ * Values too large for the buffer are written with a gathering write from
+ * their own arrays instead of being copied.
+ *
+ * If the socket does not take everything, the rest is kept in order and
+ * written by later flushes. Only use an outbound from one thread.
+ */
+class Outbound {
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final SocketChannel channel;
+
+    /*
+     * Pending bytes are those in the backlog, in order, followed by those
+     * in the buffer.
+     */
+    private final ByteBuffer        buffer;
+    private final Deque<ByteBuffer> backlog = new ArrayDeque<ByteBuffer>();
+
+    private ByteBuffer[] sources = new ByteBuffer[0];
+
+    /*
+     * The bytes remaining in the backlog, and the messages sent since
+     * nothing was last pending.
+     */
+    private long backlogBytes;
+    private int  messages;
+
+    public Outbound(SocketChannel channel) {
+        this(channel, DEFAULT_CAPACITY);
+    }
+
+    public Outbound(SocketChannel channel, int capacity) {
+        this.channel = channel;
+        this.buffer  = ByteBuffer.allocateDirect(capacity);
+    }
+
+    public void send(Message message) throws IOException {
+        queue(message);
+
+        messages++;
+    }
+
+    public void send(byte[] message) throws IOException {
+        append(message);
+
+        messages++;
+    }
+
+    /**
+     * Write as much of the pending bytes as the socket takes. Return true
+     * if nothing is left pending.
+     */
+    public boolean flush() throws IOException {
+        boolean empty = write();
+
+        if (empty)
+            messages = 0;
+
+        return empty;
+    }
+
+    /**
+     * Return true if nothing is pending.
+     */
+    public boolean isEmpty() {
+        return backlog.isEmpty() && buffer.position() == 0;
+    }
+
+    /**
+     * Return the number of bytes pending.
+     */
+    public long pendingBytes() {
+        return backlogBytes + buffer.position();
+    }
+
+    /**
+     * Return the number of messages sent since nothing was last pending.
+     * Some of them may have been written in part or in full already.
+     */
+    public int pendingMessages() {
+        return messages;
+    }
+
+    private void queue(Message message) throws IOException {
+        int length = message.length();
+
+        if (length > buffer.remaining())
+            flush();
+
+        if (length <= buffer.remaining()) {
+            message.format(buffer);
+            return;
+        }
+
+        if (message instanceof KeyValueMessage && isEmpty())
+            sendLarge((KeyValueMessage) message);
+        else
+            append(message.format());
+    }
+
+    private void append(byte[] message) throws IOException {
+        if (message.length > buffer.remaining())
+            flush();
+
+        if (message.length <= buffer.remaining()) {
+            buffer.put(message);
+            return;
+        }
+
+        spill();
+
+        backlog.add(ByteBuffer.wrap(message));
+
+        backlogBytes += message.length;
+
+        flush();
+    }
+
+    private boolean write() throws IOException {
+        if (backlog.isEmpty()) {
+            if (buffer.position() == 0)
+                return true;
+
+            buffer.flip();
+            channel.write(buffer);
+            buffer.compact();
+
+            return buffer.position() == 0;
+        }
+
+        buffer.flip();
+
+        int count = backlog.size() + 1;
+
+        if (sources.length < count)
+            sources = new ByteBuffer[count];
+
+        backlog.toArray(sources);
+        sources[count - 1] = buffer;
+
+        channel.write(sources, 0, count);
+
+        for (int i = 0; i < count; i++)
+            sources[i] = null;
+
+        while (!backlog.isEmpty() && !backlog.peek().hasRemaining())
+            backlog.remove();
+
+        buffer.compact();
+
+        countBacklog();
+
+        return isEmpty();
+    }
+
+    /*
+     * Write the header from the buffer and the value from its own array
+     * with a single gathering write.
+     */
+    private void sendLarge(KeyValueMessage message) throws IOException {
+        int headerLength = message.length() - message.valueLength();
+
+        if (headerLength > buffer.remaining()) {
+            send(message.format());
+            return;
+        }
+
+        message.formatHeader(buffer);
+
+        backlog.add(ByteBuffer.wrap(message.valueArray(), 0, message.valueLength()));
+
+        buffer.flip();
+
+        ByteBuffer value = backlog.peek();
+
+        if (sources.length < 2)
+            sources = new ByteBuffer[2];
+
+        sources[0] = buffer;
+        sources[1] = value;
+
+        channel.write(sources, 0, 2);
+
+        sources[0] = null;
+        sources[1] = null;
+
+        if (buffer.hasRemaining()) {
+            ByteBuffer header = ByteBuffer.allocate(buffer.remaining());
+
+            header.put(buffer);
+            header.flip();
+
+            backlog.addFirst(header);
+        }
+
+        buffer.clear();
+
+        if (!value.hasRemaining())
+            backlog.remove();
+
+        countBacklog();
+    }
+
+    /*
+     * Move the bytes in the buffer to the end of the backlog.
+     */
+    private void spill() {
+        if (buffer.position() == 0)
+            return;
+
+        buffer.flip();
+
+        ByteBuffer bytes = ByteBuffer.allocate(buffer.remaining());
+
+        bytes.put(buffer);
+        bytes.flip();
+
+        backlog.add(bytes);
+
+        backlogBytes += bytes.remaining();
+
+        buffer.clear();
+    }
+
+    private void countBacklog() {
+        backlogBytes = 0;
+
+        for (ByteBuffer bytes : backlog)
+            backlogBytes += bytes.remaining();
+    }
+}
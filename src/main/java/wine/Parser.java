@@ -21,10 +21,55 @@ import silvertip.MessageParser;
 import silvertip.PartialMessageException;
 
 public class Parser implements MessageParser<Message> {
+    private final MessagePool pool;
 
+    private Compression compression;
+
+    public Parser() {
+        this(null);
+    }
+
+    /**
+     * Create a parser that takes its messages from <code>pool</code>. Once
+     * a message has been handled, hand it back to the pool with {@link
+     * MessagePool#release(Message)} so that the next message of the same
+     * type is parsed into it.
+     */
+    public Parser(MessagePool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Compressed messages are inflated, so a parser must not be shared
+     * between connections that may send them.
+     */
     @Override
     public Message parse(ByteBuffer buffer) throws GarbledMessageException, PartialMessageException {
-        return AbstractMessage.from(buffer);
+        Message message = pool != null ? AbstractMessage.from(buffer, pool) : AbstractMessage.from(buffer);
+
+        if (message instanceof Compressed)
+            return decompress((Compressed) message);
+
+        if (message instanceof Tagged) {
+            Tagged tagged = (Tagged) message;
+
+            if (tagged.message() instanceof Compressed)
+                tagged.message(decompress((Compressed) tagged.message()));
+        }
+
+        return message;
+    }
+
+    private Message decompress(Compressed message) throws GarbledMessageException {
+        if (compression == null)
+            compression = new Compression();
+
+        try {
+            return compression.decompress(message);
+        } finally {
+            if (pool != null)
+                pool.release(message);
+        }
     }
 
 }
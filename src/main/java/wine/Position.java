@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The offset in a leader's log that the changes following it start from,
+ * and the leader's clock when it was sent. Leaders also send it while
+ * there are no changes, so that followers can tell how far behind they
+ * are.
+ */
+public class Position extends AbstractMessage {
+    private final LongField offset    = new LongField();
+    private final LongField timestamp = new LongField();
+
+    public Position() {
+        super(Type.POSITION);
+    }
+
+    public Position(long offset, long timestamp) {
+        this();
+
+        offset(offset);
+        timestamp(timestamp);
+    }
+
+    public void offset(long offset) {
+        this.offset.set(offset);
+    }
+
+    public long offset() {
+        return this.offset.get();
+    }
+
+    /**
+     * Set the time sent, in milliseconds since the epoch.
+     */
+    public void timestamp(long timestamp) {
+        this.timestamp.set(timestamp);
+    }
+
+    public long timestamp() {
+        return this.timestamp.get();
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        offset.parse(buffer);
+        timestamp.parse(buffer);
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        offset.format(buffer);
+        timestamp.format(buffer);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + offset.length() + timestamp.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        Position thatMessage = (Position) that;
+
+        return thatMessage.offset.equals(this.offset) && thatMessage.timestamp.equals(this.timestamp);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * super.hashCode() + offset.hashCode()) + timestamp.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(offset).append(',').append(timestamp);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+public class PositionView extends AbstractMessageView {
+
+    /**
+     * Return the offset in the leader's log. {@link #offset()} is the
+     * offset of the frame in the buffer.
+     */
+    public long position() {
+        return buffer.getLong(offset + 1);
+    }
+
+    public long timestamp() {
+        return buffer.getLong(offset + 9);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + 8 + 8;
+    }
+
+    @Override
+    public void accept(MessageViewVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public Position toMessage() {
+        return new Position(position(), timestamp());
+    }
+}
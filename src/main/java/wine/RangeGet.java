@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A request for the samples of a time series with timestamps from
+ * <code>from</code>, inclusive, to <code>to</code>, exclusive. The server
+ * answers with {@link Samples}; see {@link TimeSeries}.
+ */
+public class RangeGet extends AbstractMessage {
+    private final ByteField key  = new ByteField();
+    private final LongField from = new LongField();
+    private final LongField to   = new LongField();
+
+    public RangeGet() {
+        super(Type.RANGE_GET);
+    }
+
+    public RangeGet(byte[] key, long from, long to) {
+        this();
+
+        key(key);
+        from(from);
+        to(to);
+    }
+
+    public void key(byte[] key) {
+        this.key.set(key);
+    }
+
+    public byte[] key() {
+        return this.key.get();
+    }
+
+    /**
+     * Return the array backing the key. Only the first {@link #keyLength()}
+     * bytes are valid.
+     */
+    public byte[] keyArray() {
+        return this.key.array();
+    }
+
+    public int keyLength() {
+        return this.key.length();
+    }
+
+    public void from(long from) {
+        this.from.set(from);
+    }
+
+    public long from() {
+        return this.from.get();
+    }
+
+    public void to(long to) {
+        this.to.set(to);
+    }
+
+    public long to() {
+        return this.to.get();
+    }
+
+    @Override
+    void reusable() {
+        key.reusable(true);
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        key.lengthField().parse(buffer);
+        from.parse(buffer);
+        to.parse(buffer);
+        key.parse(buffer);
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        key.lengthField().format(buffer);
+        from.format(buffer);
+        to.format(buffer);
+        key.format(buffer);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + key.lengthField().length() + from.length() + to.length() + key.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        RangeGet thatMessage = (RangeGet) that;
+
+        return thatMessage.key.equals(this.key) && thatMessage.from.equals(this.from) && thatMessage.to.equals(this.to);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * super.hashCode() + key.hashCode()) + from.hashCode()) + to.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(key).append(',').append(from).append(',').append(to);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+public class RangeGetView extends AbstractMessageView {
+
+    public int keyLength() {
+        return buffer.getInt(offset + 1);
+    }
+
+    public long from() {
+        return buffer.getLong(offset + 5);
+    }
+
+    public long to() {
+        return buffer.getLong(offset + 13);
+    }
+
+    public int keyOffset() {
+        return offset + 21;
+    }
+
+    public boolean keyEquals(byte[] key) {
+        return bytesEqual(keyOffset(), keyLength(), key);
+    }
+
+    public void copyKey(byte[] dst, int dstOffset) {
+        copyBytes(keyOffset(), keyLength(), dst, dstOffset);
+    }
+
+    /**
+     * Note that this allocates a new array.
+     */
+    public byte[] key() {
+        return bytes(keyOffset(), keyLength());
+    }
+
+    @Override
+    public int length() {
+        return super.length() + 4 + 8 + 8 + keyLength();
+    }
+
+    @Override
+    public void accept(MessageViewVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public RangeGet toMessage() {
+        return new RangeGet(key(), from(), to());
+    }
+}
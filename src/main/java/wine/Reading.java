@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Value} reply read from an {@link Agent}. A number is kept as a
+ * long and formatted straight into the buffer as ASCII decimal digits, so
+ * a reply can be reused without allocating.
+ *
+ * Peers parse it as a Value, and visitors see it as one.
+ */
+class Reading extends AbstractMessage {
+    private byte[] key;
+    private long   number;
+    private byte[] value;
+
+    private int valueLength;
+
+    public Reading() {
+        super(Type.VALUE);
+    }
+
+    public void set(byte[] key, long number) {
+        this.key         = key;
+        this.number      = number;
+        this.value       = null;
+        this.valueLength = digits(number);
+    }
+
+    public void set(byte[] key, byte[] value) {
+        this.key         = key;
+        this.value       = value;
+        this.valueLength = value.length;
+    }
+
+    /**
+     * Visit a copy as a {@link Value}. Only sending avoids allocating.
+     */
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(new Value(key, value()));
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        buffer.putInt(key.length);
+        buffer.putInt(valueLength);
+        buffer.put(key);
+
+        if (value != null)
+            buffer.put(value);
+        else
+            format(number, valueLength, buffer);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + 4 + 4 + key.length + valueLength;
+    }
+
+    private byte[] value() {
+        if (value != null)
+            return value;
+
+        byte[] bytes = new byte[valueLength];
+
+        format(number, valueLength, ByteBuffer.wrap(bytes));
+
+        return bytes;
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(new String(key)).append(',');
+
+        if (value != null)
+            builder.append(new String(value));
+        else
+            builder.append(number);
+    }
+
+    /*
+     * Digits are produced from a negative number so that Long.MIN_VALUE
+     * needs no special case.
+     */
+    static int digits(long number) {
+        int digits = number < 0 ? 2 : 1;
+
+        for (long remaining = number < 0 ? number : -number; remaining <= -10; remaining /= 10)
+            digits++;
+
+        return digits;
+    }
+
+    static void format(long number, int digits, ByteBuffer buffer) {
+        int end = buffer.position() + digits;
+        int i   = end;
+
+        for (long remaining = number < 0 ? number : -number; ; remaining /= 10) {
+            buffer.put(--i, (byte) ('0' - remaining % 10));
+
+            if (remaining > -10)
+                break;
+        }
+
+        if (number < 0)
+            buffer.put(--i, (byte) '-');
+
+        buffer.position(end);
+    }
+}
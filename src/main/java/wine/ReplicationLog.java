@@ -0,0 +1,409 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A leader's ordered log of changes, streamed to its followers.
+ *
+ * Changes are numbered from zero in the order the leader applies them;
+ * handlers append to the log while holding its lock, together with
+ * applying the change to the store. The most recent changes are kept in
+ * memory. A follower that asks for an older offset, or has no copy yet,
+ * first gets a snapshot of the store.
+ *
+ * Each follower is served by a thread of its own, so that a slow follower
+ * does not hold up the leader. The thread only sends more while the session
+ * is ready for it. The store must be thread-safe, as the snapshot reads it
+ * while the handlers change it. The stream is:
+ *
+ * <ul>
+ *   <li>for a snapshot, a {@link Position} at {@link Follow#NONE}
+ *   followed by a {@link Set} for each entry in the store;</li>
+ *   <li>a {@link Position} at the offset the changes start from;</li>
+ *   <li>the changes, as {@link Set} and {@link MultiSet} messages, each
+ *   one offset further, with a {@link Position} whenever there has been
+ *   no position for a heartbeat interval.</li>
+ * </ul>
+ */
+class ReplicationLog {
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    public static final long HEARTBEAT_INTERVAL = 100;
+
+    private static final int BATCH_SIZE = 256;
+
+    /*
+     * Frames go to the session in batches of up to this many bytes.
+     */
+    private static final int BATCH_BYTES = 64 * 1024;
+
+    /*
+     * How long a sender waits before checking again whether the session
+     * has drained.
+     */
+    private static final long PACE_INTERVAL = 1;
+
+    private final ConfigStore store;
+    private final Stats       stats;
+
+    private final byte[][] frames;
+
+    private final Map<Handler.Session, Sender> senders = new HashMap<Handler.Session, Sender>();
+
+    /*
+     * The offset of the next change.
+     */
+    private long offset;
+
+    public ReplicationLog(ConfigStore store, Stats stats) {
+        this(store, stats, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a log that keeps the last <code>capacity</code> changes.
+     */
+    public ReplicationLog(ConfigStore store, Stats stats, int capacity) {
+        this.store  = store;
+        this.stats  = stats;
+        this.frames = new byte[capacity][];
+
+        stats.replicated(0);
+    }
+
+    /**
+     * Append a change that has just been applied to the store. Only invoke
+     * while holding the lock of the log since before applying it.
+     */
+    public synchronized void append(Message message) {
+        frames[index(offset)] = message.format();
+
+        offset++;
+
+        stats.replicated(offset);
+
+        notifyAll();
+    }
+
+    public synchronized long offset() {
+        return offset;
+    }
+
+    /**
+     * Return true if changes are being streamed to <code>session</code>.
+     */
+    public synchronized boolean following(Handler.Session session) {
+        return senders.containsKey(session);
+    }
+
+    /**
+     * Start streaming changes from <code>from</code> on to
+     * <code>session</code>, replacing any earlier stream to it.
+     */
+    public void follow(Handler.Session session, long from) {
+        Sender sender = new Sender(session, from);
+
+        Sender previous;
+
+        synchronized (this) {
+            previous = senders.put(session, sender);
+        }
+
+        if (previous != null)
+            previous.stop();
+
+        sender.start();
+    }
+
+    /**
+     * Stop streaming to a session that has gone away.
+     */
+    public void unfollow(Handler.Session session) {
+        Sender sender;
+
+        synchronized (this) {
+            sender = senders.remove(session);
+        }
+
+        if (sender != null)
+            sender.stop();
+    }
+
+    /**
+     * Stop streaming to every follower.
+     */
+    public void stop() {
+        List<Sender> stopped;
+
+        synchronized (this) {
+            stopped = new ArrayList<Sender>(senders.values());
+
+            senders.clear();
+        }
+
+        for (Sender sender : stopped)
+            sender.stop();
+    }
+
+    /*
+     * Wait up to <code>timeout</code> milliseconds for changes from
+     * <code>from</code> on and copy up to a batch of them. Return the
+     * number copied, or -1 if the log no longer has the change at
+     * <code>from</code>.
+     */
+    private synchronized int read(long from, byte[][] batch, long timeout) throws InterruptedException {
+        if (from == offset)
+            wait(timeout);
+
+        if (!contains(from))
+            return -1;
+
+        int count = (int) Math.min(offset - from, batch.length);
+
+        for (int i = 0; i < count; i++)
+            batch[i] = frames[index(from + i)];
+
+        return count;
+    }
+
+    private boolean contains(long from) {
+        return from >= 0 && from <= offset && offset - from <= frames.length;
+    }
+
+    private int index(long offset) {
+        return (int) (offset % frames.length);
+    }
+
+    private class Sender implements Runnable {
+        private final Handler.Session session;
+        private final long            from;
+
+        private final Thread thread;
+
+        /*
+         * Frames are sent to the session in batches.
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocate(BATCH_BYTES);
+
+        private volatile boolean stopped;
+
+        /*
+         * When the last position was sent.
+         */
+        private long positioned;
+
+        public Sender(Handler.Session session, long from) {
+            this.session = session;
+            this.from    = from;
+
+            this.thread = new Thread(this, "wine-replication");
+
+            thread.setDaemon(true);
+        }
+
+        public void start() {
+            thread.start();
+        }
+
+        public void stop() {
+            stopped = true;
+
+            thread.interrupt();
+        }
+
+        @Override
+        public void run() {
+            byte[][] batch = new byte[BATCH_SIZE][];
+
+            try {
+                long next = from;
+
+                boolean retained;
+
+                synchronized (ReplicationLog.this) {
+                    retained = contains(next);
+                }
+
+                if (!retained)
+                    next = snapshot();
+
+                position(next);
+
+                while (!stopped) {
+                    flush();
+
+                    int count = read(next, batch, HEARTBEAT_INTERVAL);
+
+                    if (count < 0) {
+                        next = snapshot();
+
+                        position(next);
+                        continue;
+                    }
+
+                    for (int i = 0; i < count; i++) {
+                        add(batch[i]);
+
+                        batch[i] = null;
+                    }
+
+                    next += count;
+
+                    if (System.currentTimeMillis() - positioned >= HEARTBEAT_INTERVAL)
+                        position(next);
+                }
+            } catch (InterruptedException e) {
+            }
+        }
+
+        /*
+         * The store is copied without holding the lock of the log, so it
+         * may already have some of the changes from the returned offset
+         * on. Applying them again after the copy leaves the follower with
+         * the same values as the leader.
+         *
+         * A striped store is copied a stripe at a time. Only the copy is
+         * sent, after the stripe's lock is released, as sending waits for
+         * the event loops and they may be waiting for the lock.
+         */
+        private long snapshot() throws InterruptedException {
+            long start;
+
+            synchronized (ReplicationLog.this) {
+                start = offset;
+            }
+
+            position(Follow.NONE);
+
+            ConfigStore store = ReplicationLog.this.store;
+
+            if (store instanceof IndexedConfigStore)
+                store = ((IndexedConfigStore) store).store();
+
+            if (store instanceof StripedConfigStore) {
+                StripedConfigStore striped = (StripedConfigStore) store;
+
+                for (int i = 0; i < striped.stripes(); i++) {
+                    Copy copy = new Copy();
+
+                    striped.entries(i, copy);
+
+                    copy.send();
+                }
+            } else {
+                Copy copy = new Copy();
+
+                store.entries(copy);
+
+                copy.send();
+            }
+
+            return start;
+        }
+
+        private void position(long offset) throws InterruptedException {
+            positioned = System.currentTimeMillis();
+
+            add(new Position(offset, positioned).format());
+        }
+
+        private void add(byte[] frame) throws InterruptedException {
+            if (frame.length > buffer.remaining())
+                flush();
+
+            if (frame.length > buffer.capacity())
+                send(frame);
+            else
+                buffer.put(frame);
+        }
+
+        private void flush() throws InterruptedException {
+            if (buffer.position() == 0)
+                return;
+
+            send(Arrays.copyOf(buffer.array(), buffer.position()));
+
+            buffer.clear();
+        }
+
+        /*
+         * Wait for the session to take more, so that a follower that falls
+         * behind does not have the leader buffer the whole stream for it.
+         */
+        private void send(byte[] frames) throws InterruptedException {
+            while (!session.ready()) {
+                if (stopped)
+                    throw new InterruptedException();
+
+                Thread.sleep(PACE_INTERVAL);
+            }
+
+            session.send(frames);
+        }
+
+        /*
+         * Entries of the store as Set frames, in batches.
+         */
+        private class Copy implements ConfigStore.EntryVisitor {
+            private final List<byte[]> batches = new ArrayList<byte[]>();
+
+            private final ByteBuffer batch = ByteBuffer.allocate(BATCH_BYTES);
+
+            @Override
+            public void entry(ByteBuffer key, ByteBuffer value) {
+                int length = 1 + 4 + 4 + key.remaining() + value.remaining();
+
+                if (length > batch.remaining())
+                    next();
+
+                ByteBuffer frame = length > batch.capacity() ? ByteBuffer.allocate(length) : batch;
+
+                frame.put(AbstractMessage.Type.SET);
+                frame.putInt(key.remaining());
+                frame.putInt(value.remaining());
+                frame.put(key);
+                frame.put(value);
+
+                if (frame != batch)
+                    batches.add(frame.array());
+            }
+
+            public void send() throws InterruptedException {
+                next();
+
+                flush();
+
+                for (byte[] frames : batches)
+                    Sender.this.send(frames);
+            }
+
+            private void next() {
+                if (batch.position() == 0)
+                    return;
+
+                batches.add(Arrays.copyOf(batch.array(), batch.position()));
+
+                batch.clear();
+            }
+        }
+    }
+}
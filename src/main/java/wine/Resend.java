@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link MulticastReceiver}'s request for the changes that a
+ * {@link MulticastPublisher} sent as datagrams <code>from</code>,
+ * inclusive, to <code>to</code>, exclusive. The server answers with a
+ * {@link MultiValue} of exactly those changes, in order, or an empty one
+ * if the publisher no longer has all of them.
+ */
+public class Resend extends AbstractMessage {
+    private final LongField session = new LongField();
+    private final LongField from    = new LongField();
+    private final LongField to      = new LongField();
+
+    public Resend() {
+        super(Type.RESEND);
+    }
+
+    public Resend(long session, long from, long to) {
+        this();
+
+        session(session);
+        from(from);
+        to(to);
+    }
+
+    public void session(long session) {
+        this.session.set(session);
+    }
+
+    public long session() {
+        return this.session.get();
+    }
+
+    public void from(long from) {
+        this.from.set(from);
+    }
+
+    public long from() {
+        return this.from.get();
+    }
+
+    public void to(long to) {
+        this.to.set(to);
+    }
+
+    public long to() {
+        return this.to.get();
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        session.parse(buffer);
+        from.parse(buffer);
+        to.parse(buffer);
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        session.format(buffer);
+        from.format(buffer);
+        to.format(buffer);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + session.length() + from.length() + to.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        Resend thatMessage = (Resend) that;
+
+        return thatMessage.session.equals(this.session) && thatMessage.from.equals(this.from) && thatMessage.to.equals(this.to);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * super.hashCode() + session.hashCode()) + from.hashCode()) + to.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(session).append(',').append(from).append(',').append(to);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The samples of a time series, oldest first, in reply to a {@link
+ * RangeGet}. Timestamps and values are kept in primitive arrays that are
+ * reused when the message is.
+ */
+public class Samples extends AbstractMessage {
+    private final ByteField key = new ByteField();
+
+    private long[] timestamps = new long[0];
+    private long[] values     = new long[0];
+
+    private int size;
+
+    public Samples() {
+        super(Type.SAMPLES);
+    }
+
+    public Samples(byte[] key) {
+        this();
+
+        key(key);
+    }
+
+    public void key(byte[] key) {
+        this.key.set(key);
+    }
+
+    void key(byte[] key, int length) {
+        this.key.set(key, length);
+    }
+
+    public byte[] key() {
+        return this.key.get();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long timestamp(int index) {
+        return timestamps[index];
+    }
+
+    public long value(int index) {
+        return values[index];
+    }
+
+    public void add(long timestamp, long value) {
+        ensureCapacity(size + 1);
+
+        timestamps[size] = timestamp;
+        values[size]     = value;
+
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Append <code>count</code> samples from the arrays of a series.
+     */
+    void add(long[] timestamps, long[] values, int offset, int count) {
+        ensureCapacity(size + count);
+
+        System.arraycopy(timestamps, offset, this.timestamps, size, count);
+        System.arraycopy(values, offset, this.values, size, count);
+
+        size += count;
+    }
+
+    @Override
+    void reusable() {
+        key.reusable(true);
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        key.lengthField().parse(buffer);
+
+        int count = buffer.getInt();
+
+        key.parse(buffer);
+
+        clear();
+        ensureCapacity(count);
+
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = buffer.getLong();
+            values[i]     = buffer.getLong();
+        }
+
+        size = count;
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        key.lengthField().format(buffer);
+
+        buffer.putInt(size);
+
+        key.format(buffer);
+
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(timestamps[i]);
+            buffer.putLong(values[i]);
+        }
+    }
+
+    @Override
+    public int length() {
+        return super.length() + key.lengthField().length() + 4 + key.length() + 16 * size;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        Samples thatMessage = (Samples) that;
+
+        if (!thatMessage.key.equals(this.key) || thatMessage.size != this.size)
+            return false;
+
+        for (int i = 0; i < size; i++) {
+            if (thatMessage.timestamps[i] != this.timestamps[i] || thatMessage.values[i] != this.values[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 31 * super.hashCode() + key.hashCode();
+
+        for (int i = 0; i < size; i++)
+            hashCode = 31 * (31 * hashCode + (int) timestamps[i]) + (int) values[i];
+
+        return hashCode;
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(key);
+
+        for (int i = 0; i < size; i++)
+            builder.append(',').append(timestamps[i]).append('=').append(values[i]);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= timestamps.length)
+            return;
+
+        int length = Math.max(capacity, 2 * timestamps.length);
+
+        timestamps = Arrays.copyOf(timestamps, length);
+        values     = Arrays.copyOf(values, length);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A request for the keys that start with a prefix, in the order of their
+ * unsigned bytes, optionally together with their values.
+ *
+ * The server answers with a {@link MultiValue} of at most
+ * <code>limit</code> entries, and fewer if the reply would grow too large.
+ * To get the next page, scan again with <code>after</code> set to the last
+ * key of the page. An empty page ends the scan.
+ */
+public class Scan extends AbstractMessage {
+    private final FlagField values = new FlagField();
+    private final IntField  limit  = new IntField();
+    private final ByteField prefix = new ByteField();
+    private final ByteField after  = new ByteField();
+
+    public Scan() {
+        super(Type.SCAN);
+    }
+
+    public Scan(byte[] prefix, byte[] after, int limit, boolean values) {
+        this();
+
+        prefix(prefix);
+        after(after);
+        limit(limit);
+        values(values);
+    }
+
+    public void prefix(byte[] prefix) {
+        this.prefix.set(prefix);
+    }
+
+    public byte[] prefix() {
+        return this.prefix.get();
+    }
+
+    /**
+     * Start after <code>after</code>. An empty key starts from the first
+     * key with the prefix.
+     */
+    public void after(byte[] after) {
+        this.after.set(after);
+    }
+
+    public byte[] after() {
+        return this.after.get();
+    }
+
+    public void limit(int limit) {
+        this.limit.set(limit);
+    }
+
+    public int limit() {
+        return this.limit.get();
+    }
+
+    /**
+     * Ask for the values, too. Without them, the values in the reply are
+     * empty.
+     */
+    public void values(boolean values) {
+        this.values.set(values);
+    }
+
+    public boolean values() {
+        return this.values.get();
+    }
+
+    @Override
+    void reusable() {
+        prefix.reusable(true);
+        after.reusable(true);
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        values.parse(buffer);
+        limit.parse(buffer);
+        prefix.lengthField().parse(buffer);
+        after.lengthField().parse(buffer);
+        prefix.parse(buffer);
+        after.parse(buffer);
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        values.format(buffer);
+        limit.format(buffer);
+        prefix.lengthField().format(buffer);
+        after.lengthField().format(buffer);
+        prefix.format(buffer);
+        after.format(buffer);
+    }
+
+    @Override
+    public int length() {
+        return super.length()
+            + values.length()
+            + limit.length()
+            + prefix.lengthField().length()
+            + after.lengthField().length()
+            + prefix.length()
+            + after.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        Scan thatMessage = (Scan) that;
+
+        return thatMessage.values.equals(this.values)
+            && thatMessage.limit.equals(this.limit)
+            && thatMessage.prefix.equals(this.prefix)
+            && thatMessage.after.equals(this.after);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * (31 * super.hashCode() + values.hashCode()) + limit.hashCode()) + prefix.hashCode()) + after.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(prefix).append(',').append(after).append(',').append(limit).append(',').append(values);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+public class ScanView extends AbstractMessageView {
+
+    public boolean values() {
+        return buffer.get(offset + 1) != 0;
+    }
+
+    public int limit() {
+        return buffer.getInt(offset + 2);
+    }
+
+    public int prefixLength() {
+        return buffer.getInt(offset + 6);
+    }
+
+    public int afterLength() {
+        return buffer.getInt(offset + 10);
+    }
+
+    public int prefixOffset() {
+        return offset + 14;
+    }
+
+    public int afterOffset() {
+        return prefixOffset() + prefixLength();
+    }
+
+    public boolean prefixEquals(byte[] prefix) {
+        return bytesEqual(prefixOffset(), prefixLength(), prefix);
+    }
+
+    /**
+     * Note that this allocates a new array.
+     */
+    public byte[] prefix() {
+        return bytes(prefixOffset(), prefixLength());
+    }
+
+    /**
+     * Note that this allocates a new array.
+     */
+    public byte[] after() {
+        return bytes(afterOffset(), afterLength());
+    }
+
+    @Override
+    public int length() {
+        return super.length() + 1 + 4 + 4 + 4 + prefixLength() + afterLength();
+    }
+
+    @Override
+    public void accept(MessageViewVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public Scan toMessage() {
+        return new Scan(prefix(), after(), limit(), values());
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Server metrics, readable with ordinary {@link Get} requests on keys in
+ * the reserved <code>wine.stats.</code> namespace. Values are decimal
+ * numbers in ASCII; durations are in nanoseconds.
+ *
+ * All counters are atomic and may be updated from any thread without
+ * locking. A server's connections share one instance.
+ */
+public class Stats {
+    /**
+     * The prefix of the reserved keys. Writes to these keys are ignored.
+     */
+    public static final String PREFIX = "wine.stats.";
+
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    private static final byte[] PREFIX_BYTES = PREFIX.getBytes(CHARSET);
+
+    private static final double[] PERCENTILES      = { 0.5, 0.9, 0.99, 0.999 };
+    private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+
+    private static final Map<String, byte[]> MESSAGE_TYPES = messageTypes();
+
+    private final AtomicLongArray messages = new AtomicLongArray(128);
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong bytesIn     = new AtomicLong();
+    private final AtomicLong bytesOut    = new AtomicLong();
+    private final AtomicLong garbled     = new AtomicLong();
+    private final AtomicLong failures    = new AtomicLong();
+
+    private final AtomicLong pauses      = new AtomicLong();
+    private final AtomicLong coalesced   = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+
+    private final AtomicLong replicationOffset = new AtomicLong(-1);
+    private final AtomicLong positionTime      = new AtomicLong(-1);
+
+    private final Histogram getTimes = new Histogram();
+    private final Histogram setTimes = new Histogram();
+
+    /**
+     * Return true if <code>key</code> is in the reserved namespace.
+     */
+    public static boolean isReserved(byte[] key) {
+        if (key.length < PREFIX_BYTES.length)
+            return false;
+
+        for (int i = 0; i < PREFIX_BYTES.length; i++) {
+            if (key[i] != PREFIX_BYTES[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Return the value of the reserved key <code>key</code>, or null if
+     * there is no such metric.
+     */
+    public byte[] get(byte[] key) {
+        if (!isReserved(key))
+            return null;
+
+        Long value = value(new String(key, PREFIX_BYTES.length, key.length - PREFIX_BYTES.length, CHARSET));
+
+        return value != null ? value.toString().getBytes(CHARSET) : null;
+    }
+
+    public void connected() {
+        connections.incrementAndGet();
+    }
+
+    public void disconnected() {
+        connections.decrementAndGet();
+    }
+
+    public void received(int bytes) {
+        bytesIn.addAndGet(bytes);
+    }
+
+    public void sent(int bytes) {
+        bytesOut.addAndGet(bytes);
+    }
+
+    public void garbled() {
+        garbled.incrementAndGet();
+    }
+
+    /**
+     * Count a request or a task that failed with an unexpected exception.
+     */
+    public void failed() {
+        failures.incrementAndGet();
+    }
+
+    /**
+     * Count a connection paused for being over its outbound limits; see
+     * {@link Backpressure}.
+     */
+    public void paused() {
+        pauses.incrementAndGet();
+    }
+
+    /**
+     * Count an update dropped in favour of a later one for the same key.
+     */
+    public void coalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    /**
+     * Count a connection closed for being over its outbound limits.
+     */
+    public void overflowed() {
+        disconnects.incrementAndGet();
+    }
+
+    /**
+     * Record the offset a leader has reached in its log, or a follower in
+     * its leader's.
+     */
+    public void replicated(long offset) {
+        replicationOffset.set(offset);
+    }
+
+    /**
+     * Record that a follower has reached a {@link Position} the leader sent
+     * at <code>timestamp</code>.
+     */
+    public void positioned(long timestamp) {
+        positionTime.set(timestamp);
+    }
+
+    public void handled(Message message) {
+        if (message instanceof AbstractMessage)
+            messages.incrementAndGet(((AbstractMessage) message).messageType() & 0x7f);
+    }
+
+    public void get(long nanos) {
+        getTimes.record(nanos);
+    }
+
+    public void set(long nanos) {
+        setTimes.record(nanos);
+    }
+
+    public long connections() {
+        return connections.get();
+    }
+
+    public long bytesIn() {
+        return bytesIn.get();
+    }
+
+    public long bytesOut() {
+        return bytesOut.get();
+    }
+
+    public long garbledMessages() {
+        return garbled.get();
+    }
+
+    public long failures() {
+        return failures.get();
+    }
+
+    public long pauses() {
+        return pauses.get();
+    }
+
+    public long coalescedUpdates() {
+        return coalesced.get();
+    }
+
+    public long overflowDisconnects() {
+        return disconnects.get();
+    }
+
+    /**
+     * Return the replication offset, or -1 on a server that neither leads
+     * nor follows.
+     */
+    public long replicationOffset() {
+        return replicationOffset.get();
+    }
+
+    /**
+     * Return the milliseconds since the leader sent the last position a
+     * follower has reached, or -1 on a server that does not follow. Since
+     * leaders send their position periodically, a follower that keeps up
+     * stays under that period.
+     */
+    public long replicationLag() {
+        long timestamp = positionTime.get();
+        if (timestamp < 0)
+            return -1;
+
+        return Math.max(System.currentTimeMillis() - timestamp, 0);
+    }
+
+    /**
+     * Return the number of messages handled of type <code>name</code>, such
+     * as "get"; see {@link #names()}.
+     */
+    public long messages(String name) {
+        byte[] types = MESSAGE_TYPES.get(name);
+        if (types == null)
+            return 0;
+
+        long count = 0;
+
+        for (byte type : types)
+            count += messages.get(type);
+
+        return count;
+    }
+
+    /**
+     * Return the service times of {@link Get} requests.
+     */
+    public Histogram getTimes() {
+        return getTimes;
+    }
+
+    /**
+     * Return the service times of {@link Set} requests.
+     */
+    public Histogram setTimes() {
+        return setTimes;
+    }
+
+    private Long value(String name) {
+        if (name.equals("connections"))
+            return connections();
+        if (name.equals("bytes.in"))
+            return bytesIn();
+        if (name.equals("bytes.out"))
+            return bytesOut();
+        if (name.equals("garbled"))
+            return garbledMessages();
+        if (name.equals("failures"))
+            return failures();
+        if (name.equals("backpressure.pauses"))
+            return pauses();
+        if (name.equals("backpressure.coalesced"))
+            return coalescedUpdates();
+        if (name.equals("backpressure.disconnects"))
+            return overflowDisconnects();
+        if (name.equals("replication.offset") && replicationOffset() >= 0)
+            return replicationOffset();
+        if (name.equals("replication.lag") && replicationLag() >= 0)
+            return replicationLag();
+
+        if (name.startsWith("messages.") && MESSAGE_TYPES.containsKey(name.substring(9)))
+            return messages(name.substring(9));
+
+        if (name.startsWith("get."))
+            return value(getTimes, name.substring(4));
+        if (name.startsWith("set."))
+            return value(setTimes, name.substring(4));
+
+        return null;
+    }
+
+    private static Long value(Histogram histogram, String name) {
+        if (name.equals("count"))
+            return histogram.count();
+        if (name.equals("max"))
+            return histogram.max();
+
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            if (name.equals(PERCENTILE_NAMES[i]))
+                return histogram.percentile(PERCENTILES[i]);
+        }
+
+        return null;
+    }
+
+    private static Map<String, byte[]> messageTypes() {
+        Map<String, byte[]> types = new LinkedHashMap<String, byte[]>();
+
+        types.put("login",       new byte[] { AbstractMessage.Type.LOGIN, AbstractMessage.Type.LOGIN_FEATURES });
+        types.put("get",         new byte[] { AbstractMessage.Type.GET });
+        types.put("set",         new byte[] { AbstractMessage.Type.SET });
+        types.put("multi-get",   new byte[] { AbstractMessage.Type.MULTI_GET });
+        types.put("multi-set",   new byte[] { AbstractMessage.Type.MULTI_SET });
+        types.put("watch",       new byte[] { AbstractMessage.Type.WATCH });
+        types.put("unwatch",     new byte[] { AbstractMessage.Type.UNWATCH });
+        types.put("chunked-get", new byte[] { AbstractMessage.Type.CHUNKED_GET });
+        types.put("set-chunk",   new byte[] { AbstractMessage.Type.SET_CHUNK });
+        types.put("range-get",   new byte[] { AbstractMessage.Type.RANGE_GET });
+        types.put("scan",        new byte[] { AbstractMessage.Type.SCAN });
+        types.put("define-key",  new byte[] { AbstractMessage.Type.DEFINE_KEY });
+        types.put("id-get",      new byte[] { AbstractMessage.Type.ID_GET });
+        types.put("id-set",      new byte[] { AbstractMessage.Type.ID_SET });
+        types.put("tagged",      new byte[] { AbstractMessage.Type.TAGGED });
+        types.put("follow",      new byte[] { AbstractMessage.Type.FOLLOW });
+
+        return types;
+    }
+}
@@ -17,26 +17,63 @@ package wine;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.Arrays;
 
+/**
+ * A fixed-length, space-padded ASCII string.
+ *
+ * A parsed value is kept as bytes and only turned into a {@link String} when
+ * asked for. If it equals the previous value, that string is kept, so a
+ * reused field parsing the same value over and over does not allocate.
+ */
 class StringField extends AbstractField {
     private static final Charset CHARSET = Charset.forName("US-ASCII");
 
+    private static final byte PADDING = ' ';
+
     private final int length;
 
+    /*
+     * The value as a string, or null if it has been parsed and not asked
+     * for since.
+     */
     private String value = "";
 
+    /*
+     * If parsed, the value is bytes[start, end) with the surrounding
+     * whitespace trimmed.
+     */
+    private final byte[] bytes;
+
+    private int     start;
+    private int     end;
+    private boolean parsed;
+
     public StringField(int length) {
         this.length = length;
-        this.value  = "";
+        this.bytes  = new byte[length];
     }
 
     public String get() {
+        if (value == null)
+            value = new String(bytes, start, end - start, CHARSET);
+
         return value;
     }
 
     public void set(String value) {
-        this.value = value;
+        this.value  = value;
+        this.parsed = false;
+    }
+
+    /**
+     * Return true if the value equals <code>string</code>, without building
+     * a string out of a parsed value.
+     */
+    public boolean contentEquals(String string) {
+        if (!parsed)
+            return value.equals(string);
+
+        return asciiEquals(bytes, start, end, string);
     }
 
     @Override
@@ -46,30 +83,97 @@ class StringField extends AbstractField {
 
     @Override
     public void format(ByteBuffer buffer) {
-        byte[] valueBytes  = value.getBytes(CHARSET);
+        int count;
 
-        buffer.put(valueBytes, 0, Math.min(valueBytes.length, length));
+        if (parsed) {
+            count = end - start;
 
-        if (valueBytes.length < length) {
-            byte[] paddingBytes = new byte[length - valueBytes.length];
+            buffer.put(bytes, start, count);
+        } else if (isAscii(value)) {
+            count = Math.min(value.length(), length);
 
-            Arrays.fill(paddingBytes, (byte) ' ');
+            for (int i = 0; i < count; i++)
+                buffer.put((byte) value.charAt(i));
+        } else {
+            byte[] valueBytes = value.getBytes(CHARSET);
 
-            buffer.put(paddingBytes);
+            count = Math.min(valueBytes.length, length);
+
+            buffer.put(valueBytes, 0, count);
         }
+
+        for (int i = count; i < length; i++)
+            buffer.put(PADDING);
     }
 
     @Override
     public void parse(ByteBuffer buffer) {
-        byte[] bytes = new byte[length];
-
         buffer.get(bytes);
 
-        value = new String(bytes, CHARSET).trim();
+        start = 0;
+        end   = length;
+
+        while (start < end && (bytes[start] & 0xff) <= ' ')
+            start++;
+
+        while (end > start && (bytes[end - 1] & 0xff) <= ' ')
+            end--;
+
+        if (value != null && !asciiEquals(bytes, start, end, value))
+            value = null;
+
+        parsed = true;
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (that == null)
+            return false;
+
+        if (that == this)
+            return true;
+
+        if (that.getClass() != this.getClass())
+            return false;
+
+        StringField thatField = (StringField) that;
+
+        return thatField.length == this.length && thatField.get().equals(this.get());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * length + get().hashCode();
     }
 
     @Override
     public String toString() {
-        return value;
+        return get();
+    }
+
+    /**
+     * Return true if the ASCII bytes <code>bytes[start, end)</code> spell
+     * out <code>string</code>.
+     */
+    static boolean asciiEquals(byte[] bytes, int start, int end, String string) {
+        if (string.length() != end - start)
+            return false;
+
+        for (int i = start; i < end; i++) {
+            int b = bytes[i];
+            if (b < 0 || b != string.charAt(i - start))
+                return false;
+        }
+
+        return true;
+    }
+
+    private static boolean isAscii(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) >= 0x80)
+                return false;
+        }
+
+        return true;
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A thread-safe configuration store that partitions keys by hash over a
+ * number of stripes, each of which is a store of its own guarded by a lock
+ * of its own.
+ */
+public class StripedConfigStore implements ConfigStore {
+    public interface Factory {
+        ConfigStore create();
+    }
+
+    private final ConfigStore[] stripes;
+
+    public StripedConfigStore(int stripes, Factory factory) {
+        this.stripes = new ConfigStore[stripes];
+
+        for (int i = 0; i < stripes; i++)
+            this.stripes[i] = factory.create();
+    }
+
+    @Override
+    public void put(byte[] key, int keyOffset, int keyLength, byte[] value, int valueOffset, int valueLength) {
+        ConfigStore stripe = stripe(key, keyOffset, keyLength);
+
+        synchronized (stripe) {
+            stripe.put(key, keyOffset, keyLength, value, valueOffset, valueLength);
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key, int keyOffset, int keyLength) {
+        ConfigStore stripe = stripe(key, keyOffset, keyLength);
+
+        synchronized (stripe) {
+            return stripe.get(key, keyOffset, keyLength);
+        }
+    }
+
+    @Override
+    public int get(byte[] key, int keyOffset, int keyLength, ByteBuffer buffer) {
+        ConfigStore stripe = stripe(key, keyOffset, keyLength);
+
+        synchronized (stripe) {
+            return stripe.get(key, keyOffset, keyLength, buffer);
+        }
+    }
+
+    @Override
+    public int valueLength(byte[] key, int keyOffset, int keyLength) {
+        ConfigStore stripe = stripe(key, keyOffset, keyLength);
+
+        synchronized (stripe) {
+            return stripe.valueLength(key, keyOffset, keyLength);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+
+        for (ConfigStore stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Visit the stripes one at a time. Each stripe is locked while it is
+     * being visited.
+     */
+    @Override
+    public void entries(EntryVisitor visitor) {
+        for (int i = 0; i < stripes.length; i++)
+            entries(i, visitor);
+    }
+
+    public int stripes() {
+        return stripes.length;
+    }
+
+    /**
+     * Visit the entries of stripe <code>stripe</code>, holding only its
+     * lock.
+     */
+    public void entries(int stripe, EntryVisitor visitor) {
+        synchronized (stripes[stripe]) {
+            stripes[stripe].entries(visitor);
+        }
+    }
+
+    private ConfigStore stripe(byte[] key, int keyOffset, int keyLength) {
+        int hash = OffHeapConfigStore.hash(key, keyOffset, keyLength);
+
+        /*
+         * An off-heap stripe indexes keys by the low bits of the same hash,
+         * so pick the stripe by the high bits.
+         */
+        return stripes[(Integer.reverse(hash) & 0x7fffffff) % stripes.length];
+    }
+}
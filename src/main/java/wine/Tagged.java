@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A request or a reply carrying a request ID. A client that has negotiated
+ * {@link Features#REQUEST_IDS} may wrap its requests in tagged messages;
+ * the server wraps each reply in a tagged message with the ID of the
+ * request it answers, so replies need not arrive in request order.
+ *
+ * Tagged messages do not nest.
+ */
+public class Tagged extends AbstractMessage {
+    private final IntField id = new IntField();
+
+    private Message message;
+
+    public Tagged() {
+        super(Type.TAGGED);
+    }
+
+    public Tagged(int id, Message message) {
+        this();
+
+        set(id, message);
+    }
+
+    public void set(int id, Message message) {
+        this.id.set(id);
+        this.message = message;
+    }
+
+    public int id() {
+        return id.get();
+    }
+
+    public Message message() {
+        return message;
+    }
+
+    void message(Message message) {
+        this.message = message;
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    /**
+     * Parse the request ID. The wrapped message is parsed separately, see
+     * {@link AbstractMessage#from(ByteBuffer)}.
+     */
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        id.parse(buffer);
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        id.format(buffer);
+
+        message.format(buffer);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + id.length() + message.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        Tagged thatMessage = (Tagged) that;
+
+        return thatMessage.id.equals(this.id) && thatMessage.message.equals(this.message);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * super.hashCode() + id.hashCode()) + message.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(id).append(',').append(message);
+    }
+}
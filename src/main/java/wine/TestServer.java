@@ -15,159 +15,861 @@
  */
 package wine;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import silvertip.Connection;
-import silvertip.Events;
-import silvertip.Server;
+import silvertip.GarbledMessageException;
+import silvertip.MessageParser;
+import silvertip.PartialMessageException;
 
 public class TestServer {
+    private static final long POLL_TIMEOUT = 10;
+
+    /*
+     * A streamed value is sent once a connection has less than this many
+     * bytes waiting to be sent.
+     */
+    private static final int STREAM_WINDOW = 16 * Handler.CHUNK_SIZE;
+
+    private final ServerSocketChannel serverChannel;
+
+    private final EventLoop[] loops;
+    private final Callback[]  callbacks;
+    private final Handler[]   handlers;
+
+    private final ConfigStore config;
+
+    /*
+     * Applies the changes streamed from the leader when following.
+     */
+    private final Handler replica;
+
+    private ReplicationLog log;
+    private Follower       follower;
+
+    private final Stats stats = new Stats();
+
+    private final Watches<Handler.Session> watches = new Watches<Handler.Session>();
+
+    private volatile boolean stopped;
+
+    public TestServer(int port) throws IOException {
+        this(port, new HeapConfigStore());
+    }
+
+    /**
+     * Create a server that serves <code>config</code>. A {@link Scan} lists
+     * keys only if the store is an {@link IndexedConfigStore}.
+     */
+    public TestServer(int port, ConfigStore config) throws IOException {
+        this(port, config, null);
+    }
+
+    /**
+     * Create a server that appends every change to <code>journal</code>
+     * before applying it to <code>config</code>. The journal may be null.
+     */
+    public TestServer(int port, ConfigStore config, Journal journal) throws IOException {
+        this(port, config, journal, 1);
+    }
+
+    /**
+     * Create a server with <code>loops</code> event loops. Connections are
+     * assigned to the loops in turn. With more than one loop, the
+     * configuration store must be thread-safe; see {@link
+     * StripedConfigStore}.
+     */
+    public TestServer(int port, ConfigStore config, Journal journal, int loops) throws IOException {
+        this(port, config, journal, loops, null);
+    }
+
+    /**
+     * Create a server that also keeps the history of the keys tracked by
+     * <code>series</code>; see {@link TimeSeries}. The series may be null.
+     */
+    public TestServer(int port, ConfigStore config, Journal journal, int loops, TimeSeries series) throws IOException {
+        this(port, config, journal, loops, series, Backpressure.DEFAULT);
+    }
+
+    /**
+     * Create a server that limits what each connection may have waiting to
+     * be sent as set by <code>backpressure</code>. Connections over their
+     * limits are counted in the stats.
+     */
+    public TestServer(int port, ConfigStore config, Journal journal, int loops, TimeSeries series, Backpressure backpressure) throws IOException {
+        this(port, config, journal, loops, null, series, backpressure);
+    }
+
+    /*
+     * Keys registered with the agent are served from the agent; see {@link
+     * AgentServer}.
+     */
+    TestServer(int port, ConfigStore config, Journal journal, int loops, Agent agent, TimeSeries series, Backpressure backpressure) throws IOException {
+        this.config = config;
+
+        this.loops = new EventLoop[loops];
+
+        for (int i = 0; i < loops; i++)
+            this.loops[i] = new EventLoop(POLL_TIMEOUT, stats);
+
+        this.serverChannel = ServerSocketChannel.open();
+
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(new InetSocketAddress(port));
+
+        this.callbacks = new Callback[loops];
+        this.handlers  = new Handler[loops];
+
+        for (int i = 0; i < loops; i++) {
+            this.handlers[i]  = new Handler(config, journal, watches, stats, agent, series);
+            this.callbacks[i] = new Callback(this.loops[i], this.handlers[i], backpressure, stats);
+        }
+
+        this.replica = new Handler(config, journal, watches, stats, null, series);
+    }
+
+    /**
+     * Keep a log of the recent changes and stream them to the servers that
+     * follow this one. Invoke before {@link #run()}. Followers copy the
+     * store from threads of their own, so the configuration store must be
+     * thread-safe; see {@link StripedConfigStore}.
+     */
+    public void lead() {
+        if (log != null || follower != null)
+            throw new IllegalStateException("Already leading or following");
+
+        log = new ReplicationLog(config, stats);
+
+        for (Handler handler : handlers)
+            handler.lead(log);
+    }
+
+    /**
+     * Follow the server at <code>leader</code>: take a snapshot of its store,
+     * apply its changes as they happen and forward the changes made here to
+     * it. Invoke before {@link #run()}. The changes are applied from a thread
+     * of their own, so the configuration store must be thread-safe; see
+     * {@link StripedConfigStore}.
+     */
+    public void follow(InetSocketAddress leader) {
+        if (log != null || follower != null)
+            throw new IllegalStateException("Already leading or following");
+
+        follower = new Follower(leader, replica, stats);
+
+        for (Handler handler : handlers)
+            handler.follow(follower);
+    }
+
+    /**
+     * Run the event loops and accept connections until {@link #stop()} is
+     * invoked.
+     */
+    public void run() throws IOException {
+        Thread[] threads = new Thread[loops.length];
+
+        for (int i = 0; i < loops.length; i++) {
+            threads[i] = new Thread(loops[i], String.format("wine-loop-%d", i));
+            threads[i].start();
+        }
+
+        if (follower != null)
+            follower.start();
+
+        try {
+            for (int next = 0; !stopped; next = (next + 1) % loops.length) {
+                SocketChannel channel;
+
+                try {
+                    channel = serverChannel.accept();
+                } catch (ClosedChannelException e) {
+                    if (stopped)
+                        break;
+
+                    throw e;
+                }
+
+                channel.configureBlocking(false);
+
+                callbacks[next].register(channel);
+            }
+        } finally {
+            if (follower != null) {
+                try {
+                    follower.stop();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (log != null)
+                log.stop();
+
+            for (EventLoop loop : loops)
+                loop.stop();
+
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop serving. The listening socket is closed immediately and the event
+     * loops exit shortly after.
+     */
+    public void stop() {
+        stopped = true;
+
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+        }
+    }
+
+    public int loops() {
+        return loops.length;
+    }
+
+    /**
+     * Return the number of open connections on loop <code>loop</code>.
+     */
+    public long connections(int loop) {
+        return loops[loop].connections();
+    }
+
+    /**
+     * Return the number of messages handled by loop <code>loop</code>.
+     */
+    public long messages(int loop) {
+        return loops[loop].messages();
+    }
+
+    /**
+     * Broadcast every change the server applies with
+     * <code>publisher</code>, in addition to the updates sent to watching
+     * connections.
+     */
+    public void publish(MulticastPublisher publisher) {
+        for (Handler handler : handlers)
+            handler.resendFrom(publisher);
+
+        synchronized (watches) {
+            watches.watch(publisher.subscriber(stats), new byte[0], true);
+        }
+    }
+
+    /**
+     * Return the server's metrics. They can also be read by any client with
+     * a Get for a key starting with {@link Stats#PREFIX}.
+     */
+    public Stats stats() {
+        return stats;
+    }
 
     public static void main(String[] args) throws IOException {
-        if (args.length != 1)
+        boolean offHeap  = false;
+        boolean blocking = false;
+        boolean scan     = false;
+        String  journal  = null;
+        int     loops    = 1;
+
+        TimeSeries series = null;
+
+        Backpressure backpressure = Backpressure.DEFAULT;
+
+        InetSocketAddress multicast = null;
+        InetSocketAddress leader    = null;
+
+        boolean lead = false;
+
+        int i = 0;
+
+        for (; i < args.length - 1; i++) {
+            if (args[i].equals("--off-heap"))
+                offHeap = true;
+            else if (args[i].equals("--blocking"))
+                blocking = true;
+            else if (args[i].equals("--scan"))
+                scan = true;
+            else if (args[i].equals("--journal") && i + 1 < args.length - 1)
+                journal = args[++i];
+            else if (args[i].equals("--loops") && i + 1 < args.length - 1)
+                loops = loops(args[++i]);
+            else if (args[i].equals("--series") && i + 1 < args.length - 1) {
+                if (series == null)
+                    series = new TimeSeries();
+
+                series.track(args[++i].getBytes("UTF-8"));
+            } else if (args[i].equals("--backpressure") && i + 1 < args.length - 1)
+                backpressure = backpressure(args[++i]);
+            else if (args[i].equals("--multicast") && i + 1 < args.length - 1)
+                multicast = address(args[++i]);
+            else if (args[i].equals("--lead"))
+                lead = true;
+            else if (args[i].equals("--follow") && i + 1 < args.length - 1)
+                leader = address(args[++i]);
+            else
+                usage();
+        }
+
+        if (i != args.length - 1 || (blocking && (series != null || multicast != null || lead || leader != null)) || (lead && leader != null))
             usage();
 
-        int port = port(args);
+        int port = port(args[i]);
         if (port == 0)
             usage();
 
-        Map<ByteString, ByteString> config = new HashMap<ByteString, ByteString>();
+        /*
+         * A striped store also lets the journal write snapshots while
+         * changes go on.
+         */
+        ConfigStore config = store(offHeap, blocking ? 64 : loops > 1 || lead || leader != null || journal != null ? 16 * loops : 1);
 
-        final Callback callback = new Callback(config);
+        Journal configJournal = null;
+        if (journal != null) {
+            configJournal = new Journal(new File(journal), config);
 
-        final Parser parser = new Parser();
-        final Server server = Server.accept(port, new Server.ConnectionFactory<Message>() {
-            @Override
-            public Connection<Message> newConnection(SocketChannel channel) {
-                return new Connection(channel, parser, callback);
+            info(String.format("Recovered %d keys from %s", config.size(), journal));
+        }
+
+        /*
+         * Multicast receivers fill their copies with a scan.
+         */
+        if (scan || multicast != null)
+            config = IndexedConfigStore.of(config);
+
+        if (blocking) {
+            BlockingServer server = new BlockingServer(port, config, configJournal, Executors.newCachedThreadPool());
+
+            info(String.format("Listening on port %s with blocking connections", port));
+
+            server.run();
+        } else {
+            TestServer server = new TestServer(port, config, configJournal, loops, series, backpressure);
+
+            if (lead)
+                server.lead();
+
+            if (leader != null) {
+                server.follow(leader);
+
+                info(String.format("Following %s", leader));
             }
-        });
 
-        info(String.format("Listening on port %s", port));
+            if (multicast != null) {
+                MulticastPublisher publisher = new MulticastPublisher(multicast);
+
+                publisher.start(MulticastPublisher.DEFAULT_HEARTBEAT_INTERVAL);
 
-        Events io = Events.open();
+                server.publish(publisher);
+
+                info(String.format("Publishing changes to %s", multicast));
+            }
 
-        io.register(server);
+            info(String.format("Listening on port %s with %d event loops", port, loops));
 
-        while (true)
-            io.process(1000);
+            server.run();
+        }
     }
 
-    private static class Callback implements Connection.Callback<Message> {
-        private Map<ByteString, ByteString> config;
+    /*
+     * A connection together with the loop that owns it. Replies are
+     * buffered and flushed by the loop at the end of each round.
+     *
+     * While the connection is paused for being over its outbound limits,
+     * its requests wait in a queue of their own and, when coalescing, the
+     * latest update for each key waits in a map. Requests also wait while
+     * a streamed value is being sent, which happens a window at a time as
+     * the connection drains.
+     */
+    private static class LoopSession implements Handler.Session, EventLoop.Output {
+        private final Connection<Message> connection;
+        private final EventLoop           loop;
+        private final Handler             handler;
+        private final Outbound            outbound;
+        private final Backpressure        backpressure;
+        private final Stats               stats;
+
+        private final Queue<Message>          deferred  = new ArrayDeque<Message>();
+        private final Map<ByteString, byte[]> coalesced = new LinkedHashMap<ByteString, byte[]>();
+
+        private final Runnable resume = new Runnable() {
+            @Override
+            public void run() {
+                resume();
+            }
+        };
+
+        private Compression compression;
+        private KeyTable    keys;
+
+        /*
+         * Bytes sent from other threads that are yet to reach the outbound
+         * buffer, and what the buffer held when last written to or
+         * flushed, for telling other threads whether the session is ready.
+         */
+        private final AtomicLong handoff = new AtomicLong();
+
+        private volatile long pending;
+
+        private volatile boolean paused;
 
-        public Callback(Map<ByteString, ByteString> config) {
-            this.config = config;
+        private boolean closed;
+        private boolean resuming;
+
+        private long deferredBytes;
+
+        public LoopSession(Connection<Message> connection, SocketChannel channel, EventLoop loop, Handler handler, Backpressure backpressure, Stats stats) {
+            this.connection   = connection;
+            this.loop         = loop;
+            this.handler      = handler;
+            this.outbound     = new Outbound(channel);
+            this.backpressure = backpressure;
+            this.stats        = stats;
+        }
+
+        public void handle(Message message) {
+            if (closed)
+                return;
+
+            if (!paused && deferred.isEmpty() && !handler.streaming(this)) {
+                handler.handle(this, message);
+                return;
+            }
+
+            /*
+             * Deferred requests are held to the same limits as replies
+             * waiting to be sent.
+             */
+            int length = message.length();
+
+            if (deferred.size() >= backpressure.maxMessages() || deferredBytes + length > backpressure.maxBytes()) {
+                overflow();
+                return;
+            }
+
+            deferred.add(message);
+
+            deferredBytes += length;
         }
 
         @Override
-        public void connected(Connection<Message> connection) {
+        public void send(Message message) {
+            if (closed)
+                return;
+
+            if (compression != null)
+                message = compression.compress(message);
+
+            stats.sent(message.length());
+
+            try {
+                outbound.send(message);
+            } catch (IOException e) {
+                connection.close();
+                return;
+            }
+
+            sent();
         }
 
         @Override
-        public void messages(Connection<Message> connection, Iterator<Message> messages) {
-            while (messages.hasNext())
-                handle(connection, messages.next());
+        public void send(final byte[] message) {
+            if (!loop.inLoop()) {
+                handoff.addAndGet(message.length);
+
+                loop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handoff.addAndGet(-message.length);
+
+                        send(message);
+                    }
+                });
+                return;
+            }
+
+            if (closed)
+                return;
+
+            if (backpressure.policy() == Backpressure.COALESCE && message[0] == AbstractMessage.Type.UPDATE && (paused || !coalesced.isEmpty())) {
+                coalesce(message);
+                return;
+            }
+
+            write(message);
         }
 
         @Override
-        public void closed(Connection<Message> connection) {
+        public boolean flush() {
+            if (closed)
+                return true;
+
+            boolean empty;
+
+            try {
+                empty = outbound.flush();
+            } catch (IOException e) {
+                connection.close();
+
+                return true;
+            }
+
+            pending = outbound.pendingBytes();
+
+            /*
+             * Deferred requests are handled in a task rather than here, as
+             * they may send to other sessions while the loop is flushing.
+             */
+            if (paused && !backpressure.exceeded(outbound.pendingBytes(), outbound.pendingMessages(), 0.5)) {
+                paused = false;
+
+                resumeLater();
+            } else if (handler.streaming(this) && ready()) {
+                resumeLater();
+            }
+
+            return empty;
         }
 
+        /*
+         * A stream keeps well within the limits, so that it never trips
+         * them by itself, but is let through when nothing else is waiting.
+         */
         @Override
-        public void garbledMessage(Connection<Message> connection, String message, byte[] data) {
+        public boolean ready() {
+            if (paused)
+                return false;
+
+            if (!loop.inLoop()) {
+                long bytes = handoff.get() + pending;
+
+                return bytes == 0 || (bytes < STREAM_WINDOW && !backpressure.exceeded(bytes + Handler.CHUNK_SIZE, 0, 0.5));
+            }
+
+            long bytes = outbound.pendingBytes();
+
+            return bytes == 0 || (bytes < STREAM_WINDOW && !backpressure.exceeded(bytes + Handler.CHUNK_SIZE, outbound.pendingMessages() + 1, 0.5));
         }
 
         @Override
-        public void sent(ByteBuffer buffer) {
+        public void features(int features) {
+            if ((features & Features.COMPRESSION) != 0)
+                compression = new Compression();
+
+            if ((features & Features.KEY_IDS) != 0)
+                keys = new KeyTable();
         }
 
-        private void handle(final Connection<Message> connection, Message message) {
-            message.accept(new MessageVisitor() {
-                @Override
-                public void visit(Login message) {
-                    connection.send(new LoginAccepted().format());
-                }
+        @Override
+        public KeyTable keys() {
+            return keys;
+        }
 
-                @Override
-                public void visit(LoginAccepted message) {
-                }
+        public void closed() {
+            closed = true;
 
-                @Override
-                public void visit(LoginRejected message) {
-                }
+            deferred.clear();
 
-                @Override
-                public void visit(Get message) {
-                    ByteString key   = new ByteString(message.key());
-                    ByteString value = config.get(key);
+            deferredBytes = 0;
+            coalesced.clear();
+
+            if (compression != null)
+                compression.end();
+        }
 
-                    if (value == null)
-                        value = new ByteString();
+        private void write(byte[] message) {
+            stats.sent(message.length);
 
-                    connection.send(new Value(key.toArray(), value.toArray()).format());
-                }
+            try {
+                outbound.send(message);
+            } catch (IOException e) {
+                connection.close();
+                return;
+            }
+
+            sent();
+        }
+
+        /*
+         * Keep only the latest update for the key, in the place of the
+         * first one.
+         */
+        private void coalesce(byte[] message) {
+            int keyLength = ByteBuffer.wrap(message).getInt(1);
+
+            ByteString key = new ByteString(Arrays.copyOfRange(message, 9, 9 + keyLength));
+
+            if (coalesced.put(key, message) != null)
+                stats.coalesced();
+        }
+
+        /*
+         * A follower is paced by the replication log, and is never cut off
+         * for being over the limits; see Handler#replicating.
+         */
+        private void sent() {
+            loop.flushLater(this);
+
+            long bytes    = outbound.pendingBytes();
+            int  messages = outbound.pendingMessages();
+
+            pending = bytes;
+
+            if (!backpressure.exceeded(bytes, messages, 1))
+                return;
+
+            if ((backpressure.policy() == Backpressure.DISCONNECT || backpressure.exceeded(bytes, messages, 2)) && !handler.replicating(this)) {
+                overflow();
+                return;
+            }
+
+            if (!paused) {
+                paused = true;
+
+                stats.paused();
+            }
+        }
+
+        private void resumeLater() {
+            if (resuming)
+                return;
+
+            resuming = true;
+
+            loop.execute(resume);
+        }
+
+        private void resume() {
+            resuming = false;
+
+            Iterator<byte[]> updates = coalesced.values().iterator();
+
+            while (!paused && !closed && updates.hasNext()) {
+                byte[] update = updates.next();
+
+                updates.remove();
+
+                write(update);
+            }
+
+            if (!paused && !closed)
+                handler.drained(this);
+
+            while (!paused && !closed && !deferred.isEmpty() && !handler.streaming(this)) {
+                Message message = deferred.remove();
+
+                deferredBytes -= message.length();
+
+                handler.handle(this, message);
+            }
+        }
+
+        @Override
+        public void close() {
+            connection.close();
+        }
+
+        private void overflow() {
+            stats.overflowed();
+
+            connection.close();
+        }
+    }
 
+    /*
+     * There is one callback for each event loop.
+     */
+    private static class Callback implements Connection.Callback<Message> {
+        private final EventLoop    loop;
+        private final Handler      handler;
+        private final Backpressure backpressure;
+        private final Stats        stats;
+
+        private final Map<Connection<Message>, LoopSession> sessions = new HashMap<Connection<Message>, LoopSession>();
+
+        public Callback(EventLoop loop, Handler handler, Backpressure backpressure, Stats stats) {
+            this.loop         = loop;
+            this.handler      = handler;
+            this.backpressure = backpressure;
+            this.stats        = stats;
+        }
+
+        /**
+         * Hand a newly accepted channel to the loop. Invoke from any thread.
+         */
+        public void register(SocketChannel channel) {
+            final Connection<Message> connection = new Connection<Message>(channel, new CountingParser(stats), this);
+            final LoopSession         session    = new LoopSession(connection, channel, loop, handler, backpressure, stats);
+
+            stats.connected();
+
+            loop.execute(new Runnable() {
                 @Override
-                public void visit(Value message) {
+                public void run() {
+                    sessions.put(connection, session);
                 }
+            });
 
-                @Override
-                public void visit(Set message) {
-                    ByteString key   = new ByteString(message.key());
-                    ByteString value = new ByteString(message.value());
+            loop.register(connection);
+        }
+
+        @Override
+        public void connected(Connection<Message> connection) {
+        }
+
+        @Override
+        public void messages(Connection<Message> connection, Iterator<Message> messages) {
+            LoopSession session = sessions.get(connection);
+
+            int count = 0;
 
-                    config.put(key, value);
+            /*
+             * A request that fails unexpectedly costs its own connection,
+             * not the loop and every other connection on it.
+             */
+            try {
+                while (messages.hasNext()) {
+                    session.handle(messages.next());
+
+                    count++;
                 }
-            });
+            } catch (RuntimeException e) {
+                stats.failed();
+
+                connection.close();
+            }
+
+            loop.handled(count);
         }
-    }
 
-    private static class ByteString {
-        private final byte[] value;
+        @Override
+        public void closed(Connection<Message> connection) {
+            loop.closed();
+
+            stats.disconnected();
+
+            LoopSession session = sessions.remove(connection);
+            if (session == null)
+                return;
 
-        public ByteString() {
-            this(new byte[] {});
+            session.closed();
+
+            handler.closed(session);
         }
 
-        public ByteString(byte[] value) {
-            this.value = value;
+        @Override
+        public void garbledMessage(Connection<Message> connection, String message, byte[] data) {
+            stats.garbled();
         }
 
         @Override
-        public boolean equals(Object that) {
-            if (that == null)
-                return false;
+        public void sent(ByteBuffer buffer) {
+        }
+    }
 
-            if (that == this)
-                return true;
+    /*
+     * A parser that counts the bytes of the messages it parses.
+     */
+    private static class CountingParser implements MessageParser<Message> {
+        private final Parser parser = new Parser();
+        private final Stats  stats;
 
-            if (that.getClass() != this.getClass())
-                return false;
+        public CountingParser(Stats stats) {
+            this.stats = stats;
+        }
 
-            byte[] thatValue = ((ByteString) that).value;
+        @Override
+        public Message parse(ByteBuffer buffer) throws GarbledMessageException, PartialMessageException {
+            int position = buffer.position();
+
+            Message message = parser.parse(buffer);
 
-            return Arrays.equals(thatValue, this.value);
+            stats.received(buffer.position() - position);
+
+            return message;
         }
+    }
 
-        @Override
-        public int hashCode() {
-            return Arrays.hashCode(value);
+    private static ConfigStore store(final boolean offHeap, int stripes) {
+        StripedConfigStore.Factory factory = new StripedConfigStore.Factory() {
+            @Override
+            public ConfigStore create() {
+                return offHeap ? new OffHeapConfigStore() : new HeapConfigStore();
+            }
+        };
+
+        if (stripes == 1)
+            return factory.create();
+
+        return new StripedConfigStore(stripes, factory);
+    }
+
+    private static int loops(String arg) {
+        try {
+            int loops = Integer.parseInt(arg);
+            if (loops > 0)
+                return loops;
+        } catch (NumberFormatException e) {
         }
 
-        public byte[] toArray() {
-            return value;
+        usage();
+
+        return 0;
+    }
+
+    private static Backpressure backpressure(String arg) {
+        int policy;
+
+        if (arg.equals("pause"))
+            policy = Backpressure.PAUSE;
+        else if (arg.equals("coalesce"))
+            policy = Backpressure.COALESCE;
+        else if (arg.equals("disconnect"))
+            policy = Backpressure.DISCONNECT;
+        else {
+            usage();
+
+            return null;
         }
+
+        return new Backpressure(policy, Backpressure.DEFAULT_MAX_BYTES, Backpressure.DEFAULT_MAX_MESSAGES);
+    }
+
+    private static InetSocketAddress address(String arg) {
+        int colon = arg.lastIndexOf(':');
+        if (colon < 0)
+            usage();
+
+        int port = port(arg.substring(colon + 1));
+        if (port == 0)
+            usage();
+
+        return new InetSocketAddress(arg.substring(0, colon), port);
     }
 
-    private static int port(String[] args) {
+    private static int port(String arg) {
         try {
-            return Integer.parseInt(args[0]);
+            return Integer.parseInt(arg);
         } catch (NumberFormatException e) {
             return 0;
         }
@@ -178,7 +880,7 @@ public class TestServer {
     }
 
     private static void usage() {
-        System.err.println("Usage: wine-test-server <port>");
+        System.err.println("Usage: wine-test-server [--off-heap] [--scan] [--journal <directory>] [--series <prefix>]... [--backpressure pause|coalesce|disconnect] [--multicast <group>:<port>] [--lead | --follow <host>:<port>] [--loops <count> | --blocking] <port>");
         System.exit(2);
     }
 
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+/**
+ * Short-term history of numeric values. For every key that starts with a
+ * tracked prefix, each Set appends a (timestamp, value) sample to a ring
+ * buffer of fixed capacity, overwriting the oldest sample once full.
+ * Values that are not ASCII decimal integers are not recorded.
+ *
+ * Memory is bounded by the capacity of a series times the maximum number
+ * of series; Sets for new keys beyond that are not recorded. Appending does
+ * not allocate once a series exists.
+ *
+ * Series are looked up without locking. Each series is guarded by its own
+ * lock, so it may be appended to and read from any thread.
+ */
+public class TimeSeries {
+    public static final int DEFAULT_CAPACITY   = 1024;
+    public static final int DEFAULT_MAX_SERIES = 1024;
+
+    private final int capacity;
+    private final int maxSeries;
+
+    private volatile byte[][] prefixes = new byte[0][];
+
+    /*
+     * An open-addressing table with linear probing, replaced as a whole
+     * when a series is added. Its length is a power of two.
+     */
+    private volatile Series[] series;
+
+    private int size;
+
+    public TimeSeries() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_SERIES);
+    }
+
+    public TimeSeries(int capacity, int maxSeries) {
+        this.capacity  = capacity;
+        this.maxSeries = maxSeries;
+        this.series    = new Series[tableLength(maxSeries)];
+    }
+
+    /**
+     * Keep the history of every key that starts with <code>prefix</code>.
+     */
+    public synchronized void track(byte[] prefix) {
+        byte[][] prefixes = new byte[this.prefixes.length + 1][];
+
+        System.arraycopy(this.prefixes, 0, prefixes, 0, this.prefixes.length);
+
+        prefixes[prefixes.length - 1] = prefix.clone();
+
+        this.prefixes = prefixes;
+    }
+
+    /**
+     * Return true if the history of <code>key</code> is kept.
+     */
+    public boolean tracks(byte[] key, int keyLength) {
+        for (byte[] prefix : prefixes) {
+            if (startsWith(key, keyLength, prefix))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Record <code>value</code> at <code>timestamp</code> if the key is
+     * tracked and the value is a number.
+     */
+    public void append(byte[] key, int keyLength, byte[] value, int valueLength, long timestamp) {
+        if (!tracks(key, keyLength))
+            return;
+
+        long number;
+
+        try {
+            number = Agent.parseLong(value, valueLength);
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        Series series = find(this.series, key, keyLength);
+        if (series == null)
+            series = add(key, keyLength);
+
+        if (series != null)
+            series.append(timestamp, number);
+    }
+
+    /**
+     * Add the samples of the key with timestamps from <code>from</code>,
+     * inclusive, to <code>to</code>, exclusive, to <code>samples</code>.
+     */
+    public void read(byte[] key, int keyLength, long from, long to, Samples samples) {
+        Series series = find(this.series, key, keyLength);
+        if (series != null)
+            series.read(from, to, samples);
+    }
+
+    private synchronized Series add(byte[] key, int keyLength) {
+        Series series = find(this.series, key, keyLength);
+        if (series != null)
+            return series;
+
+        if (size == maxSeries)
+            return null;
+
+        byte[] copy = new byte[keyLength];
+
+        System.arraycopy(key, 0, copy, 0, keyLength);
+
+        series = new Series(copy, capacity);
+
+        Series[] table = this.series.clone();
+
+        insert(table, series);
+
+        this.series = table;
+
+        size++;
+
+        return series;
+    }
+
+    private static void insert(Series[] table, Series series) {
+        int mask = table.length - 1;
+
+        for (int i = series.hash & mask; ; i = (i + 1) & mask) {
+            if (table[i] == null) {
+                table[i] = series;
+                return;
+            }
+        }
+    }
+
+    private static Series find(Series[] table, byte[] key, int keyLength) {
+        int mask = table.length - 1;
+        int hash = OffHeapConfigStore.hash(key, 0, keyLength);
+
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Series series = table[i];
+            if (series == null)
+                return null;
+
+            if (series.hash == hash && series.key.length == keyLength && startsWith(key, keyLength, series.key))
+                return series;
+        }
+    }
+
+    private static boolean startsWith(byte[] key, int keyLength, byte[] prefix) {
+        if (keyLength < prefix.length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (key[i] != prefix[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    /*
+     * At most half full, so that probing always ends at an empty slot.
+     */
+    private static int tableLength(int maxSeries) {
+        int length = 16;
+
+        while (length < 2 * maxSeries)
+            length *= 2;
+
+        return length;
+    }
+
+    /*
+     * Samples are in timestamp order: timestamps that would go backwards
+     * are moved up to the latest one.
+     */
+    private static class Series {
+        final byte[] key;
+        final int    hash;
+
+        private final long[] timestamps;
+        private final long[] values;
+
+        /*
+         * The oldest sample is at index start.
+         */
+        private int start;
+        private int size;
+
+        Series(byte[] key, int capacity) {
+            this.key        = key;
+            this.hash       = OffHeapConfigStore.hash(key, 0, key.length);
+            this.timestamps = new long[capacity];
+            this.values     = new long[capacity];
+        }
+
+        synchronized void append(long timestamp, long value) {
+            if (size > 0)
+                timestamp = Math.max(timestamp, timestamps[index(size - 1)]);
+
+            int index;
+
+            if (size < timestamps.length) {
+                index = index(size);
+
+                size++;
+            } else {
+                index = start;
+
+                start = index(1);
+            }
+
+            timestamps[index] = timestamp;
+            values[index]     = value;
+        }
+
+        synchronized void read(long from, long to, Samples samples) {
+            int first = search(from);
+            int last  = search(to);
+
+            while (first < last) {
+                int index = index(first);
+                int count = Math.min(last - first, timestamps.length - index);
+
+                samples.add(timestamps, values, index, count);
+
+                first += count;
+            }
+        }
+
+        /*
+         * Return the position, counted from the oldest sample, of the first
+         * sample at or after <code>timestamp</code>.
+         */
+        private int search(long timestamp) {
+            int low  = 0;
+            int high = size;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (timestamps[index(middle)] < timestamp)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+
+            return low;
+        }
+
+        private int index(int position) {
+            return (start + position) % timestamps.length;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+/**
+ * A piece of a value streamed in reply to a {@link ChunkedGet}. The chunks
+ * of a value arrive in order and end with an empty chunk.
+ */
+public class ValueChunk extends KeyValueMessage {
+
+    public ValueChunk() {
+        super(Type.VALUE_CHUNK);
+    }
+
+    public ValueChunk(byte[] key, byte[] value) {
+        super(Type.VALUE_CHUNK, key, value);
+    }
+
+    @Override
+    public void accept(MessageVisitor visitor) {
+        visitor.visit(this);
+    }
+
+}
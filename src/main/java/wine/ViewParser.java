@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+import silvertip.GarbledMessageException;
+import silvertip.PartialMessageException;
+
+/**
+ * A parser that decodes messages into reusable {@link MessageView}s instead
+ * of allocating a new {@link Message} per frame.
+ *
+ * The returned view is owned by the parser and is overwritten by the next
+ * call to {@link #parse(ByteBuffer)}.
+ */
+public class ViewParser {
+    private final LoginView         login         = new LoginView();
+    private final LoginAcceptedView loginAccepted = new LoginAcceptedView();
+    private final LoginRejectedView loginRejected = new LoginRejectedView();
+    private final GetView           get           = new GetView();
+    private final ValueView         value         = new ValueView();
+    private final SetView           set           = new SetView();
+    private final MultiGetView      multiGet      = new MultiGetView();
+    private final MultiValueView    multiValue    = new MultiValueView();
+    private final MultiSetView      multiSet      = new MultiSetView();
+    private final WatchView         watch         = new WatchView();
+    private final UnwatchView       unwatch       = new UnwatchView();
+    private final UpdateView        update        = new UpdateView();
+    private final SetChunkView      setChunk      = new SetChunkView();
+    private final ValueChunkView    valueChunk    = new ValueChunkView();
+    private final ChunkedGetView    chunkedGet    = new ChunkedGetView();
+    private final RangeGetView      rangeGet      = new RangeGetView();
+    private final SamplesView       samples       = new SamplesView();
+    private final ScanView          scan          = new ScanView();
+    private final DefineKeyView     defineKey     = new DefineKeyView();
+    private final IdGetView         idGet         = new IdGetView();
+    private final IdSetView         idSet         = new IdSetView();
+    private final IdValueView       idValue       = new IdValueView();
+    private final FollowView        follow        = new FollowView();
+    private final PositionView      position      = new PositionView();
+    private final ResendView        resend        = new ResendView();
+
+    /**
+     * Parse the message at the current position of the buffer and advance the
+     * position past it. If the buffer does not hold the complete message, the
+     * position is left unchanged.
+     */
+    public MessageView parse(ByteBuffer buffer) throws GarbledMessageException, PartialMessageException {
+        AbstractMessageView view   = view(buffer);
+        int                 length = Frames.complete(buffer, buffer.position());
+
+        view.wrap(buffer, buffer.position());
+
+        buffer.position(buffer.position() + length);
+
+        return view;
+    }
+
+    private AbstractMessageView view(ByteBuffer buffer) throws GarbledMessageException, PartialMessageException {
+        if (!buffer.hasRemaining())
+            throw new PartialMessageException();
+
+        byte messageType = buffer.get(buffer.position());
+
+        switch (messageType) {
+        case AbstractMessage.Type.LOGIN:
+        case AbstractMessage.Type.LOGIN_FEATURES:
+            return login;
+        case AbstractMessage.Type.LOGIN_ACCEPTED:
+        case AbstractMessage.Type.LOGIN_ACCEPTED_FEATURES:
+            return loginAccepted;
+        case AbstractMessage.Type.LOGIN_REJECTED:
+            return loginRejected;
+        case AbstractMessage.Type.GET:
+            return get;
+        case AbstractMessage.Type.VALUE:
+            return value;
+        case AbstractMessage.Type.SET:
+            return set;
+        case AbstractMessage.Type.MULTI_GET:
+            return multiGet;
+        case AbstractMessage.Type.MULTI_VALUE:
+            return multiValue;
+        case AbstractMessage.Type.MULTI_SET:
+            return multiSet;
+        case AbstractMessage.Type.WATCH:
+            return watch;
+        case AbstractMessage.Type.UNWATCH:
+            return unwatch;
+        case AbstractMessage.Type.UPDATE:
+            return update;
+        case AbstractMessage.Type.SET_CHUNK:
+            return setChunk;
+        case AbstractMessage.Type.VALUE_CHUNK:
+            return valueChunk;
+        case AbstractMessage.Type.CHUNKED_GET:
+            return chunkedGet;
+        case AbstractMessage.Type.RANGE_GET:
+            return rangeGet;
+        case AbstractMessage.Type.SAMPLES:
+            return samples;
+        case AbstractMessage.Type.SCAN:
+            return scan;
+        case AbstractMessage.Type.DEFINE_KEY:
+            return defineKey;
+        case AbstractMessage.Type.ID_GET:
+            return idGet;
+        case AbstractMessage.Type.ID_SET:
+            return idSet;
+        case AbstractMessage.Type.ID_VALUE:
+            return idValue;
+        case AbstractMessage.Type.FOLLOW:
+            return follow;
+        case AbstractMessage.Type.POSITION:
+            return position;
+        case AbstractMessage.Type.RESEND:
+            return resend;
+        }
+
+        throw new GarbledMessageException(String.format("Unexpected message type %c", messageType));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A message that refers to either a single key or to every key that starts
+ * with a prefix.
+ */
+public abstract class WatchMessage extends AbstractMessage {
+    private final FlagField prefix = new FlagField();
+    private final ByteField key    = new ByteField();
+
+    protected WatchMessage(byte messageType) {
+        super(messageType);
+    }
+
+    protected WatchMessage(byte messageType, byte[] key, boolean prefix) {
+        this(messageType);
+
+        key(key);
+        prefix(prefix);
+    }
+
+    public void key(byte[] key) {
+        this.key.set(key);
+    }
+
+    public byte[] key() {
+        return this.key.get();
+    }
+
+    public void prefix(boolean prefix) {
+        this.prefix.set(prefix);
+    }
+
+    /**
+     * Return true if the key is a prefix.
+     */
+    public boolean prefix() {
+        return this.prefix.get();
+    }
+
+    @Override
+    void reusable() {
+        key.reusable(true);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer) {
+        super.parse(buffer);
+
+        prefix.parse(buffer);
+        key.lengthField().parse(buffer);
+        key.parse(buffer);
+    }
+
+    @Override
+    public void format(ByteBuffer buffer) {
+        super.format(buffer);
+
+        prefix.format(buffer);
+        key.lengthField().format(buffer);
+        key.format(buffer);
+    }
+
+    @Override
+    public int length() {
+        return super.length() + prefix.length() + key.lengthField().length() + key.length();
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (!super.equals(that))
+            return false;
+
+        WatchMessage thatMessage = (WatchMessage) that;
+
+        return thatMessage.prefix.equals(this.prefix) && thatMessage.key.equals(this.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * super.hashCode() + prefix.hashCode()) + key.hashCode();
+    }
+
+    @Override
+    protected void toString(StringBuilder builder) {
+        builder.append(key).append(',').append(prefix);
+    }
+}
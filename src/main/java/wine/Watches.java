@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Subscriptions to single keys and to key prefixes.
+ *
+ * Looking up the subscribers of a key takes one hash lookup for the key and
+ * one for each distinct prefix length that is being watched, however many
+ * subscribers there are.
+ */
+class Watches<T> {
+    private final Map<ByteString, LinkedHashSet<T>> keys     = new HashMap<ByteString, LinkedHashSet<T>>();
+    private final Map<ByteString, LinkedHashSet<T>> prefixes = new HashMap<ByteString, LinkedHashSet<T>>();
+
+    private final Map<T, LinkedHashSet<Subscription>> subscriptions = new HashMap<T, LinkedHashSet<Subscription>>();
+
+    /*
+     * The number of watched prefixes of each length.
+     */
+    private int[] prefixLengths = new int[0];
+
+    public boolean isEmpty() {
+        return subscriptions.isEmpty();
+    }
+
+    public void watch(T subscriber, byte[] key, boolean prefix) {
+        Subscription subscription = new Subscription(new ByteString(key), prefix);
+
+        LinkedHashSet<Subscription> subscriberSubscriptions = subscriptions.get(subscriber);
+        if (subscriberSubscriptions == null) {
+            subscriberSubscriptions = new LinkedHashSet<Subscription>();
+
+            subscriptions.put(subscriber, subscriberSubscriptions);
+        }
+
+        if (!subscriberSubscriptions.add(subscription))
+            return;
+
+        LinkedHashSet<T> subscribers = index(prefix).get(subscription.key);
+        if (subscribers == null) {
+            subscribers = new LinkedHashSet<T>();
+
+            index(prefix).put(subscription.key, subscribers);
+
+            if (prefix)
+                addPrefixLength(key.length);
+        }
+
+        subscribers.add(subscriber);
+    }
+
+    public void unwatch(T subscriber, byte[] key, boolean prefix) {
+        Subscription subscription = new Subscription(new ByteString(key), prefix);
+
+        LinkedHashSet<Subscription> subscriberSubscriptions = subscriptions.get(subscriber);
+        if (subscriberSubscriptions == null || !subscriberSubscriptions.remove(subscription))
+            return;
+
+        if (subscriberSubscriptions.isEmpty())
+            subscriptions.remove(subscriber);
+
+        remove(subscriber, subscription);
+    }
+
+    /**
+     * Remove every subscription of <code>subscriber</code>.
+     */
+    public void remove(T subscriber) {
+        LinkedHashSet<Subscription> subscriberSubscriptions = subscriptions.remove(subscriber);
+        if (subscriberSubscriptions == null)
+            return;
+
+        for (Subscription subscription : subscriberSubscriptions)
+            remove(subscriber, subscription);
+    }
+
+    /**
+     * Add the subscribers of <code>key</code> to <code>result</code>.
+     */
+    public void subscribers(byte[] key, Collection<T> result) {
+        if (isEmpty())
+            return;
+
+        LinkedHashSet<T> subscribers = keys.get(new ByteString(key));
+        if (subscribers != null)
+            result.addAll(subscribers);
+
+        int maxLength = Math.min(key.length, prefixLengths.length - 1);
+
+        for (int length = 0; length <= maxLength; length++) {
+            if (prefixLengths[length] == 0)
+                continue;
+
+            subscribers = prefixes.get(new ByteString(Arrays.copyOf(key, length)));
+            if (subscribers != null)
+                result.addAll(subscribers);
+        }
+    }
+
+    private void remove(T subscriber, Subscription subscription) {
+        Map<ByteString, LinkedHashSet<T>> index = index(subscription.prefix);
+
+        LinkedHashSet<T> subscribers = index.get(subscription.key);
+
+        subscribers.remove(subscriber);
+
+        if (subscribers.isEmpty()) {
+            index.remove(subscription.key);
+
+            if (subscription.prefix)
+                prefixLengths[subscription.key.toArray().length]--;
+        }
+    }
+
+    private Map<ByteString, LinkedHashSet<T>> index(boolean prefix) {
+        return prefix ? prefixes : keys;
+    }
+
+    private void addPrefixLength(int length) {
+        if (length >= prefixLengths.length)
+            prefixLengths = Arrays.copyOf(prefixLengths, length + 1);
+
+        prefixLengths[length]++;
+    }
+
+    private static class Subscription {
+        private final ByteString key;
+        private final boolean    prefix;
+
+        public Subscription(ByteString key, boolean prefix) {
+            this.key    = key;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (that == null)
+                return false;
+
+            if (that == this)
+                return true;
+
+            if (that.getClass() != this.getClass())
+                return false;
+
+            Subscription thatSubscription = (Subscription) that;
+
+            return thatSubscription.prefix == this.prefix && thatSubscription.key.equals(this.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + (prefix ? 1 : 0);
+        }
+    }
+}
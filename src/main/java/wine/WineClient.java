@@ -0,0 +1,601 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import silvertip.Connection;
+import silvertip.Events;
+
+/**
+ * A pipelined Wine client.
+ *
+ * Requests are sent as soon as they are issued, without waiting for the
+ * replies to earlier ones. The server answers <code>Get</code> requests in
+ * order, so each <code>Value</code> completes the oldest outstanding
+ * request. Once {@link Features#REQUEST_IDS} has been granted, requests
+ * carry IDs instead and each reply completes the request with its ID, in
+ * whatever order the replies arrive.
+ *
+ * Like the rest of silvertip, the client is not thread-safe: issue requests
+ * from the thread that drives the {@link Events} loop the client is
+ * registered with. Callbacks are invoked on that thread.
+ */
+public class WineClient {
+    public interface Listener {
+        void loginAccepted(WineClient client);
+
+        void loginRejected(WineClient client);
+
+        void closed(WineClient client);
+    }
+
+    public interface ValueCallback {
+        void completed(Value message);
+
+        /**
+         * Invoked if the connection is closed before the reply arrives.
+         */
+        void failed();
+    }
+
+    public interface MultiValueCallback {
+        void completed(MultiValue message);
+
+        /**
+         * Invoked if the connection is closed before the reply arrives.
+         */
+        void failed();
+    }
+
+    public interface IdValueCallback {
+        void completed(IdValue message);
+
+        /**
+         * Invoked if the connection is closed before the reply arrives.
+         */
+        void failed();
+    }
+
+    public interface SamplesCallback {
+        void completed(Samples message);
+
+        /**
+         * Invoked if the connection is closed before the reply arrives.
+         */
+        void failed();
+    }
+
+    public interface ChunkCallback {
+        /**
+         * Invoked for each chunk of the value, in order. The message is only
+         * valid during the invocation.
+         */
+        void chunk(ValueChunk message);
+
+        /**
+         * Invoked after the last chunk.
+         */
+        void completed();
+
+        /**
+         * Invoked if the connection is closed before the last chunk arrives.
+         */
+        void failed();
+    }
+
+    public interface UpdateListener {
+        void updated(Update message);
+    }
+
+    private final Queue<Reply> pending = new LinkedList<Reply>();
+
+    private final Map<Integer, Reply> requests = new LinkedHashMap<Integer, Reply>();
+
+    private int nextRequestId;
+
+    private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+
+    private final Map<ByteString, Integer> ids = new HashMap<ByteString, Integer>();
+
+    private final Listener listener;
+
+    private Connection<Message> connection;
+
+    private int features;
+
+    private Compression compression;
+
+    public WineClient(Listener listener) {
+        this.listener = listener;
+    }
+
+    public static WineClient connect(InetSocketAddress address, Listener listener) throws IOException {
+        WineClient client = new WineClient(listener);
+
+        client.connection = Connection.connect(address, new Parser(), client.new Callback());
+
+        return client;
+    }
+
+    public void register(Events io) throws IOException {
+        io.register(connection);
+    }
+
+    public void login(String username, String password) {
+        send(new Login(username, password));
+    }
+
+    /**
+     * Log in asking for <code>features</code>; see {@link Features}. The
+     * granted ones are in use once the login is accepted.
+     */
+    public void login(String username, String password, int features) {
+        send(new Login(username, password, features));
+    }
+
+    /**
+     * Return the features granted by the server.
+     */
+    public int features() {
+        return features;
+    }
+
+    public void get(byte[] key, final ValueCallback callback) {
+        request(new Get(key), new Reply() {
+            @Override
+            public void completed(Message message) {
+                callback.completed((Value) message);
+            }
+
+            @Override
+            public void failed() {
+                callback.failed();
+            }
+        });
+    }
+
+    /**
+     * Return the ID of <code>key</code>, defining it on the connection the
+     * first time. Requires {@link Features#KEY_IDS}.
+     */
+    public int define(byte[] key) {
+        ByteString name = new ByteString(key.clone());
+
+        Integer id = ids.get(name);
+        if (id != null)
+            return id;
+
+        id = ids.size();
+
+        ids.put(name, id);
+
+        send(new DefineKey(id, key));
+
+        return id;
+    }
+
+    /**
+     * Get the value of a key defined with {@link #define(byte[])}.
+     */
+    public void get(int id, final IdValueCallback callback) {
+        request(new IdGet(id), new Reply() {
+            @Override
+            public void completed(Message message) {
+                callback.completed((IdValue) message);
+            }
+
+            @Override
+            public void failed() {
+                callback.failed();
+            }
+        });
+    }
+
+    /**
+     * Get several keys at once. The reply carries the values in the order
+     * of the keys in the request.
+     */
+    public void get(MultiGet request, MultiValueCallback callback) {
+        request(request, callback);
+    }
+
+    /**
+     * List keys by prefix, one page at a time; see {@link Scan}.
+     */
+    public void scan(Scan request, MultiValueCallback callback) {
+        request(request, callback);
+    }
+
+    /**
+     * Get a value as a stream of chunks, so that a large value can be
+     * consumed without holding all of it at once.
+     */
+    public void getChunked(byte[] key, final ChunkCallback callback) {
+        request(new ChunkedGet(key), new ChunkReply() {
+            @Override
+            public void chunk(ValueChunk message) {
+                callback.chunk(message);
+            }
+
+            @Override
+            public void completed(Message message) {
+                callback.completed();
+            }
+
+            @Override
+            public void failed() {
+                callback.failed();
+            }
+        });
+    }
+
+    /**
+     * Get the samples of a key with timestamps from <code>from</code>,
+     * inclusive, to <code>to</code>, exclusive.
+     */
+    public void range(byte[] key, long from, long to, final SamplesCallback callback) {
+        request(new RangeGet(key, from, to), new Reply() {
+            @Override
+            public void completed(Message message) {
+                callback.completed((Samples) message);
+            }
+
+            @Override
+            public void failed() {
+                callback.failed();
+            }
+        });
+    }
+
+    public void set(byte[] key, byte[] value) {
+        send(new Set(key, value));
+    }
+
+    public void set(MultiSet request) {
+        send(request);
+    }
+
+    /**
+     * Set the value of a key defined with {@link #define(byte[])}.
+     */
+    public void set(int id, byte[] value) {
+        send(new IdSet(id, value));
+    }
+
+    /**
+     * Watch a key, or every key that starts with <code>key</code> if
+     * <code>prefix</code> is true. The listener is invoked whenever the
+     * server applies a matching Set.
+     */
+    public void watch(byte[] key, boolean prefix, UpdateListener listener) {
+        subscriptions.add(new Subscription(key, prefix, listener));
+
+        send(new Watch(key, prefix));
+    }
+
+    public void unwatch(byte[] key, boolean prefix) {
+        Iterator<Subscription> iterator = subscriptions.iterator();
+
+        while (iterator.hasNext()) {
+            Subscription subscription = iterator.next();
+
+            if (subscription.prefix == prefix && Arrays.equals(subscription.key, key))
+                iterator.remove();
+        }
+
+        send(new Unwatch(key, prefix));
+    }
+
+    /**
+     * Return the number of requests that have not been answered yet.
+     */
+    public int pending() {
+        return pending.size() + requests.size();
+    }
+
+    public void close() {
+        connection.close();
+    }
+
+    private void request(Message request, final MultiValueCallback callback) {
+        request(request, new Reply() {
+            @Override
+            public void completed(Message message) {
+                callback.completed((MultiValue) message);
+            }
+
+            @Override
+            public void failed() {
+                callback.failed();
+            }
+        });
+    }
+
+    /*
+     * With request IDs, the request is tagged and its reply looked up by
+     * ID. Otherwise replies complete requests in order.
+     */
+    private void request(Message request, Reply reply) {
+        if ((features & Features.REQUEST_IDS) == 0) {
+            pending.add(reply);
+
+            send(request);
+            return;
+        }
+
+        int id = nextRequestId++;
+
+        requests.put(id, reply);
+
+        send(new Tagged(id, request));
+    }
+
+    private void send(Message message) {
+        if (compression != null)
+            message = compression.compress(message);
+
+        connection.send(message.format());
+    }
+
+    private static class Subscription {
+        private final byte[]         key;
+        private final boolean        prefix;
+        private final UpdateListener listener;
+
+        public Subscription(byte[] key, boolean prefix, UpdateListener listener) {
+            this.key      = key;
+            this.prefix   = prefix;
+            this.listener = listener;
+        }
+
+        public boolean matches(byte[] key) {
+            if (prefix ? key.length < this.key.length : key.length != this.key.length)
+                return false;
+
+            for (int i = 0; i < this.key.length; i++) {
+                if (key[i] != this.key[i])
+                    return false;
+            }
+
+            return true;
+        }
+    }
+
+    private interface Reply {
+        void completed(Message message);
+
+        void failed();
+    }
+
+    /*
+     * A reply that arrives in chunks. The empty chunk that ends it
+     * completes it.
+     */
+    private interface ChunkReply extends Reply {
+        void chunk(ValueChunk message);
+    }
+
+    private class Callback implements Connection.Callback<Message>, MessageVisitor {
+        /*
+         * Whether the message being visited is wrapped in a Tagged message,
+         * and the request ID if so.
+         */
+        private boolean tagged;
+        private int     requestId;
+
+        @Override
+        public void connected(Connection<Message> connection) {
+        }
+
+        @Override
+        public void messages(Connection<Message> connection, Iterator<Message> messages) {
+            while (messages.hasNext())
+                messages.next().accept(this);
+        }
+
+        @Override
+        public void closed(Connection<Message> connection) {
+            if (compression != null)
+                compression.end();
+
+            compression = null;
+
+            while (!pending.isEmpty())
+                pending.remove().failed();
+
+            Iterator<Reply> replies = requests.values().iterator();
+
+            while (replies.hasNext()) {
+                Reply reply = replies.next();
+
+                replies.remove();
+
+                reply.failed();
+            }
+
+            listener.closed(WineClient.this);
+        }
+
+        @Override
+        public void garbledMessage(Connection<Message> connection, String message, byte[] data) {
+            connection.close();
+        }
+
+        @Override
+        public void sent(ByteBuffer buffer) {
+        }
+
+        @Override
+        public void visit(Login message) {
+        }
+
+        @Override
+        public void visit(LoginAccepted message) {
+            features = message.features();
+
+            if ((features & Features.COMPRESSION) != 0)
+                compression = new Compression();
+
+            listener.loginAccepted(WineClient.this);
+        }
+
+        @Override
+        public void visit(LoginRejected message) {
+            listener.loginRejected(WineClient.this);
+        }
+
+        @Override
+        public void visit(Get message) {
+        }
+
+        @Override
+        public void visit(Value message) {
+            reply(message);
+        }
+
+        @Override
+        public void visit(Set message) {
+        }
+
+        @Override
+        public void visit(MultiGet message) {
+        }
+
+        @Override
+        public void visit(MultiValue message) {
+            reply(message);
+        }
+
+        @Override
+        public void visit(MultiSet message) {
+        }
+
+        @Override
+        public void visit(Watch message) {
+        }
+
+        @Override
+        public void visit(Unwatch message) {
+        }
+
+        @Override
+        public void visit(Update message) {
+            byte[] key = message.key();
+
+            for (int i = 0; i < subscriptions.size(); i++) {
+                Subscription subscription = subscriptions.get(i);
+
+                if (subscription.matches(key))
+                    subscription.listener.updated(message);
+            }
+        }
+
+        @Override
+        public void visit(SetChunk message) {
+        }
+
+        @Override
+        public void visit(ValueChunk message) {
+            if (message.valueLength() == 0) {
+                reply(message);
+                return;
+            }
+
+            Reply reply = tagged ? requests.get(requestId) : pending.peek();
+            if (reply instanceof ChunkReply)
+                ((ChunkReply) reply).chunk(message);
+        }
+
+        @Override
+        public void visit(ChunkedGet message) {
+        }
+
+        @Override
+        public void visit(RangeGet message) {
+        }
+
+        @Override
+        public void visit(Samples message) {
+            reply(message);
+        }
+
+        @Override
+        public void visit(Scan message) {
+        }
+
+        @Override
+        public void visit(DefineKey message) {
+        }
+
+        @Override
+        public void visit(IdGet message) {
+        }
+
+        @Override
+        public void visit(IdSet message) {
+        }
+
+        @Override
+        public void visit(IdValue message) {
+            reply(message);
+        }
+
+        @Override
+        public void visit(Follow message) {
+        }
+
+        @Override
+        public void visit(Position message) {
+        }
+
+        @Override
+        public void visit(Resend message) {
+        }
+
+        @Override
+        public void visit(Compressed message) {
+        }
+
+        @Override
+        public void visit(Tagged message) {
+            tagged    = true;
+            requestId = message.id();
+
+            try {
+                message.message().accept(this);
+            } finally {
+                tagged = false;
+            }
+        }
+
+        private void reply(Message message) {
+            Reply reply = tagged ? requests.remove(requestId) : pending.poll();
+            if (reply != null)
+                reply.completed(message);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class AgentTest {
+    private static final int PORT = 45682;
+
+    private final Agent agent = new Agent();
+
+    @Test
+    public void readNumber() throws Exception {
+        final AtomicLong counter = new AtomicLong(42);
+
+        agent.register("counter", counter);
+
+        counter.set(-1234567);
+
+        assertEquals(new Value(bytes("counter"), bytes("-1234567")), read("counter"));
+    }
+
+    @Test
+    public void readString() throws Exception {
+        agent.source("name", new Agent.StringSource() {
+            @Override
+            public String get() {
+                return "agent";
+            }
+        });
+
+        assertEquals(new Value(bytes("name"), bytes("agent")), read("name"));
+        assertArrayEquals(bytes("agent"), agent.get(bytes("name")));
+    }
+
+    @Test
+    public void unknownKey() throws Exception {
+        assertFalse(agent.read(bytes("missing"), 7, new Reading()));
+        assertFalse(agent.set(bytes("missing"), 7, bytes("1"), 1));
+    }
+
+    @Test
+    public void setNumber() throws Exception {
+        AtomicLong value = new AtomicLong();
+
+        agent.register("value", value);
+
+        assertTrue(agent.set(bytes("value"), 5, bytes("-17"), 3));
+        assertEquals(-17, value.get());
+
+        assertTrue(agent.set(bytes("value"), 5, bytes("x"), 1));
+        assertEquals(-17, value.get());
+    }
+
+    @Test
+    public void setString() throws Exception {
+        final AtomicReference<String> value = new AtomicReference<String>();
+
+        agent.stringSetter("name", new Agent.StringSetter() {
+            @Override
+            public void set(String newValue) {
+                value.set(newValue);
+            }
+        });
+
+        assertTrue(agent.set(bytes("name"), 4, bytes("agent"), 5));
+        assertEquals("agent", value.get());
+    }
+
+    @Test
+    public void manyKeys() throws Exception {
+        for (int i = 0; i < 100; i++)
+            agent.register("key" + i, new AtomicLong(i));
+
+        agent.remove("key50");
+
+        for (int i = 0; i < 100; i++)
+            assertEquals(i != 50, agent.contains(bytes("key" + i)));
+
+        assertEquals(new Value(bytes("key99"), bytes("99")), read("key99"));
+    }
+
+    @Test
+    public void numberFormatting() throws Exception {
+        long[] numbers = { 0, 7, -7, 10, -10, 999, Long.MAX_VALUE, Long.MIN_VALUE };
+
+        for (long number : numbers) {
+            ByteBuffer buffer = ByteBuffer.allocate(20);
+
+            Reading.format(number, Reading.digits(number), buffer);
+
+            assertEquals(Long.toString(number), new String(buffer.array(), 0, buffer.position(), "US-ASCII"));
+            assertEquals(number, Agent.parseLong(buffer.array(), buffer.position()));
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void numberOverflow() throws Exception {
+        Agent.parseLong(bytes("9223372036854775808"), 19);
+    }
+
+    @Test
+    public void server() throws Exception {
+        final AtomicLong requests = new AtomicLong(5);
+
+        agent.register("requests", requests);
+
+        AgentServer server = new AgentServer(PORT, agent);
+
+        server.start();
+
+        try {
+            BlockingClient client = BlockingClient.connect(new InetSocketAddress("localhost", PORT));
+
+            assertTrue(client.login("foo", "bar"));
+
+            assertArrayEquals(bytes("5"), client.get(bytes("requests")));
+
+            client.set(bytes("requests"), bytes("100"));
+            client.set(bytes("other"), bytes("1"));
+
+            assertArrayEquals(bytes("100"), client.get(bytes("requests")));
+            assertArrayEquals(bytes("1"), client.get(bytes("other")));
+            assertEquals(100, requests.get());
+
+            client.close();
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void failingSetter() throws Exception {
+        agent.longSetter("broken", new Agent.LongSetter() {
+            @Override
+            public void set(long value) {
+                throw new IllegalStateException();
+            }
+        });
+
+        AgentServer server = new AgentServer(PORT, agent);
+
+        server.start();
+
+        try {
+            BlockingClient failing = BlockingClient.connect(new InetSocketAddress("localhost", PORT));
+
+            failing.set(bytes("broken"), bytes("1"));
+
+            try {
+                failing.get(bytes("other"));
+
+                fail();
+            } catch (IOException e) {
+            }
+
+            failing.close();
+
+            BlockingClient client = BlockingClient.connect(new InetSocketAddress("localhost", PORT));
+
+            client.set(bytes("other"), bytes("2"));
+
+            assertArrayEquals(bytes("2"), client.get(bytes("other")));
+            assertEquals(1, server.stats().failures());
+
+            client.close();
+        } finally {
+            server.stop();
+        }
+    }
+
+    private Message read(String key) throws Exception {
+        Reading reading = new Reading();
+
+        assertTrue(agent.read(bytes(key), key.length(), reading));
+
+        return new Parser().parse(ByteBuffer.wrap(reading.format()));
+    }
+
+    private static byte[] bytes(String value) throws Exception {
+        return value.getBytes("US-ASCII");
+    }
+}
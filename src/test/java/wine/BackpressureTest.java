@@ -0,0 +1,236 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Test;
+
+public class BackpressureTest {
+    private static final int PORT = 45685;
+
+    private static final int REQUESTS = 500;
+
+    private static final byte[] KEY = new byte[] { 'k' };
+
+    private TestServer server;
+    private Thread     thread;
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        thread.join();
+    }
+
+    @Test
+    public void pause() throws Exception {
+        start(Backpressure.PAUSE);
+
+        byte[] value = value(0);
+
+        BlockingConnection connection = connect();
+
+        connection.write(new Set(KEY, value));
+
+        for (int i = 0; i < REQUESTS; i++)
+            connection.write(new Get(KEY));
+
+        while (server.stats().pauses() == 0)
+            Thread.sleep(10);
+
+        for (int i = 0; i < REQUESTS; i++)
+            assertEquals(new Value(KEY, value), connection.read());
+
+        assertEquals(0, server.stats().overflowDisconnects());
+
+        connection.close();
+    }
+
+    @Test
+    public void disconnect() throws Exception {
+        start(Backpressure.DISCONNECT);
+
+        BlockingConnection connection = connect();
+
+        connection.write(new Set(KEY, value(0)));
+
+        for (int i = 0; i < REQUESTS; i++)
+            connection.write(new Get(KEY));
+
+        while (server.stats().overflowDisconnects() == 0)
+            Thread.sleep(10);
+
+        int count = 0;
+
+        try {
+            while (connection.read() != null)
+                count++;
+        } catch (IOException e) {
+        }
+
+        assertTrue(count < REQUESTS);
+
+        connection.close();
+    }
+
+    @Test
+    public void deferredBytes() throws Exception {
+        start(Backpressure.PAUSE);
+
+        BlockingConnection connection = connect();
+
+        connection.write(new Set(KEY, value(0)));
+
+        for (int i = 0; i < REQUESTS; i++)
+            connection.write(new Get(KEY));
+
+        while (server.stats().pauses() == 0)
+            Thread.sleep(10);
+
+        byte[] large = new byte[256 * 1024];
+
+        try {
+            for (int i = 0; i < 64; i++)
+                connection.write(new Set(KEY, large));
+        } catch (IOException e) {
+        }
+
+        while (server.stats().overflowDisconnects() == 0)
+            Thread.sleep(10);
+
+        connection.close();
+    }
+
+    @Test
+    public void coalesce() throws Exception {
+        start(Backpressure.COALESCE);
+
+        BlockingConnection watcher = connect();
+
+        watcher.write(new Watch(KEY, false));
+        watcher.write(new Get(KEY));
+
+        assertTrue(watcher.read() instanceof Value);
+
+        BlockingClient client = BlockingClient.connect(new InetSocketAddress("localhost", PORT));
+
+        for (int i = 0; i < REQUESTS; i++)
+            client.set(KEY, value(i));
+
+        client.get(KEY);
+
+        assertTrue(server.stats().coalescedUpdates() > 0);
+
+        int count = 0;
+
+        while (true) {
+            Update update = (Update) watcher.read();
+
+            count++;
+
+            if (Arrays.equals(value(REQUESTS - 1), update.value()))
+                break;
+        }
+
+        assertTrue(count < REQUESTS);
+        assertEquals(0, server.stats().overflowDisconnects());
+
+        client.close();
+        watcher.close();
+    }
+
+    @Test
+    public void chunkedGet() throws Exception {
+        start(Backpressure.DISCONNECT);
+
+        byte[] value = new byte[4 * 1024 * 1024];
+        Arrays.fill(value, (byte) 'v');
+
+        BlockingClient client = BlockingClient.connect(new InetSocketAddress("localhost", PORT));
+
+        client.set(KEY, new ByteArrayInputStream(value));
+
+        client.get(new byte[] { 'x' });
+
+        BlockingConnection connection = connect();
+
+        connection.write(new ChunkedGet(KEY));
+        connection.write(new Get(new byte[] { 'x' }));
+
+        Thread.sleep(100);
+
+        int length = 0;
+
+        while (true) {
+            ValueChunk chunk = (ValueChunk) connection.read();
+            if (chunk.valueLength() == 0)
+                break;
+
+            length += chunk.valueLength();
+        }
+
+        assertEquals(value.length, length);
+        assertTrue(connection.read() instanceof Value);
+        assertEquals(0, server.stats().overflowDisconnects());
+
+        client.close();
+        connection.close();
+    }
+
+    private void start(int policy) throws Exception {
+        server = new TestServer(PORT, new HeapConfigStore(), null, 1, null, new Backpressure(policy, 64 * 1024, REQUESTS * 4));
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                } catch (IOException e) {
+                }
+            }
+        });
+        thread.start();
+    }
+
+    /*
+     * A connection that reads nothing until told to, with a small receive
+     * buffer so that the server runs into its limits early.
+     */
+    private static BlockingConnection connect() throws Exception {
+        Socket socket = new Socket();
+
+        socket.setReceiveBufferSize(4096);
+        socket.connect(new InetSocketAddress("localhost", PORT));
+
+        return new BlockingConnection(socket);
+    }
+
+    private static byte[] value(int seed) {
+        byte[] value = new byte[32 * 1024];
+
+        Arrays.fill(value, (byte) seed);
+
+        value[0] = (byte) (seed >> 8);
+
+        return value;
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import silvertip.Events;
+
+public class BlockingServerTest {
+    private static final int PORT = 45680;
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("localhost", PORT);
+
+    private static BlockingServer server;
+    private static Thread         serverThread;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        server = new BlockingServer(PORT, IndexedConfigStore.of(new StripedConfigStore(64, new StripedConfigStore.Factory() {
+            @Override
+            public ConfigStore create() {
+                return new HeapConfigStore();
+            }
+        })), null, Executors.newCachedThreadPool());
+
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                } catch (IOException e) {
+                }
+            }
+        });
+        serverThread.start();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        server.stop();
+        serverThread.join();
+    }
+
+    @Test
+    public void requests() throws Exception {
+        BlockingClient client = BlockingClient.connect(ADDRESS);
+
+        assertTrue(client.login("foo", "bar"));
+
+        client.set(new byte[] { 'a' }, new byte[] { '1' });
+
+        assertArrayEquals(new byte[] { '1' }, client.get(new byte[] { 'a' }));
+        assertArrayEquals(new byte[] {}, client.get(new byte[] { 'b' }));
+
+        MultiSet request = new MultiSet();
+
+        request.add(new byte[] { 'x' }, new byte[] { '1' });
+        request.add(new byte[] { 'y' }, new byte[] { '2' });
+
+        client.set(request);
+
+        MultiValue expected = new MultiValue();
+
+        expected.add(new byte[] { 'y' }, new byte[] { '2' });
+        expected.add(new byte[] { 'x' }, new byte[] { '1' });
+
+        assertEquals(expected, client.get(new MultiGet(new byte[] { 'y' }, new byte[] { 'x' })));
+
+        client.close();
+    }
+
+    @Test
+    public void largeValue() throws Exception {
+        BlockingClient client = BlockingClient.connect(ADDRESS);
+
+        byte[] value = new byte[100000];
+        for (int i = 0; i < value.length; i++)
+            value[i] = (byte) i;
+
+        client.set(new byte[] { 'l' }, value);
+
+        assertArrayEquals(value, client.get(new byte[] { 'l' }));
+
+        client.close();
+    }
+
+    @Test
+    public void oversizedFrame() throws Exception {
+        Socket socket = new Socket("localhost", PORT);
+
+        socket.setSoTimeout(5000);
+
+        ByteBuffer header = ByteBuffer.allocate(1 + 4 + 4);
+
+        header.put(AbstractMessage.Type.SET);
+        header.putInt(1);
+        header.putInt(Integer.MAX_VALUE - 9);
+
+        OutputStream out = socket.getOutputStream();
+
+        out.write(new Login("foo", "bar").format());
+        out.write(header.array());
+        out.flush();
+
+        InputStream in = socket.getInputStream();
+
+        while (in.read() != -1)
+            ;
+
+        socket.close();
+    }
+
+    @Test
+    public void streamedValue() throws Exception {
+        BlockingClient client = BlockingClient.connect(ADDRESS);
+
+        byte[] value = new byte[1000000];
+        for (int i = 0; i < value.length; i++)
+            value[i] = (byte) i;
+
+        client.set(new byte[] { 's' }, new ByteArrayInputStream(value), 4096);
+
+        InputStream in = client.getStream(new byte[] { 's' });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        byte[] buffer = new byte[1000];
+
+        int count;
+
+        while ((count = in.read(buffer)) > 0)
+            out.write(buffer, 0, count);
+
+        assertArrayEquals(value, out.toByteArray());
+        assertArrayEquals(value, client.get(new byte[] { 's' }));
+
+        client.close();
+    }
+
+    @Test
+    public void streamedEmptyValue() throws Exception {
+        BlockingClient client = BlockingClient.connect(ADDRESS);
+
+        client.set(new byte[] { 'e' }, new ByteArrayInputStream(new byte[0]));
+
+        InputStream in = client.getStream(new byte[] { 'e' });
+
+        assertEquals(-1, in.read());
+
+        in.close();
+
+        assertArrayEquals(new byte[] {}, client.get(new byte[] { 'e' }));
+
+        client.close();
+    }
+
+    @Test
+    public void keyIds() throws Exception {
+        BlockingClient client = BlockingClient.connect(ADDRESS);
+
+        assertTrue(client.login("foo", "bar", Features.KEY_IDS));
+        assertEquals(Features.KEY_IDS, client.features());
+
+        int id = client.define(bytes("agents.host-1.config.refresh-interval"));
+
+        assertEquals(id, client.define(bytes("agents.host-1.config.refresh-interval")));
+        assertEquals(id + 1, client.define(bytes("agents.host-2.config.refresh-interval")));
+
+        client.set(id, bytes("30"));
+
+        assertArrayEquals(bytes("30"), client.get(id));
+        assertArrayEquals(bytes("30"), client.get(bytes("agents.host-1.config.refresh-interval")));
+        assertArrayEquals(new byte[] {}, client.get(id + 1));
+        assertArrayEquals(new byte[] {}, client.get(1000));
+
+        client.close();
+    }
+
+    @Test
+    public void keyIdsWithoutFeature() throws Exception {
+        BlockingClient client = BlockingClient.connect(ADDRESS);
+
+        assertTrue(client.login("foo", "bar"));
+
+        client.set(bytes("ids"), bytes("1"));
+
+        int id = client.define(bytes("ids"));
+
+        assertArrayEquals(new byte[] {}, client.get(id));
+
+        client.close();
+    }
+
+    @Test
+    public void scan() throws Exception {
+        BlockingClient client = BlockingClient.connect(ADDRESS);
+
+        assertTrue(client.login("foo", "bar"));
+
+        client.set(bytes("scan.b"), bytes("2"));
+        client.set(bytes("scan.a"), bytes("1"));
+        client.set(bytes("scan.c"), bytes("3"));
+        client.set(bytes("scanner"), bytes("4"));
+
+        MultiValue expected = new MultiValue();
+
+        expected.add(bytes("scan.a"), bytes("1"));
+        expected.add(bytes("scan.b"), bytes("2"));
+
+        assertEquals(expected, client.scan(new Scan(bytes("scan."), new byte[] {}, 2, true)));
+
+        MultiValue page = client.scan(new Scan(bytes("scan."), bytes("scan.b"), 2, false));
+
+        assertEquals(1, page.size());
+        assertArrayEquals(bytes("scan.c"), page.key(0));
+        assertArrayEquals(new byte[] {}, page.value(0));
+
+        List<byte[]> keys = client.keys(bytes("scan"));
+
+        assertEquals(4, keys.size());
+        assertArrayEquals(bytes("scanner"), keys.get(3));
+
+        client.close();
+    }
+
+    @Test
+    public void stats() throws Exception {
+        BlockingClient client = BlockingClient.connect(ADDRESS);
+
+        assertTrue(client.login("foo", "bar"));
+
+        client.set(new byte[] { 's' }, new byte[] { '1' });
+
+        assertArrayEquals(new byte[] { '1' }, client.get(new byte[] { 's' }));
+
+        assertTrue(stat(client, "messages.get") >= 1);
+        assertTrue(stat(client, "messages.set") >= 1);
+        assertTrue(stat(client, "connections") >= 1);
+        assertTrue(stat(client, "bytes.in") > 0);
+        assertTrue(stat(client, "get.count") >= 1);
+        assertTrue(stat(client, "set.p99") > 0);
+        assertEquals(server.stats().garbledMessages(), stat(client, "garbled"));
+
+        assertArrayEquals(new byte[] {}, client.get(key("unknown")));
+
+        client.set(key("connections"), new byte[] { '0' });
+
+        assertTrue(stat(client, "connections") >= 1);
+
+        client.close();
+    }
+
+    @Test
+    public void multiAndChunkedRequestsAreTimed() throws Exception {
+        BlockingClient client = BlockingClient.connect(ADDRESS);
+
+        long gets = stat(client, "get.count");
+
+        client.get(new MultiGet(new byte[] { 't' }, new byte[] { 'u' }));
+
+        /*
+         * The Get of the first count is timed too.
+         */
+        assertEquals(gets + 2, stat(client, "get.count"));
+
+        long sets = stat(client, "set.count");
+
+        client.set(new byte[] { 't' }, new ByteArrayInputStream(new byte[10000]), 4096);
+
+        assertEquals(sets + 1, stat(client, "set.count"));
+
+        client.close();
+    }
+
+    private static long stat(BlockingClient client, String name) throws IOException {
+        return Long.parseLong(new String(client.get(key(name)), "US-ASCII"));
+    }
+
+    private static byte[] bytes(String value) throws IOException {
+        return value.getBytes("US-ASCII");
+    }
+
+    private static byte[] key(String name) throws IOException {
+        return (Stats.PREFIX + name).getBytes("US-ASCII");
+    }
+
+    @Test
+    public void compression() throws Exception {
+        BlockingClient client = BlockingClient.connect(ADDRESS);
+
+        assertTrue(client.login("foo", "bar", Features.COMPRESSION));
+        assertEquals(Features.COMPRESSION, client.features());
+
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            json.append("{\"route\":").append(i).append(",\"weight\":1.0},");
+
+        byte[] value = json.toString().getBytes("US-ASCII");
+
+        client.set(new byte[] { 'z' }, value);
+
+        assertArrayEquals(value, client.get(new byte[] { 'z' }));
+        assertArrayEquals(new byte[] {}, client.get(new byte[] { 'z', 'z' }));
+
+        client.close();
+    }
+
+    @Test
+    public void manyConnections() throws Exception {
+        List<BlockingClient> clients = new ArrayList<BlockingClient>();
+
+        for (int i = 0; i < 100; i++) {
+            BlockingClient client = BlockingClient.connect(ADDRESS);
+
+            client.set(new byte[] { 'm', (byte) i }, new byte[] { (byte) i });
+
+            clients.add(client);
+        }
+
+        for (int i = 0; i < clients.size(); i++)
+            assertArrayEquals(new byte[] { (byte) i }, clients.get(i).get(new byte[] { 'm', (byte) i }));
+
+        assertTrue(server.connections() >= 100);
+
+        for (BlockingClient client : clients)
+            client.close();
+    }
+
+    @Test
+    public void stalledWatcher() throws Exception {
+        Socket watcher = new Socket("localhost", PORT);
+
+        OutputStream out = watcher.getOutputStream();
+
+        out.write(new Login("foo", "bar").format());
+        out.write(new Watch(new byte[] { 's', '.' }, true).format());
+        out.flush();
+
+        BlockingClient client = BlockingClient.connect(ADDRESS);
+
+        assertTrue(client.login("foo", "bar"));
+
+        long disconnects = server.stats().overflowDisconnects();
+
+        byte[] value = new byte[1024 * 1024];
+
+        /*
+         * The watcher never reads, so its updates back up until it is
+         * disconnected, while the Sets go on.
+         */
+        for (int i = 0; i < 256 && server.stats().overflowDisconnects() == disconnects; i++) {
+            client.set(new byte[] { 's', '.', 'x' }, value);
+
+            assertEquals(value.length, client.get(new byte[] { 's', '.', 'x' }).length);
+        }
+
+        assertEquals(disconnects + 1, server.stats().overflowDisconnects());
+
+        client.close();
+        watcher.close();
+    }
+
+    @Test
+    public void watches() throws Exception {
+        final List<Update> updates = new ArrayList<Update>();
+
+        final boolean[] loginAccepted = new boolean[1];
+
+        Events io = Events.open();
+
+        WineClient watcher = WineClient.connect(ADDRESS, new WineClient.Listener() {
+            @Override
+            public void loginAccepted(WineClient client) {
+                loginAccepted[0] = true;
+            }
+
+            @Override
+            public void loginRejected(WineClient client) {
+            }
+
+            @Override
+            public void closed(WineClient client) {
+            }
+        });
+        watcher.register(io);
+
+        watcher.watch(new byte[] { 'w', '.' }, true, new WineClient.UpdateListener() {
+            @Override
+            public void updated(Update message) {
+                updates.add(message);
+            }
+        });
+
+        /*
+         * The login is answered after the watch is in place.
+         */
+        watcher.login("foo", "bar");
+
+        while (!loginAccepted[0])
+            io.process(100);
+
+        BlockingClient client = BlockingClient.connect(ADDRESS);
+
+        client.set(new byte[] { 'w', '.', 'x' }, new byte[] { '1' });
+
+        while (updates.isEmpty())
+            io.process(100);
+
+        assertEquals(new Update(new byte[] { 'w', '.', 'x' }, new byte[] { '1' }), updates.get(0));
+
+        client.close();
+        watcher.close();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import silvertip.GarbledMessageException;
+
+public class CompressionTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final Compression compression = new Compression(64, 6);
+
+    @Test
+    public void roundTrip() throws Exception {
+        Value message = new Value(new byte[] { 'k' }, text(4096));
+
+        Message compressed = compression.compress(message);
+
+        assertTrue(compressed instanceof Compressed);
+        assertTrue(compressed.length() < message.length());
+
+        assertEquals(message, new Parser().parse(ByteBuffer.wrap(compressed.format())));
+    }
+
+    @Test
+    public void belowThreshold() throws Exception {
+        Value message = new Value(new byte[] { 'k' }, text(63));
+
+        assertSame(message, compression.compress(message));
+    }
+
+    @Test
+    public void incompressibleValue() throws Exception {
+        byte[] value = new byte[4096];
+
+        new Random(0).nextBytes(value);
+
+        Set message = new Set(new byte[] { 'k' }, value);
+
+        assertSame(message, compression.compress(message));
+    }
+
+    @Test
+    public void otherMessages() throws Exception {
+        Get message = new Get(text(4096));
+
+        assertSame(message, compression.compress(message));
+    }
+
+    @Test
+    public void invalidCompressedValue() throws Exception {
+        thrown.expect(GarbledMessageException.class);
+        thrown.expectMessage("Invalid compressed value");
+
+        Compressed message = new Compressed();
+
+        message.set((byte) 'V', new byte[] { 'k' }, 1, new byte[] { 1, 2, 3 }, 3, 10);
+
+        new Parser().parse(ByteBuffer.wrap(message.format()));
+    }
+
+    @Test
+    public void implausibleOriginalLength() throws Exception {
+        thrown.expect(GarbledMessageException.class);
+        thrown.expectMessage("Invalid field length");
+
+        Compressed message = new Compressed();
+
+        message.set((byte) 'V', new byte[] { 'k' }, 1, new byte[] { 1, 2, 3 }, 3, Integer.MAX_VALUE);
+
+        new Parser().parse(ByteBuffer.wrap(message.format()));
+    }
+
+    private static byte[] text(int length) {
+        byte[] text = new byte[length];
+
+        for (int i = 0; i < length; i++)
+            text[i] = (byte) "config=value;".charAt(i % 13);
+
+        return text;
+    }
+}
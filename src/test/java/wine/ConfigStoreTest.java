@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@RunWith(Parameterized.class)
+public class ConfigStoreTest {
+    private interface Factory {
+        ConfigStore create();
+    }
+
+    private final ConfigStore store;
+
+    public ConfigStoreTest(Factory factory) {
+        this.store = factory.create();
+    }
+
+    @Parameters
+    public static Collection<Object[]> stores() {
+        Factory heap = new Factory() {
+            @Override
+            public ConfigStore create() {
+                return new HeapConfigStore();
+            }
+        };
+
+        Factory offHeap = new Factory() {
+            @Override
+            public ConfigStore create() {
+                return new OffHeapConfigStore(1, 16);
+            }
+        };
+
+        Factory striped = new Factory() {
+            @Override
+            public ConfigStore create() {
+                return new StripedConfigStore(4, new StripedConfigStore.Factory() {
+                    @Override
+                    public ConfigStore create() {
+                        return new OffHeapConfigStore(1, 16);
+                    }
+                });
+            }
+        };
+
+        return Arrays.asList(new Object[][] { { heap }, { offHeap }, { striped } });
+    }
+
+    @Test
+    public void missingKey() throws Exception {
+        assertNull(get("foo"));
+        assertEquals(-1, store.valueLength(bytes("foo"), 0, 3));
+    }
+
+    @Test
+    public void putAndGet() throws Exception {
+        put("foo", "bar");
+        put("", "empty");
+
+        assertEquals("bar", get("foo"));
+        assertEquals("empty", get(""));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void keyRange() throws Exception {
+        store.put(bytes("xfoox"), 1, 3, bytes("xbarx"), 1, 3);
+
+        assertEquals("bar", new String(store.get(bytes("foo"), 0, 3), "US-ASCII"));
+        assertArrayEquals(bytes("bar"), store.get(bytes("afoo"), 1, 3));
+    }
+
+    @Test
+    public void overwrite() throws Exception {
+        put("foo", "quux");
+        put("foo", "bar");
+
+        assertEquals("bar", get("foo"));
+
+        put("foo", "a longer value");
+
+        assertEquals("a longer value", get("foo"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void getIntoBuffer() throws Exception {
+        put("foo", "bar");
+
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+
+        assertEquals(3, store.get(bytes("foo"), 0, 3, buffer));
+        assertEquals(-1, store.get(bytes("baz"), 0, 3, buffer));
+        assertEquals(3, buffer.position());
+    }
+
+    @Test
+    public void manyKeys() throws Exception {
+        for (int i = 0; i < 10000; i++)
+            put("key" + i, "value" + i);
+
+        for (int i = 0; i < 10000; i += 2)
+            put("key" + i, "new value" + i);
+
+        for (int i = 0; i < 10000; i++)
+            assertEquals((i % 2 == 0 ? "new value" : "value") + i, get("key" + i));
+
+        assertEquals(10000, store.size());
+    }
+
+    private void put(String key, String value) throws Exception {
+        byte[] keyBytes   = bytes(key);
+        byte[] valueBytes = bytes(value);
+
+        store.put(keyBytes, 0, keyBytes.length, valueBytes, 0, valueBytes.length);
+    }
+
+    private String get(String key) throws Exception {
+        byte[] keyBytes = bytes(key);
+        byte[] value    = store.get(keyBytes, 0, keyBytes.length);
+
+        return value != null ? new String(value, "US-ASCII") : null;
+    }
+
+    private static byte[] bytes(String value) {
+        try {
+            return value.getBytes("US-ASCII");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class EventLoopTest {
+    private static final long TIMEOUT = 10000;
+
+    @Test
+    public void executeWakesTheLoop() throws Exception {
+        EventLoop loop = new EventLoop(TIMEOUT);
+
+        Thread thread = new Thread(loop);
+        thread.start();
+
+        for (int i = 0; i < 3; i++) {
+            final CountDownLatch done = new CountDownLatch(1);
+
+            loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+
+            assertTrue(done.await(TIMEOUT / 10, TimeUnit.MILLISECONDS));
+        }
+
+        loop.stop();
+
+        thread.join(TIMEOUT / 10);
+
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void failedTaskLeavesTheLoopRunning() throws Exception {
+        Stats     stats = new Stats();
+        EventLoop loop  = new EventLoop(TIMEOUT, stats);
+
+        Thread thread = new Thread(loop);
+        thread.start();
+
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        });
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(TIMEOUT / 10, TimeUnit.MILLISECONDS));
+        assertEquals(1, stats.failures());
+
+        loop.stop();
+
+        thread.join(TIMEOUT / 10);
+    }
+}
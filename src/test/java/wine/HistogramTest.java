@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HistogramTest {
+    private final Histogram histogram = new Histogram();
+
+    @Test
+    public void empty() {
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(0.99));
+    }
+
+    @Test
+    public void percentiles() {
+        for (int i = 0; i < 99; i++)
+            histogram.record(1000);
+
+        histogram.record(1000000);
+
+        assertEquals(100, histogram.count());
+        assertEquals(1000000, histogram.max());
+
+        assertTrue(histogram.percentile(0.5) >= 1000);
+        assertTrue(histogram.percentile(0.5) < 2000);
+        assertTrue(histogram.percentile(0.99) < 2000);
+        assertEquals(1000000, histogram.percentile(0.999));
+    }
+
+    @Test
+    public void zeroAndNegative() {
+        histogram.record(0);
+        histogram.record(-1);
+
+        assertEquals(2, histogram.count());
+        assertEquals(0, histogram.percentile(1.0));
+    }
+}
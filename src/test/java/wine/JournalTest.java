@@ -0,0 +1,238 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalTest {
+    private static final int PORT = 45690;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("wine", "journal");
+
+        assertTrue(directory.delete());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+
+        directory.delete();
+    }
+
+    @Test
+    public void replay() throws Exception {
+        ConfigStore store   = new HeapConfigStore();
+        Journal     journal = new Journal(directory, store, 1024, 1, 16);
+
+        set(journal, store, "foo", "bar");
+        set(journal, store, "foo", "baz");
+
+        MultiSet message = new MultiSet();
+
+        message.add(new byte[] { 'a' }, new byte[] { '1' });
+        message.add(new byte[] { 'b' }, new byte[] { '2' });
+
+        journal.append(message);
+
+        ConfigStore recovered = recover();
+
+        assertEquals(3, recovered.size());
+        assertArrayEquals("baz".getBytes("US-ASCII"), recovered.get("foo".getBytes("US-ASCII"), 0, 3));
+        assertArrayEquals(new byte[] { '2' }, recovered.get(new byte[] { 'b' }, 0, 1));
+    }
+
+    @Test
+    public void rollAndCompact() throws Exception {
+        ConfigStore store   = new OffHeapConfigStore();
+        Journal     journal = new Journal(directory, store, 64, 0, 3);
+
+        for (int i = 0; i < 100; i++)
+            set(journal, store, "key" + (i % 10), "value" + i);
+
+        journal.close();
+        journal.compact();
+
+        assertEquals(2, directory.list().length);
+
+        ConfigStore recovered = recover();
+
+        assertEquals(10, recovered.size());
+
+        for (int i = 0; i < 10; i++)
+            assertArrayEquals(("value" + (90 + i)).getBytes("US-ASCII"), recovered.get(("key" + i).getBytes("US-ASCII"), 0, 4));
+    }
+
+    @Test
+    public void compactInBackground() throws Exception {
+        ConfigStore store = new StripedConfigStore(4, new StripedConfigStore.Factory() {
+            @Override
+            public ConfigStore create() {
+                return new HeapConfigStore();
+            }
+        });
+
+        Journal journal = new Journal(directory, store, 1024, 0, 2);
+
+        for (int i = 0; i < 10000; i++)
+            set(journal, store, "key" + (i % 1000), "value" + i);
+
+        journal.close();
+
+        ConfigStore recovered = recover();
+
+        assertEquals(1000, recovered.size());
+
+        for (int i = 0; i < 1000; i++)
+            assertArrayEquals(("value" + (9000 + i)).getBytes("US-ASCII"), recovered.get(("key" + i).getBytes("US-ASCII"), 0, ("key" + i).length()));
+    }
+
+    @Test
+    public void largeMessage() throws Exception {
+        ConfigStore store   = new HeapConfigStore();
+        Journal     journal = new Journal(directory, store, 64, 0, 16);
+
+        set(journal, store, "foo", new String(new char[1000]).replace('\0', 'x'));
+
+        assertEquals(1000, recover().valueLength("foo".getBytes("US-ASCII"), 0, 3));
+    }
+
+    @Test
+    public void tornFrame() throws Exception {
+        ConfigStore store   = new HeapConfigStore();
+        Journal     journal = new Journal(directory, store, 1024, 1, 16);
+
+        set(journal, store, "foo", "bar");
+        set(journal, store, "foo", "bazbaz");
+
+        journal.close();
+
+        /*
+         * The second frame starts after the first and its checksum. Lose
+         * part of its value, as if its page never reached the disk.
+         */
+        RandomAccessFile segment = new RandomAccessFile(new File(directory, "0000000000000001.journal"), "rw");
+        try {
+            segment.seek((1 + 4 + 4 + 3 + 3 + 4) + (1 + 4 + 4 + 3) + 3);
+            segment.write(new byte[3]);
+        } finally {
+            segment.close();
+        }
+
+        assertArrayEquals("bar".getBytes("US-ASCII"), recover().get("foo".getBytes("US-ASCII"), 0, 3));
+    }
+
+    @Test
+    public void unfinishedSnapshot() throws Exception {
+        assertTrue(directory.mkdirs());
+
+        File tmp = new File(directory, "0000000000000005.snapshot.tmp");
+
+        assertTrue(tmp.createNewFile());
+
+        recover();
+
+        assertFalse(tmp.exists());
+    }
+
+    @Test
+    public void failedAppend() throws Exception {
+        ConfigStore store   = new HeapConfigStore();
+        Journal     journal = new Journal(directory, store, 64, 0, 16);
+
+        final TestServer server = new TestServer(PORT, store, journal);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                } catch (IOException e) {
+                }
+            }
+        });
+        thread.start();
+
+        try {
+            BlockingClient client = BlockingClient.connect(new InetSocketAddress("localhost", PORT));
+
+            client.set("foo".getBytes("US-ASCII"), "bar".getBytes("US-ASCII"));
+
+            assertArrayEquals("bar".getBytes("US-ASCII"), client.get("foo".getBytes("US-ASCII")));
+
+            /*
+             * The next segment cannot be created without the directory.
+             */
+            tearDown();
+
+            client.set("foo".getBytes("US-ASCII"), new byte[100]);
+
+            try {
+                client.get("foo".getBytes("US-ASCII"));
+
+                fail();
+            } catch (IOException e) {
+            }
+
+            client.close();
+
+            client = BlockingClient.connect(new InetSocketAddress("localhost", PORT));
+
+            assertArrayEquals("bar".getBytes("US-ASCII"), client.get("foo".getBytes("US-ASCII")));
+            assertEquals(1, server.stats().failures());
+
+            client.close();
+        } finally {
+            server.stop();
+            thread.join();
+        }
+    }
+
+    private ConfigStore recover() throws Exception {
+        ConfigStore store = new HeapConfigStore();
+
+        new Journal(directory, store);
+
+        return store;
+    }
+
+    private void set(Journal journal, ConfigStore store, String key, String value) throws Exception {
+        Set message = new Set(key.getBytes("US-ASCII"), value.getBytes("US-ASCII"));
+
+        synchronized (journal) {
+            journal.append(message);
+
+            store.put(message.key(), 0, message.key().length, message.value(), 0, message.value().length);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+
+public class KeyIndexTest {
+    private final KeyIndex index = new KeyIndex();
+
+    @Test
+    public void prefix() {
+        add("b", "ab", "a", "abc", "ac");
+
+        assertEquals(list("ab", "abc"), keys("ab", ""));
+        assertEquals(list("a", "ab", "abc", "ac"), keys("a", ""));
+        assertEquals(list("a", "ab", "abc", "ac", "b"), keys("", ""));
+        assertEquals(list(), keys("c", ""));
+    }
+
+    @Test
+    public void after() {
+        add("a1", "a2", "a3", "b1");
+
+        assertEquals(list("a2", "a3"), keys("a", "a1"));
+        assertEquals(list("a2", "a3"), keys("a", "a10"));
+        assertEquals(list(), keys("a", "a3"));
+        assertEquals(list("a1", "a2", "a3"), keys("a", "0"));
+    }
+
+    @Test
+    public void unsignedOrder() {
+        index.add(new byte[] { (byte) 0xff }, 0, 1);
+        index.add(new byte[] { 0x7f }, 0, 1);
+
+        Iterator<byte[]> keys = index.keys(new byte[0], new byte[0]);
+
+        assertArrayEquals(new byte[] { 0x7f }, keys.next());
+        assertArrayEquals(new byte[] { (byte) 0xff }, keys.next());
+    }
+
+    @Test
+    public void duplicates() {
+        add("a", "a");
+
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void indexedStore() {
+        HeapConfigStore config = new HeapConfigStore();
+
+        config.put(bytes("x"), 0, 1, bytes("1"), 0, 1);
+
+        IndexedConfigStore store = IndexedConfigStore.of(config);
+
+        store.put(bytes("-y-"), 1, 1, bytes("2"), 0, 1);
+
+        Iterator<byte[]> keys = store.keys(new byte[0], new byte[0]);
+
+        assertArrayEquals(bytes("x"), keys.next());
+        assertArrayEquals(bytes("y"), keys.next());
+        assertFalse(keys.hasNext());
+
+        assertSame(store, IndexedConfigStore.of(store));
+    }
+
+    private void add(String... keys) {
+        for (String key : keys)
+            index.add(bytes(key), 0, key.length());
+    }
+
+    private List<String> keys(String prefix, String after) {
+        List<String> keys = new ArrayList<String>();
+
+        Iterator<byte[]> iterator = index.keys(bytes(prefix), bytes(after));
+
+        while (iterator.hasNext())
+            keys.add(new String(iterator.next()));
+
+        return keys;
+    }
+
+    private static List<String> list(String... values) {
+        List<String> list = new ArrayList<String>();
+
+        for (String value : values)
+            list.add(value);
+
+        return list;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class MessagePoolTest {
+    private final MessagePool pool   = new MessagePool();
+    private final Parser      parser = new Parser(pool);
+
+    @Test
+    public void releasedMessageIsReused() throws Exception {
+        Message first = parse(new Get(new byte[] { 'f', 'o', 'o' }));
+
+        pool.release(first);
+
+        Message second = parse(new Get(new byte[] { 'b', 'a', 'r' }));
+
+        assertSame(first, second);
+        assertEquals(new Get(new byte[] { 'b', 'a', 'r' }), second);
+    }
+
+    @Test
+    public void unreleasedMessageIsNotReused() throws Exception {
+        Message first  = parse(new Get(new byte[] { 'f', 'o', 'o' }));
+        Message second = parse(new Get(new byte[] { 'b', 'a', 'r' }));
+
+        assertNotSame(first, second);
+        assertEquals(new Get(new byte[] { 'f', 'o', 'o' }), first);
+    }
+
+    @Test
+    public void arraysGrowOnlyForLargerPayloads() throws Exception {
+        Set first = (Set) parse(new Set(new byte[] { 'f', 'o', 'o' }, new byte[] { 'q', 'u', 'u', 'x' }));
+
+        byte[] keyArray = first.keyArray();
+
+        pool.release(first);
+
+        Set second = (Set) parse(new Set(new byte[] { 'a' }, new byte[] { 'b', 'c', 'd', 'e', 'f' }));
+
+        assertSame(keyArray, second.keyArray());
+        assertEquals(1, second.keyLength());
+        assertArrayEquals(new byte[] { 'a' }, second.key());
+        assertArrayEquals(new byte[] { 'b', 'c', 'd', 'e', 'f' }, second.value());
+        assertEquals(new Set(new byte[] { 'a' }, new byte[] { 'b', 'c', 'd', 'e', 'f' }), second);
+        assertEquals(new Set(new byte[] { 'a' }, new byte[] { 'b', 'c', 'd', 'e', 'f' }).hashCode(), second.hashCode());
+    }
+
+    @Test
+    public void callerArraysAreNotOverwritten() throws Exception {
+        byte[] key = new byte[] { 'f', 'o', 'o' };
+
+        Get message = (Get) parse(new Get(new byte[] { 'b', 'a', 'r' }));
+
+        message.key(key);
+
+        pool.release(message);
+
+        parse(new Get(new byte[] { 'b', 'a', 'z' }));
+
+        assertArrayEquals(new byte[] { 'f', 'o', 'o' }, key);
+    }
+
+    @Test
+    public void loginRoundTripDoesNotAllocate() throws Exception {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        assumeTrue(threads instanceof ThreadMXBean);
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        Login         login         = new Login("foo", "bar");
+        LoginAccepted loginAccepted = new LoginAccepted();
+
+        for (int i = 0; i < 10000; i++)
+            loginRoundTrip(buffer, login, loginAccepted);
+
+        long threadId = Thread.currentThread().getId();
+
+        long before = ((ThreadMXBean) threads).getThreadAllocatedBytes(threadId);
+
+        for (int i = 0; i < 1000; i++)
+            loginRoundTrip(buffer, login, loginAccepted);
+
+        long after = ((ThreadMXBean) threads).getThreadAllocatedBytes(threadId);
+
+        /*
+         * Measuring allocates a little itself, so check that it is no
+         * more than for an empty measurement.
+         */
+        long overhead = ((ThreadMXBean) threads).getThreadAllocatedBytes(threadId) - after;
+
+        assertTrue(after - before <= overhead);
+    }
+
+    /*
+     * The client formats a Login, the server parses it and formats the
+     * reply, and the client parses that.
+     */
+    private void loginRoundTrip(ByteBuffer buffer, Login login, LoginAccepted loginAccepted) throws Exception {
+        buffer.clear();
+        login.format(buffer);
+        buffer.flip();
+
+        Login request = (Login) parser.parse(buffer);
+
+        if (!request.usernameEquals("foo"))
+            fail();
+
+        pool.release(request);
+
+        buffer.clear();
+        loginAccepted.format(buffer);
+        buffer.flip();
+
+        pool.release(parser.parse(buffer));
+    }
+
+    private Message parse(Message message) throws Exception {
+        return parser.parse(ByteBuffer.wrap(message.format()));
+    }
+
+}
@@ -48,6 +48,58 @@ public class MessageTest {
         assertEquals(expected, parse(message));
     }
 
+    @Test
+    public void loginWithFeaturesFormatting() throws Exception {
+        Login  message  = new Login("foo", "bar", Features.COMPRESSION);
+        String expected = "lfoo     bar                 \u0000\u0000\u0000\u0001";
+
+        assertEquals(expected, format(message));
+    }
+
+    @Test
+    public void loginWithFeaturesParsing() throws Exception {
+        Login message = (Login) parse("lfoo     bar                 \u0000\u0000\u0000\u0001");
+
+        assertEquals(new Login("foo", "bar", Features.COMPRESSION), message);
+        assertEquals(Features.COMPRESSION, message.features());
+        assertEquals(0, ((Login) parse("Lfoo     bar                 ")).features());
+    }
+
+    @Test
+    public void loginAcceptedWithFeatures() throws Exception {
+        assertEquals("a\u0000\u0000\u0000\u0001", format(new LoginAccepted(Features.COMPRESSION)));
+        assertEquals(new LoginAccepted(Features.COMPRESSION), parse("a\u0000\u0000\u0000\u0001"));
+        assertFalse(new LoginAccepted(Features.COMPRESSION).equals(new LoginAccepted()));
+    }
+
+    @Test
+    public void loginUsernameComparison() throws Exception {
+        Login message = (Login) parse("Lfoo     bar                 ");
+
+        assertTrue(message.usernameEquals("foo"));
+        assertFalse(message.usernameEquals("fo"));
+        assertFalse(message.usernameEquals("fooo"));
+        assertFalse(message.usernameEquals("bar"));
+    }
+
+    @Test
+    public void parsedLoginFormatting() throws Exception {
+        Login message = (Login) parse("L  foo   bar                 ");
+
+        assertEquals("foo", message.username());
+        assertEquals("Lfoo     bar                 ", format(message));
+    }
+
+    @Test
+    public void longUsernameFormatting() throws Exception {
+        assertEquals("Lusernamebar                 ", format(new Login("username12", "bar")));
+    }
+
+    @Test
+    public void nonAsciiUsernameFormatting() throws Exception {
+        assertEquals("Lf?o     bar                 ", format(new Login("f\u00f6o", "bar")));
+    }
+
     @Test
     public void loginAcceptedFormatting() throws Exception {
         assertEquals("A", format(new LoginAccepted()));
@@ -164,6 +216,204 @@ public class MessageTest {
         assertEquals(expected, parse(message));
     }
 
+    @Test
+    public void multiGetFormatting() throws Exception {
+        MultiGet message  = new MultiGet(new byte[] { 'f', 'o', 'o' }, new byte[] { 'b' });
+        byte[]   expected = new byte[] { 'g', 0, 0, 0, 2, 0, 0, 0, 3, 'f', 'o', 'o', 0, 0, 0, 1, 'b' };
+
+        assertArrayEquals(expected, format(message));
+    }
+
+    @Test
+    public void multiGetParsing() throws Exception {
+        byte[]  message  = new byte[] { 'g', 0, 0, 0, 2, 0, 0, 0, 3, 'f', 'o', 'o', 0, 0, 0, 1, 'b' };
+        Message expected = new MultiGet(new byte[] { 'f', 'o', 'o' }, new byte[] { 'b' });
+
+        assertEquals(expected, parse(message));
+    }
+
+    @Test
+    public void multiSetFormatting() throws Exception {
+        MultiSet message  = new MultiSet();
+        byte[]   expected = new byte[] { 's', 0, 0, 0, 2, 0, 0, 0, 1, 0, 0, 0, 2, 'f', 'q', 'u', 0, 0, 0, 1, 0, 0, 0, 0, 'b' };
+
+        message.add(new byte[] { 'f' }, new byte[] { 'q', 'u' });
+        message.add(new byte[] { 'b' }, new byte[] {});
+
+        assertArrayEquals(expected, format(message));
+    }
+
+    @Test
+    public void multiValueParsing() throws Exception {
+        byte[]     message  = new byte[] { 'v', 0, 0, 0, 2, 0, 0, 0, 1, 0, 0, 0, 2, 'f', 'q', 'u', 0, 0, 0, 1, 0, 0, 0, 0, 'b' };
+        MultiValue expected = new MultiValue();
+
+        expected.add(new byte[] { 'f' }, new byte[] { 'q', 'u' });
+        expected.add(new byte[] { 'b' }, new byte[] {});
+
+        assertEquals(expected, parse(message));
+    }
+
+    @Test
+    public void partialMultiGet() throws Exception {
+        thrown.expect(PartialMessageException.class);
+
+        parse(new byte[] { 'g', 0, 0, 0, 2, 0, 0, 0, 3, 'f', 'o', 'o' });
+    }
+
+    @Test
+    public void watchFormatting() throws Exception {
+        Watch  message  = new Watch(new byte[] { 'f', 'o' }, true);
+        byte[] expected = new byte[] { 'W', 1, 0, 0, 0, 2, 'f', 'o' };
+
+        assertArrayEquals(expected, format(message));
+    }
+
+    @Test
+    public void unwatchParsing() throws Exception {
+        byte[]  message  = new byte[] { 'w', 0, 0, 0, 0, 2, 'f', 'o' };
+        Message expected = new Unwatch(new byte[] { 'f', 'o' }, false);
+
+        assertEquals(expected, parse(message));
+    }
+
+    @Test
+    public void updateParsing() throws Exception {
+        byte[]  message  = new byte[] { 'U', 0, 0, 0, 1, 0, 0, 0, 1, 'f', 'q' };
+        Message expected = new Update(new byte[] { 'f' }, new byte[] { 'q' });
+
+        assertEquals(expected, parse(message));
+    }
+
+    @Test
+    public void setChunkFormatting() throws Exception {
+        SetChunk message  = new SetChunk(new byte[] { 'f' }, new byte[] { 'q' });
+        byte[]   expected = new byte[] { 'C', 0, 0, 0, 1, 0, 0, 0, 1, 'f', 'q' };
+
+        assertArrayEquals(expected, format(message));
+    }
+
+    @Test
+    public void valueChunkParsing() throws Exception {
+        byte[]  message  = new byte[] { 'c', 0, 0, 0, 1, 0, 0, 0, 0, 'f' };
+        Message expected = new ValueChunk(new byte[] { 'f' }, new byte[] {});
+
+        assertEquals(expected, parse(message));
+    }
+
+    @Test
+    public void chunkedGetParsing() throws Exception {
+        byte[]  message  = new byte[] { 'R', 0, 0, 0, 1, 'f' };
+        Message expected = new ChunkedGet(new byte[] { 'f' });
+
+        assertEquals(expected, parse(message));
+        assertFalse(expected.equals(new Get(new byte[] { 'f' })));
+    }
+
+    @Test
+    public void rangeGetFormatting() throws Exception {
+        RangeGet message  = new RangeGet(new byte[] { 'f' }, 1, 2);
+        byte[]   expected = new byte[] { 'H', 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 2, 'f' };
+
+        assertArrayEquals(expected, format(message));
+        assertEquals(message, parse(expected));
+    }
+
+    @Test
+    public void samplesParsing() throws Exception {
+        byte[]  message  = new byte[] { 'h', 0, 0, 0, 1, 0, 0, 0, 1, 'f', 0, 0, 0, 0, 0, 0, 0, 3, -1, -1, -1, -1, -1, -1, -1, -1 };
+        Samples expected = new Samples(new byte[] { 'f' });
+
+        expected.add(3, -1);
+
+        assertEquals(expected, parse(message));
+        assertArrayEquals(message, format(expected));
+    }
+
+    @Test
+    public void scanFormatting() throws Exception {
+        Scan   message  = new Scan(new byte[] { 'f' }, new byte[] { 'f', 'o' }, 2, true);
+        byte[] expected = new byte[] { 'K', 1, 0, 0, 0, 2, 0, 0, 0, 1, 0, 0, 0, 2, 'f', 'f', 'o' };
+
+        assertArrayEquals(expected, format(message));
+        assertEquals(message, parse(expected));
+    }
+
+    @Test
+    public void keyIdFormatting() throws Exception {
+        assertArrayEquals(new byte[] { 'D', 0, 0, 0, 7, 0, 0, 0, 1, 'f' }, format(new DefineKey(7, new byte[] { 'f' })));
+        assertArrayEquals(new byte[] { 'i', 0, 0, 0, 7 }, format(new IdGet(7)));
+        assertArrayEquals(new byte[] { 'I', 0, 0, 0, 7, 0, 0, 0, 1, 'q' }, format(new IdSet(7, new byte[] { 'q' })));
+    }
+
+    @Test
+    public void idValueParsing() throws Exception {
+        byte[]  message  = new byte[] { 'd', 0, 0, 1, 0, 0, 0, 0, 2, 'q', 'u' };
+        Message expected = new IdValue(256, new byte[] { 'q', 'u' });
+
+        assertEquals(expected, parse(message));
+        assertFalse(expected.equals(new IdSet(256, new byte[] { 'q', 'u' })));
+    }
+
+    @Test
+    public void taggedFormatting() throws Exception {
+        assertArrayEquals(new byte[] { 'T', 0, 0, 0, 7, 'i', 0, 0, 0, 1 }, format(new Tagged(7, new IdGet(1))));
+    }
+
+    @Test
+    public void taggedParsing() throws Exception {
+        byte[]  message  = new byte[] { 'T', 0, 0, 1, 0, 'V', 0, 0, 0, 1, 0, 0, 0, 1, 'a', 'b' };
+        Message expected = new Tagged(256, new Value(new byte[] { 'a' }, new byte[] { 'b' }));
+
+        assertEquals(expected, parse(message));
+        assertFalse(expected.equals(new Tagged(257, new Value(new byte[] { 'a' }, new byte[] { 'b' }))));
+    }
+
+    @Test(expected = GarbledMessageException.class)
+    public void nestedTagged() throws Exception {
+        parse(new Tagged(1, new Tagged(2, new IdGet(3))).format());
+    }
+
+    @Test
+    public void followFormatting() throws Exception {
+        assertArrayEquals(new byte[] { 'F', 0, 0, 0, 0, 0, 0, 1, 0 }, format(new Follow(256)));
+        assertArrayEquals(new byte[] { 'F', -1, -1, -1, -1, -1, -1, -1, -1 }, format(new Follow(Follow.NONE)));
+    }
+
+    @Test
+    public void positionParsing() throws Exception {
+        byte[] message = new byte[] { 'P', 0, 0, 0, 0, 0, 0, 0, 3, 0, 0, 0, 0, 0, 0, 1, 0 };
+
+        assertEquals(new Position(3, 256), parse(message));
+    }
+
+    @Test
+    public void resendParsing() throws Exception {
+        byte[] message = new byte[] { 'r', 0, 0, 0, 0, 0, 0, 0, 42, 0, 0, 0, 0, 0, 0, 0, 3, 0, 0, 0, 0, 0, 0, 0, 5 };
+
+        assertEquals(new Resend(42, 3, 5), parse(message));
+    }
+
+    @Test
+    public void equality() throws Exception {
+        Message message = new Set(new byte[] { 'f', 'o', 'o' }, new byte[] { 'q', 'u', 'u', 'x' });
+
+        assertEquals(new Set(new byte[] { 'f', 'o', 'o' }, new byte[] { 'q', 'u', 'u', 'x' }), message);
+        assertEquals(new Set(new byte[] { 'f', 'o', 'o' }, new byte[] { 'q', 'u', 'u', 'x' }).hashCode(), message.hashCode());
+        assertFalse(message.equals(new Set(new byte[] { 'f', 'o', 'o' }, new byte[] { 'q', 'u', 'u' })));
+        assertFalse(message.equals(new Value(new byte[] { 'f', 'o', 'o' }, new byte[] { 'q', 'u', 'u', 'x' })));
+        assertFalse(new Login("foo", "bar").equals(new Login("foo", "baz")));
+        assertFalse(new LoginAccepted().equals(new LoginRejected()));
+    }
+
+    @Test
+    public void stringRepresentation() throws Exception {
+        assertEquals("Login(foo,bar)", new Login("foo", "bar").toString());
+        assertEquals("LoginAccepted()", new LoginAccepted().toString());
+        assertEquals("Get([102])", new Get(new byte[] { 'f' }).toString());
+        assertEquals("Value([102],[113])", new Value(new byte[] { 'f' }, new byte[] { 'q' }).toString());
+    }
+
     @Test
     public void partialMessageWithoutMessageType() throws Exception {
         thrown.expect(PartialMessageException.class);
@@ -199,6 +449,28 @@ public class MessageTest {
         parse(new byte[] { 'G', 0, 0, 0, 3, 'f', 'o' });
     }
 
+    @Test
+    public void partialMessageLeavesPositionUnchanged() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 'S', 0, 0, 0, 1, 0x7f, 0, 0, 0, 'f' });
+
+        try {
+            new Parser().parse(buffer);
+
+            fail();
+        } catch (PartialMessageException e) {
+        }
+
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void negativeFieldLength() throws Exception {
+        thrown.expect(GarbledMessageException.class);
+        thrown.expectMessage("Invalid field length -1");
+
+        parse(new byte[] { 'G', -1, -1, -1, -1 });
+    }
+
     @Test
     public void unknownMessageType() throws Exception {
         thrown.expect(GarbledMessageException.class);
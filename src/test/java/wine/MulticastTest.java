@@ -0,0 +1,254 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MulticastTest {
+    private static final int PORT = 45686;
+
+    private static final InetSocketAddress GROUP  = new InetSocketAddress("239.255.42.99", 45687);
+    private static final InetSocketAddress SERVER = new InetSocketAddress("localhost", PORT);
+
+    private final IndexedConfigStore config = IndexedConfigStore.of(new HeapConfigStore());
+    private final HeapConfigStore    copy   = new HeapConfigStore();
+
+    private TestServer server;
+    private Thread     thread;
+
+    private MulticastReceiver receiver;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestServer(PORT, config);
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                } catch (IOException e) {
+                }
+            }
+        });
+        thread.start();
+
+        receiver = new MulticastReceiver(GROUP, SERVER, bytes("app."), copy);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        receiver.stop();
+
+        server.stop();
+        thread.join();
+    }
+
+    @Test
+    public void fanOut() throws Exception {
+        MulticastPublisher publisher = new MulticastPublisher(GROUP);
+
+        server.publish(publisher);
+
+        BlockingClient client = BlockingClient.connect(SERVER);
+
+        client.set(bytes("app.a"), bytes("1"));
+
+        receiver.start();
+
+        awaitRecoveries(1);
+
+        byte[] large = new byte[4 * MulticastPublisher.MAX_DATAGRAM];
+        Arrays.fill(large, (byte) 'x');
+
+        client.set(bytes("other"), bytes("2"));
+        client.set(bytes("app.large"), large);
+        client.set(bytes("app.b"), bytes("3"));
+
+        await("app.b");
+
+        assertArrayEquals(bytes("1"), get("app.a"));
+        assertArrayEquals(large, get("app.large"));
+        assertNull(get("other"));
+        assertEquals(4, publisher.sequence());
+        assertEquals(0, receiver.gaps());
+
+        client.close();
+        publisher.close();
+    }
+
+    @Test
+    public void gapRecovery() throws Exception {
+        DatagramSocket socket = new DatagramSocket();
+
+        receiver.start();
+
+        awaitRecoveries(1);
+
+        send(socket, 1, new Update(bytes("app.a"), bytes("1")));
+
+        await("app.a");
+
+        config.put(bytes("app.b"), 0, 5, bytes("2"), 0, 1);
+
+        send(socket, 3, new Update(bytes("app.c"), bytes("3")));
+
+        await("app.c");
+
+        assertArrayEquals(bytes("2"), get("app.b"));
+        assertEquals(1, receiver.gaps());
+        assertEquals(2, receiver.recoveries());
+
+        socket.close();
+    }
+
+    @Test
+    public void resendMissedChanges() throws Exception {
+        MulticastPublisher publisher = new MulticastPublisher(GROUP);
+
+        server.publish(publisher);
+
+        receiver.start();
+
+        awaitRecoveries(1);
+
+        BlockingClient client = BlockingClient.connect(SERVER);
+
+        client.set(bytes("app.a"), bytes("1"));
+
+        await("app.a");
+
+        /*
+         * The frame is kept even though the datagram cannot be sent.
+         */
+        publisher.close();
+
+        client.set(bytes("app.b"), bytes("2"));
+
+        while (publisher.sequence() < 2)
+            Thread.sleep(10);
+
+        DatagramSocket socket = new DatagramSocket();
+
+        ByteBuffer heartbeat = ByteBuffer.allocate(MulticastPublisher.HEADER_LENGTH);
+
+        heartbeat.putLong(publisher.session());
+        heartbeat.putLong(2);
+        heartbeat.put(MulticastPublisher.HEARTBEAT);
+
+        socket.send(new DatagramPacket(heartbeat.array(), heartbeat.capacity(), GROUP));
+
+        await("app.b");
+
+        assertEquals(1, receiver.gaps());
+        assertEquals(1, receiver.resends());
+        assertEquals(1, receiver.recoveries());
+        assertEquals(1, server.stats().failures());
+
+        socket.close();
+        client.close();
+    }
+
+    @Test
+    public void resendTruncatedChange() throws Exception {
+        MulticastPublisher publisher = new MulticastPublisher(GROUP);
+
+        server.publish(publisher);
+
+        receiver.start();
+
+        awaitRecoveries(1);
+
+        BlockingClient client = BlockingClient.connect(SERVER);
+
+        client.set(bytes("app.a"), bytes("1"));
+
+        await("app.a");
+
+        publisher.close();
+
+        byte[] large = new byte[4 * MulticastPublisher.MAX_DATAGRAM];
+        Arrays.fill(large, (byte) 'x');
+
+        client.set(bytes("app.large"), large);
+
+        while (publisher.sequence() < 2)
+            Thread.sleep(10);
+
+        DatagramSocket socket = new DatagramSocket();
+
+        ByteBuffer heartbeat = ByteBuffer.allocate(MulticastPublisher.HEADER_LENGTH);
+
+        heartbeat.putLong(publisher.session());
+        heartbeat.putLong(2);
+        heartbeat.put(MulticastPublisher.HEARTBEAT);
+
+        socket.send(new DatagramPacket(heartbeat.array(), heartbeat.capacity(), GROUP));
+
+        await("app.large");
+
+        assertArrayEquals(large, get("app.large"));
+        assertEquals(1, receiver.resends());
+        assertEquals(1, receiver.recoveries());
+        assertNull(receiver.failure());
+
+        socket.close();
+        client.close();
+    }
+
+    private void send(DatagramSocket socket, long sequence, Update update) throws Exception {
+        byte[] frame = update.format();
+
+        ByteBuffer buffer = ByteBuffer.allocate(MulticastPublisher.HEADER_LENGTH + frame.length);
+
+        buffer.putLong(42);
+        buffer.putLong(sequence);
+        buffer.put((byte) 0);
+        buffer.put(frame);
+
+        socket.send(new DatagramPacket(buffer.array(), buffer.capacity(), GROUP));
+    }
+
+    private void awaitRecoveries(long count) throws Exception {
+        while (receiver.recoveries() < count)
+            Thread.sleep(10);
+    }
+
+    private void await(String key) throws Exception {
+        while (get(key) == null)
+            Thread.sleep(10);
+    }
+
+    private byte[] get(String key) throws Exception {
+        byte[] bytes = bytes(key);
+
+        return copy.get(bytes, 0, bytes.length);
+    }
+
+    private static byte[] bytes(String value) throws Exception {
+        return value.getBytes("US-ASCII");
+    }
+}
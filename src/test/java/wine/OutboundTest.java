@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OutboundTest {
+    private SocketChannel sender;
+    private SocketChannel receiver;
+
+    private Outbound outbound;
+
+    @Before
+    public void setUp() throws Exception {
+        ServerSocketChannel server = ServerSocketChannel.open();
+
+        server.socket().bind(new InetSocketAddress("localhost", 0));
+
+        receiver = SocketChannel.open(new InetSocketAddress("localhost", server.socket().getLocalPort()));
+        sender   = server.accept();
+
+        server.close();
+
+        sender.configureBlocking(false);
+        receiver.configureBlocking(false);
+
+        outbound = new Outbound(sender, 1024);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void coalesce() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+
+        for (int i = 0; i < 100; i++) {
+            Value message = new Value(new byte[] { 'k', (byte) i }, new byte[] { 'v', (byte) i });
+
+            outbound.send(message);
+
+            expected.write(message.format());
+        }
+
+        assertArrayEquals(expected.toByteArray(), receive(expected.size()));
+    }
+
+    @Test
+    public void largeValues() throws Exception {
+        byte[] value = new byte[1024 * 1024];
+        for (int i = 0; i < value.length; i++)
+            value[i] = (byte) i;
+
+        Value first  = new Value(new byte[] { 'a' }, new byte[] { '1' });
+        Value large  = new Value(new byte[] { 'b' }, value);
+        Value last   = new Value(new byte[] { 'c' }, new byte[] { '3' });
+        byte[] other = new Value(new byte[] { 'd' }, value).format();
+
+        outbound.send(first);
+        outbound.send(large);
+        outbound.send(last);
+        outbound.send(other);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+
+        expected.write(first.format());
+        expected.write(large.format());
+        expected.write(last.format());
+        expected.write(other);
+
+        assertArrayEquals(expected.toByteArray(), receive(expected.size()));
+    }
+
+    @Test
+    public void pending() throws Exception {
+        Value message = new Value(new byte[] { 'k' }, new byte[] { 'v' });
+
+        outbound.send(message);
+        outbound.send(message.format());
+
+        assertEquals(2 * message.length(), outbound.pendingBytes());
+        assertEquals(2, outbound.pendingMessages());
+
+        receive(2 * message.length());
+
+        assertEquals(0, outbound.pendingBytes());
+        assertEquals(0, outbound.pendingMessages());
+    }
+
+    private byte[] receive(int length) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (true) {
+            boolean flushed = outbound.flush();
+
+            receiver.read(buffer);
+
+            if (flushed && !buffer.hasRemaining())
+                break;
+        }
+
+        assertTrue(outbound.isEmpty());
+
+        return buffer.array();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplicationTest {
+    private static final int LEADER_PORT   = 45688;
+    private static final int FOLLOWER_PORT = 45689;
+
+    private static final InetSocketAddress LEADER   = new InetSocketAddress("localhost", LEADER_PORT);
+    private static final InetSocketAddress FOLLOWER = new InetSocketAddress("localhost", FOLLOWER_PORT);
+
+    private TestServer leader;
+    private TestServer follower;
+
+    private Thread leaderThread;
+    private Thread followerThread;
+
+    @Before
+    public void setUp() throws Exception {
+        leader = new TestServer(LEADER_PORT, store(), null, 1, null, new Backpressure(Backpressure.DISCONNECT, 64 * 1024, 1024));
+        leader.lead();
+
+        leaderThread = start(leader);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (follower != null) {
+            follower.stop();
+            followerThread.join();
+        }
+
+        leader.stop();
+        leaderThread.join();
+    }
+
+    @Test
+    public void snapshotAndStream() throws Exception {
+        BlockingClient client = BlockingClient.connect(LEADER);
+
+        client.set(bytes("a"), bytes("1"));
+        client.set(bytes("b"), bytes("2"));
+
+        startFollower();
+
+        BlockingClient replica = BlockingClient.connect(FOLLOWER);
+
+        /*
+         * The snapshot is taken a stripe at a time while changes go on, so
+         * the follower may have either key first.
+         */
+        await(replica, "a", "1");
+        await(replica, "b", "2");
+
+        client.set(bytes("a"), bytes("3"));
+
+        await(replica, "a", "3");
+
+        while (follower.stats().replicationOffset() != leader.stats().replicationOffset())
+            Thread.sleep(10);
+
+        assertEquals(3, leader.stats().replicationOffset());
+        assertTrue(follower.stats().replicationLag() >= 0);
+
+        client.close();
+        replica.close();
+    }
+
+    @Test
+    public void largeSnapshot() throws Exception {
+        BlockingClient client = BlockingClient.connect(LEADER);
+
+        byte[] value = new byte[1024];
+
+        for (int i = 0; i < 4096; i++)
+            client.set(bytes("key." + i), value);
+
+        startFollower();
+
+        BlockingClient replica = BlockingClient.connect(FOLLOWER);
+
+        client.set(bytes("last"), bytes("1"));
+
+        await(replica, "last", "1");
+
+        while (follower.stats().replicationOffset() != leader.stats().replicationOffset())
+            Thread.sleep(10);
+
+        assertEquals(1024, replica.get(bytes("key.0")).length);
+        assertEquals(0, leader.stats().overflowDisconnects());
+
+        client.close();
+        replica.close();
+    }
+
+    @Test
+    public void forwarding() throws Exception {
+        startFollower();
+
+        BlockingClient replica = BlockingClient.connect(FOLLOWER);
+
+        while (follower.stats().replicationOffset() < 0)
+            Thread.sleep(10);
+
+        replica.set(bytes("a"), bytes("1"));
+
+        BlockingClient client = BlockingClient.connect(LEADER);
+
+        await(client, "a", "1");
+        await(replica, "a", "1");
+
+        client.close();
+        replica.close();
+    }
+
+    private void startFollower() throws Exception {
+        follower = new TestServer(FOLLOWER_PORT, store());
+        follower.follow(LEADER);
+
+        followerThread = start(follower);
+    }
+
+    private static ConfigStore store() {
+        return new StripedConfigStore(4, new StripedConfigStore.Factory() {
+            @Override
+            public ConfigStore create() {
+                return new HeapConfigStore();
+            }
+        });
+    }
+
+    private static Thread start(final TestServer server) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                } catch (IOException e) {
+                }
+            }
+        });
+
+        thread.start();
+
+        return thread;
+    }
+
+    private static void await(BlockingClient client, String key, String value) throws Exception {
+        while (!Arrays.equals(bytes(value), client.get(bytes(key))))
+            Thread.sleep(10);
+    }
+
+    private static byte[] bytes(String value) throws Exception {
+        return value.getBytes("US-ASCII");
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import org.junit.Test;
+
+public class TimeSeriesTest {
+    private static final int PORT = 45683;
+
+    private static final byte[] KEY = bytes("cpu.load");
+
+    private final TimeSeries series = new TimeSeries(4, 2);
+
+    public TimeSeriesTest() {
+        series.track(bytes("cpu."));
+    }
+
+    @Test
+    public void range() {
+        append(KEY, "1", 10);
+        append(KEY, "2", 20);
+        append(KEY, "3", 30);
+
+        assertEquals(samples(20, 2, 30, 3), read(KEY, 15, 31));
+        assertEquals(samples(10, 1), read(KEY, 10, 20));
+        assertEquals(samples(), read(KEY, 31, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void wrapAround() {
+        for (int i = 1; i <= 6; i++)
+            append(KEY, Integer.toString(i), 10 * i);
+
+        assertEquals(samples(30, 3, 40, 4, 50, 5, 60, 6), read(KEY, 0, Long.MAX_VALUE));
+        assertEquals(samples(40, 4, 50, 5), read(KEY, 35, 60));
+    }
+
+    @Test
+    public void timestampsNeverGoBackwards() {
+        append(KEY, "1", 20);
+        append(KEY, "2", 10);
+
+        assertEquals(samples(20, 1, 20, 2), read(KEY, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void onlyNumbersOfTrackedKeys() {
+        append(KEY, "high", 10);
+        append(bytes("mem.used"), "1", 10);
+
+        assertEquals(samples(), read(KEY, 0, Long.MAX_VALUE));
+        assertEquals(new Samples(bytes("mem.used")), read(bytes("mem.used"), 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void boundedSeries() {
+        append(bytes("cpu.a"), "1", 10);
+        append(bytes("cpu.b"), "1", 10);
+        append(bytes("cpu.c"), "1", 10);
+
+        assertEquals(1, read(bytes("cpu.b"), 0, Long.MAX_VALUE).size());
+        assertEquals(0, read(bytes("cpu.c"), 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void server() throws Exception {
+        final TestServer server = new TestServer(PORT, new HeapConfigStore(), null, 1, series);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                } catch (IOException e) {
+                }
+            }
+        });
+        thread.start();
+
+        try {
+            BlockingClient client = BlockingClient.connect(new InetSocketAddress("localhost", PORT));
+
+            assertTrue(client.login("foo", "bar"));
+
+            client.set(KEY, bytes("1"));
+            client.set(KEY, bytes("2"));
+            client.set(KEY, new ByteArrayInputStream(bytes("3")));
+
+            Samples samples = client.range(KEY, 0, Long.MAX_VALUE);
+
+            assertEquals(3, samples.size());
+            assertEquals(1, samples.value(0));
+            assertEquals(2, samples.value(1));
+            assertEquals(3, samples.value(2));
+            assertTrue(samples.timestamp(0) <= samples.timestamp(1));
+
+            assertArrayEquals(bytes("3"), client.get(KEY));
+
+            client.close();
+        } finally {
+            server.stop();
+            thread.join();
+        }
+    }
+
+    private void append(byte[] key, String value, long timestamp) {
+        series.append(key, key.length, bytes(value), value.length(), timestamp);
+    }
+
+    private Samples read(byte[] key, long from, long to) {
+        Samples samples = new Samples(key);
+
+        series.read(key, key.length, from, to, samples);
+
+        return samples;
+    }
+
+    private static Samples samples(long... samples) {
+        Samples message = new Samples(KEY);
+
+        for (int i = 0; i < samples.length; i += 2)
+            message.add(samples[i], samples[i + 1]);
+
+        return message;
+    }
+
+    private static byte[] bytes(String value) {
+        byte[] bytes = new byte[value.length()];
+
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) value.charAt(i);
+
+        return bytes;
+    }
+}
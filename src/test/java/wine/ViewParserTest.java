@@ -0,0 +1,286 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import silvertip.GarbledMessageException;
+import silvertip.PartialMessageException;
+
+public class ViewParserTest {
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private final ViewParser parser = new ViewParser();
+
+    @Test
+    public void loginParsing() throws Exception {
+        LoginView view = (LoginView) parse("Lfoo     bar                 ");
+
+        assertEquals("foo", view.username());
+        assertEquals("bar", view.password());
+        assertTrue(view.usernameEquals("foo"));
+        assertFalse(view.usernameEquals("fo"));
+        assertEquals(0, view.features());
+        assertEquals(new Login("foo", "bar"), view.toMessage());
+    }
+
+    @Test
+    public void loginWithFeaturesParsing() throws Exception {
+        LoginView view = (LoginView) parse("lfoo     bar                 \u0000\u0000\u0000\u0001");
+
+        assertEquals("foo", view.username());
+        assertEquals(Features.COMPRESSION, view.features());
+        assertEquals(33, view.length());
+        assertEquals(new Login("foo", "bar", Features.COMPRESSION), view.toMessage());
+    }
+
+    @Test
+    public void getParsing() throws Exception {
+        GetView view = (GetView) parse(new byte[] { 'G', 0, 0, 0, 3, 'f', 'o', 'o' });
+
+        assertEquals(5, view.keyOffset());
+        assertEquals(3, view.keyLength());
+        assertTrue(view.keyEquals(new byte[] { 'f', 'o', 'o' }));
+        assertFalse(view.keyEquals(new byte[] { 'f', 'o' }));
+        assertEquals(new Get(new byte[] { 'f', 'o', 'o' }), view.toMessage());
+    }
+
+    @Test
+    public void setParsing() throws Exception {
+        byte[]  message = new byte[] { 'S', 0, 0, 0, 3, 0, 0, 0, 4, 'f', 'o', 'o', 'q', 'u', 'u', 'x' };
+        SetView view    = (SetView) parse(message);
+
+        assertEquals(9, view.keyOffset());
+        assertEquals(12, view.valueOffset());
+        assertEquals(4, view.valueLength());
+        assertTrue(view.valueEquals(new byte[] { 'q', 'u', 'u', 'x' }));
+        assertEquals(new Set(new byte[] { 'f', 'o', 'o' }, new byte[] { 'q', 'u', 'u', 'x' }), view.toMessage());
+    }
+
+    @Test
+    public void multiSetParsing() throws Exception {
+        MultiSet message = new MultiSet();
+
+        message.add(new byte[] { 'f' }, new byte[] { 'q', 'u' });
+        message.add(new byte[] { 'b' }, new byte[] {});
+
+        MultiSetView view  = (MultiSetView) parse(message.format());
+        int          entry = view.firstEntry();
+
+        assertEquals(2, view.size());
+        assertTrue(view.keyEquals(entry, new byte[] { 'f' }));
+        assertEquals(2, view.valueLength(entry));
+
+        entry = view.nextEntry(entry);
+
+        assertTrue(view.keyEquals(entry, new byte[] { 'b' }));
+        assertEquals(0, view.valueLength(entry));
+        assertEquals(message.length(), view.length());
+        assertEquals(message, view.toMessage());
+    }
+
+    @Test
+    public void samplesParsing() throws Exception {
+        Samples message = new Samples(new byte[] { 'f' });
+
+        message.add(1, 10);
+        message.add(2, -20);
+
+        SamplesView view = (SamplesView) parse(message.format());
+
+        assertTrue(view.keyEquals(new byte[] { 'f' }));
+        assertEquals(2, view.size());
+        assertEquals(2, view.timestamp(1));
+        assertEquals(-20, view.value(1));
+        assertEquals(message.length(), view.length());
+        assertEquals(message, view.toMessage());
+    }
+
+    @Test
+    public void partialMultiGet() throws Exception {
+        thrown.expect(PartialMessageException.class);
+
+        parse(new byte[] { 'g', 0, 0, 0, 2, 0, 0, 0, 3, 'f', 'o', 'o' });
+    }
+
+    @Test
+    public void consecutiveMessages() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        buffer.put(new Get(new byte[] { 'a' }).format());
+        buffer.put(new Value(new byte[] { 'b' }, new byte[] { 'c' }).format());
+        buffer.put(new MultiGet(new byte[] { 'd' }).format());
+        buffer.flip();
+
+        final StringBuilder visited = new StringBuilder();
+
+        MessageViewVisitor visitor = new MessageViewVisitor() {
+            @Override
+            public void visit(LoginView view) {
+            }
+
+            @Override
+            public void visit(LoginAcceptedView view) {
+            }
+
+            @Override
+            public void visit(LoginRejectedView view) {
+            }
+
+            @Override
+            public void visit(GetView view) {
+                visited.append("G");
+            }
+
+            @Override
+            public void visit(ValueView view) {
+                visited.append("V");
+            }
+
+            @Override
+            public void visit(SetView view) {
+            }
+
+            @Override
+            public void visit(MultiGetView view) {
+                visited.append("g");
+            }
+
+            @Override
+            public void visit(MultiValueView view) {
+            }
+
+            @Override
+            public void visit(MultiSetView view) {
+            }
+
+            @Override
+            public void visit(WatchView view) {
+            }
+
+            @Override
+            public void visit(UnwatchView view) {
+            }
+
+            @Override
+            public void visit(UpdateView view) {
+            }
+
+            @Override
+            public void visit(SetChunkView view) {
+            }
+
+            @Override
+            public void visit(ValueChunkView view) {
+            }
+
+            @Override
+            public void visit(ChunkedGetView view) {
+            }
+
+            @Override
+            public void visit(RangeGetView view) {
+            }
+
+            @Override
+            public void visit(SamplesView view) {
+            }
+
+            @Override
+            public void visit(ScanView view) {
+            }
+
+            @Override
+            public void visit(DefineKeyView view) {
+            }
+
+            @Override
+            public void visit(IdGetView view) {
+            }
+
+            @Override
+            public void visit(IdSetView view) {
+            }
+
+            @Override
+            public void visit(IdValueView view) {
+            }
+
+            @Override
+            public void visit(FollowView view) {
+            }
+
+            @Override
+            public void visit(PositionView view) {
+            }
+
+            @Override
+            public void visit(ResendView view) {
+            }
+        };
+
+        parser.parse(buffer).accept(visitor);
+        parser.parse(buffer).accept(visitor);
+        parser.parse(buffer).accept(visitor);
+
+        assertEquals("GVg", visited.toString());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void partialMessageLeavesPositionUnchanged() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 'G', 0, 0, 0, 3, 'f', 'o' });
+
+        try {
+            parser.parse(buffer);
+            fail();
+        } catch (PartialMessageException e) {
+            assertEquals(0, buffer.position());
+        }
+    }
+
+    @Test
+    public void negativeLength() throws Exception {
+        thrown.expect(GarbledMessageException.class);
+
+        parse(new byte[] { 'G', -1, -1, -1, -1 });
+    }
+
+    @Test
+    public void unknownMessageType() throws Exception {
+        thrown.expect(GarbledMessageException.class);
+        thrown.expectMessage("Unexpected message type X");
+
+        parse("X");
+    }
+
+    private MessageView parse(String message) throws Exception {
+        return parse(message.getBytes(CHARSET));
+    }
+
+    private MessageView parse(byte[] message) throws Exception {
+        return parser.parse(ByteBuffer.wrap(message));
+    }
+
+}
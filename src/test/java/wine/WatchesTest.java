@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import org.junit.Test;
+
+public class WatchesTest {
+    private final Watches<String> watches = new Watches<String>();
+
+    @Test
+    public void keyAndPrefixSubscriptions() throws Exception {
+        watches.watch("a", new byte[] { 'f', 'o', 'o' }, false);
+        watches.watch("b", new byte[] { 'f' }, true);
+        watches.watch("c", new byte[] {}, true);
+
+        assertEquals(list("a", "c", "b"), subscribers(new byte[] { 'f', 'o', 'o' }));
+        assertEquals(list("c", "b"), subscribers(new byte[] { 'f', 'o' }));
+        assertEquals(list("c"), subscribers(new byte[] { 'b', 'a', 'r' }));
+    }
+
+    @Test
+    public void subscribersAreReportedOnce() throws Exception {
+        watches.watch("a", new byte[] { 'f', 'o', 'o' }, false);
+        watches.watch("a", new byte[] { 'f' }, true);
+
+        assertEquals(list("a"), subscribers(new byte[] { 'f', 'o', 'o' }));
+    }
+
+    @Test
+    public void unwatch() throws Exception {
+        watches.watch("a", new byte[] { 'f' }, true);
+        watches.watch("b", new byte[] { 'f' }, true);
+        watches.unwatch("a", new byte[] { 'f' }, true);
+
+        assertEquals(list("b"), subscribers(new byte[] { 'f', 'o', 'o' }));
+    }
+
+    @Test
+    public void remove() throws Exception {
+        watches.watch("a", new byte[] { 'f', 'o', 'o' }, false);
+        watches.watch("a", new byte[] { 'f' }, true);
+        watches.remove("a");
+
+        assertTrue(watches.isEmpty());
+        assertEquals(list(), subscribers(new byte[] { 'f', 'o', 'o' }));
+    }
+
+    private List<String> subscribers(byte[] key) {
+        LinkedHashSet<String> subscribers = new LinkedHashSet<String>();
+
+        watches.subscribers(key, subscribers);
+
+        return new ArrayList<String>(subscribers);
+    }
+
+    private List<String> list(String... values) {
+        List<String> list = new ArrayList<String>();
+
+        for (String value : values)
+            list.add(value);
+
+        return list;
+    }
+
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package wine;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import silvertip.Events;
+
+public class WineClientTest {
+    private static final int PORT = 45679;
+
+    private static final int OUT_OF_ORDER_PORT = 45684;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static TestServer server;
+    private static Thread     serverThread;
+
+    private Events io;
+
+    private boolean loginAccepted;
+    private boolean closed;
+
+    private WineClient client;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        ConfigStore config = new StripedConfigStore(4, new StripedConfigStore.Factory() {
+            @Override
+            public ConfigStore create() {
+                return new HeapConfigStore();
+            }
+        });
+
+        server = new TestServer(PORT, config, null, 2);
+
+        serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                } catch (IOException e) {
+                }
+            }
+        });
+        serverThread.start();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        server.stop();
+        serverThread.join();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        io = Events.open();
+
+        client = WineClient.connect(new InetSocketAddress("localhost", PORT), new WineClient.Listener() {
+            @Override
+            public void loginAccepted(WineClient client) {
+                loginAccepted = true;
+            }
+
+            @Override
+            public void loginRejected(WineClient client) {
+            }
+
+            @Override
+            public void closed(WineClient client) {
+                closed = true;
+            }
+        });
+        client.register(io);
+    }
+
+    @Test
+    public void pipelinedRequests() throws Exception {
+        final List<Value> values = new ArrayList<Value>();
+
+        WineClient.ValueCallback callback = new WineClient.ValueCallback() {
+            @Override
+            public void completed(Value message) {
+                values.add(message);
+            }
+
+            @Override
+            public void failed() {
+                fail();
+            }
+        };
+
+        client.login("foo", "bar");
+
+        client.set(new byte[] { 'a' }, new byte[] { '1' });
+        client.set(new byte[] { 'b' }, new byte[] { '2' });
+
+        client.get(new byte[] { 'b' }, callback);
+        client.get(new byte[] { 'c' }, callback);
+        client.get(new byte[] { 'a' }, callback);
+
+        while (client.pending() > 0)
+            io.process(100);
+
+        assertTrue(loginAccepted);
+        assertEquals(new Value(new byte[] { 'b' }, new byte[] { '2' }), values.get(0));
+        assertEquals(new Value(new byte[] { 'c' }, new byte[] {}), values.get(1));
+        assertEquals(new Value(new byte[] { 'a' }, new byte[] { '1' }), values.get(2));
+    }
+
+    @Test
+    public void batchedRequests() throws Exception {
+        final List<MultiValue> values = new ArrayList<MultiValue>();
+
+        MultiSet request = new MultiSet();
+
+        request.add(new byte[] { 'x' }, new byte[] { '1' });
+        request.add(new byte[] { 'y' }, new byte[] { '2' });
+
+        client.set(request);
+
+        client.get(new MultiGet(new byte[] { 'y' }, new byte[] { 'z' }, new byte[] { 'x' }), new WineClient.MultiValueCallback() {
+            @Override
+            public void completed(MultiValue message) {
+                values.add(message);
+            }
+
+            @Override
+            public void failed() {
+                fail();
+            }
+        });
+
+        while (client.pending() > 0)
+            io.process(100);
+
+        MultiValue expected = new MultiValue();
+
+        expected.add(new byte[] { 'y' }, new byte[] { '2' });
+        expected.add(new byte[] { 'z' }, new byte[] {});
+        expected.add(new byte[] { 'x' }, new byte[] { '1' });
+
+        assertEquals(expected, values.get(0));
+    }
+
+    @Test
+    public void watches() throws Exception {
+        final List<Update> updates = new ArrayList<Update>();
+
+        WineClient.UpdateListener listener = new WineClient.UpdateListener() {
+            @Override
+            public void updated(Update message) {
+                updates.add(message);
+            }
+        };
+
+        client.watch(new byte[] { 'w', '1' }, false, listener);
+        client.watch(new byte[] { 'p', '.' }, true, listener);
+
+        client.set(new byte[] { 'w', '1' }, new byte[] { '1' });
+        client.set(new byte[] { 'w', '2' }, new byte[] { '2' });
+        client.set(new byte[] { 'p', '.', 'x' }, new byte[] { '3' });
+
+        while (updates.size() < 2)
+            io.process(100);
+
+        assertEquals(new Update(new byte[] { 'w', '1' }, new byte[] { '1' }), updates.get(0));
+        assertEquals(new Update(new byte[] { 'p', '.', 'x' }, new byte[] { '3' }), updates.get(1));
+    }
+
+    @Test
+    public void watchesAcrossLoops() throws Exception {
+        final List<Update> updates = new ArrayList<Update>();
+
+        client.watch(new byte[] { 'l', '1' }, false, new WineClient.UpdateListener() {
+            @Override
+            public void updated(Update message) {
+                updates.add(message);
+            }
+        });
+
+        /*
+         * Replies come in order, so once this one is in, the watch is in
+         * place.
+         */
+        client.get(new byte[] { 'l', '1' }, new WineClient.ValueCallback() {
+            @Override
+            public void completed(Value message) {
+            }
+
+            @Override
+            public void failed() {
+                fail();
+            }
+        });
+
+        while (client.pending() > 0)
+            io.process(100);
+
+        /*
+         * Connections are assigned to the loops in turn, so the second
+         * connection lands on the other loop.
+         */
+        WineClient other = WineClient.connect(new InetSocketAddress("localhost", PORT), new WineClient.Listener() {
+            @Override
+            public void loginAccepted(WineClient client) {
+            }
+
+            @Override
+            public void loginRejected(WineClient client) {
+            }
+
+            @Override
+            public void closed(WineClient client) {
+            }
+        });
+        other.register(io);
+
+        other.set(new byte[] { 'l', '1' }, new byte[] { '1' });
+
+        while (updates.isEmpty())
+            io.process(100);
+
+        assertEquals(new Update(new byte[] { 'l', '1' }, new byte[] { '1' }), updates.get(0));
+
+        other.close();
+    }
+
+    @Test
+    public void chunkedGet() throws Exception {
+        final ByteArrayOutputStream value = new ByteArrayOutputStream();
+
+        final List<Integer> chunks = new ArrayList<Integer>();
+
+        byte[] expected = new byte[2 * Handler.CHUNK_SIZE + 1];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = (byte) i;
+
+        client.set(new byte[] { 'c', 'g' }, expected);
+
+        client.getChunked(new byte[] { 'c', 'g' }, new WineClient.ChunkCallback() {
+            @Override
+            public void chunk(ValueChunk message) {
+                value.write(message.valueArray(), 0, message.valueLength());
+
+                chunks.add(message.valueLength());
+            }
+
+            @Override
+            public void completed() {
+                chunks.add(0);
+            }
+
+            @Override
+            public void failed() {
+                fail();
+            }
+        });
+
+        while (client.pending() > 0)
+            io.process(100);
+
+        assertArrayEquals(expected, value.toByteArray());
+        assertEquals(Arrays.asList(Handler.CHUNK_SIZE, Handler.CHUNK_SIZE, 1, 0), chunks);
+    }
+
+    @Test
+    public void requestIds() throws Exception {
+        final List<Value> values = new ArrayList<Value>();
+
+        client.login("foo", "bar", Features.REQUEST_IDS);
+
+        while (!loginAccepted)
+            io.process(100);
+
+        assertEquals(Features.REQUEST_IDS, client.features());
+
+        client.set(new byte[] { 'r', 'i' }, new byte[] { '1' });
+
+        for (int i = 0; i < 3; i++) {
+            client.get(new byte[] { 'r', 'i' }, new WineClient.ValueCallback() {
+                @Override
+                public void completed(Value message) {
+                    values.add(message);
+                }
+
+                @Override
+                public void failed() {
+                    fail();
+                }
+            });
+        }
+
+        while (client.pending() > 0)
+            io.process(100);
+
+        assertEquals(3, values.size());
+        assertEquals(new Value(new byte[] { 'r', 'i' }, new byte[] { '1' }), values.get(2));
+    }
+
+    @Test
+    public void outOfOrderReplies() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(OUT_OF_ORDER_PORT);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BlockingConnection connection = new BlockingConnection(serverSocket.accept());
+
+                    connection.read();
+                    connection.write(new LoginAccepted(Features.REQUEST_IDS));
+
+                    Tagged first  = (Tagged) connection.read();
+                    Tagged second = (Tagged) connection.read();
+
+                    connection.write(new Tagged(second.id(), new Value(((Get) second.message()).key(), new byte[] { '2' })));
+                    connection.write(new Tagged(first.id(), new Value(((Get) first.message()).key(), new byte[] { '1' })));
+
+                    connection.read();
+                } catch (IOException e) {
+                }
+            }
+        });
+        thread.start();
+
+        WineClient other = WineClient.connect(new InetSocketAddress("localhost", OUT_OF_ORDER_PORT), new WineClient.Listener() {
+            @Override
+            public void loginAccepted(WineClient client) {
+                loginAccepted = true;
+            }
+
+            @Override
+            public void loginRejected(WineClient client) {
+            }
+
+            @Override
+            public void closed(WineClient client) {
+            }
+        });
+        other.register(io);
+
+        final List<String> results = new ArrayList<String>();
+
+        other.login("foo", "bar", Features.REQUEST_IDS);
+
+        while (!loginAccepted)
+            io.process(100);
+
+        for (final String key : new String[] { "a", "b" }) {
+            other.get(key.getBytes(ASCII), new WineClient.ValueCallback() {
+                @Override
+                public void completed(Value message) {
+                    results.add(key + "=" + new String(message.value(), ASCII));
+                }
+
+                @Override
+                public void failed() {
+                    fail();
+                }
+            });
+        }
+
+        while (other.pending() > 0)
+            io.process(100);
+
+        other.close();
+
+        thread.join();
+        serverSocket.close();
+
+        assertEquals(Arrays.asList("b=2", "a=1"), results);
+    }
+
+    @Test
+    public void pendingRequestsFailOnClose() throws Exception {
+        final List<String> results = new ArrayList<String>();
+
+        client.get(new byte[] { 'a' }, new WineClient.ValueCallback() {
+            @Override
+            public void completed(Value message) {
+                results.add("completed");
+            }
+
+            @Override
+            public void failed() {
+                results.add("failed");
+            }
+        });
+
+        client.close();
+
+        assertTrue(closed);
+        assertEquals(0, client.pending());
+        assertEquals(1, results.size());
+        assertEquals("failed", results.get(0));
+    }
+
+}